@@ -7,6 +7,8 @@ import java.net.InetAddress;
  *
  */
 public class ACKPacket extends TFTPPacket {
+	public static final short OP_CODE = 4;
+	
 	private short blockNumber; 
 	
 	/**
@@ -37,12 +39,11 @@ public class ACKPacket extends TFTPPacket {
 	 * @throws TFTPPacketParsingError
 	 */
 	private void parseBlockNumber() throws TFTPPacketParsingError {
-		if (super.packetBytes.length < 4)
+		if (super.packetLength < 4)
 			// not enough bytes to parse block number 
 			throw new TFTPPacketParsingError("error parsing block number"); 
 		
-		byte[] blockNumberBytes = {packetBytes[2], packetBytes[3]};
-		blockNumber = ByteConversions.bytesToShort(blockNumberBytes);
+		blockNumber = ByteConversions.getShort(packetBytes, 2);
 	}
 	
 	/**
@@ -68,22 +69,17 @@ public class ACKPacket extends TFTPPacket {
 		byte[] packetBytes = new byte[4];
 		
 		// convert opCode to bytes
-		short opCode = 4;
-		byte[] opCodeBytes = ByteConversions.shortToBytes(opCode);
-		
-		packetBytes[0] = opCodeBytes[0];
-		packetBytes[1] = opCodeBytes[1];
+		short opCode = OP_CODE;
+		ByteConversions.putShort(packetBytes, 0, opCode);
 		
 		// convert block number to bytes
-		byte[] blockNumberBytes = ByteConversions.shortToBytes(blockNumber);
-				
-		packetBytes[2] = blockNumberBytes[0];
-		packetBytes[3] = blockNumberBytes[1];
+		ByteConversions.putShort(packetBytes, 2, blockNumber);
 
 		// initialize packet attributes
 		ackPacket.opCode = opCode;
 		ackPacket.blockNumber = blockNumber;
 		ackPacket.packetBytes = packetBytes;
+		ackPacket.packetLength = packetBytes.length;
 		ackPacket.remoteAddress = remoteAddress;
 		ackPacket.remotePort = remotePort;
 		
@@ -0,0 +1,121 @@
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps the transfers the server is running, keyed by the client's address, port,
+ * the type of the request and the requested file name.
+ *
+ * A client retransmits its request if the first answer is late or lost, and the network can
+ * duplicate the request. Without the table the server would start a second transfer of the same
+ * file to the same client transfer ID. A request that matches a running transfer is dropped,
+ * the running transfer answers the client. An entry is removed when its transfer ends.
+ *
+ * @author Group 8
+ */
+public class ActiveSessionTable {
+	/**
+	 * This class is the entry of a running transfer, it is passed back to remove the entry
+	 */
+	public static class Session {
+		private InetAddress remoteAddress;
+		private int remotePort;
+		private TFTPPacketType requestType;
+		private String fileName;
+		// progress of the transfer, not part of the key
+		private TransferStatus status;
+
+		private Session(InetAddress remoteAddress, int remotePort, TFTPPacketType requestType, String fileName) {
+			this.remoteAddress = remoteAddress;
+			this.remotePort = remotePort;
+			this.requestType = requestType;
+			this.fileName = fileName;
+			this.status = new TransferStatus(remoteAddress, remotePort, requestType, fileName);
+		}
+
+		public TransferStatus getStatus() {
+			return status;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Session))
+				return false;
+
+			Session session = (Session) o;
+			return remotePort == session.remotePort && remoteAddress.equals(session.remoteAddress)
+					&& requestType == session.requestType && fileName.equals(session.fileName);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(remoteAddress, remotePort, requestType, fileName);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %s from %s:%d", requestType, fileName, remoteAddress, remotePort);
+		}
+	}
+
+	// the value is the session that added the entry, so only that session removes it
+	private ConcurrentHashMap<Session, Session> sessions = new ConcurrentHashMap<Session, Session>();
+
+	private LongAdder suppressedCount = new LongAdder();
+
+	/**
+	 * Adds the transfer of a request to the table
+	 *
+	 * @param requestPacket RRQ or WRQ packet received by the server
+	 * @return session to remove once the transfer ends, null if the request is a duplicate of a running transfer
+	 */
+	public Session add(RRQWRQPacket requestPacket) {
+		Session session = new Session(requestPacket.getRemoteAddress(), requestPacket.getRemotePort(),
+				requestPacket.getPacketType(), requestPacket.getFileName());
+
+		if (sessions.putIfAbsent(session, session) != null) {
+			suppressedCount.increment();
+			Log.verbose("ActiveSessionTable", "dropped duplicate request for %s", session);
+			return null;
+		}
+
+		return session;
+	}
+
+	/**
+	 * Removes a transfer once it ended, removing the same session more than once does nothing
+	 *
+	 * @param session session returned by add
+	 */
+	public void remove(Session session) {
+		// a new transfer with the same key may have been added since
+		sessions.computeIfPresent(session, (key, value) -> value == session ? null : value);
+	}
+
+	/**
+	 * @return progress of the transfers running
+	 */
+	public List<TransferStatus> getTransferStatuses() {
+		List<TransferStatus> statuses = new ArrayList<TransferStatus>();
+		for (Session session : sessions.values())
+			statuses.add(session.status);
+		return statuses;
+	}
+
+	/**
+	 * @return number of transfers running
+	 */
+	public int getActiveSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return number of duplicate requests dropped
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.sum();
+	}
+}
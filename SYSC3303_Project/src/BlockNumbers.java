@@ -0,0 +1,60 @@
+/**
+ * This class handles the 16 bit block numbers of DATA and ACK packets.
+ *
+ * Block numbers are unsigned and roll over from 65535 to 0, so a file can have more than
+ * 65535 blocks. They are compared with serial number arithmetic (RFC 1982): a block number
+ * comes before another one if it is less than 32768 steps behind it. The position of a block
+ * in the file is kept as a long block index starting at 1, which never rolls over, and the
+ * block number sent in a packet is the low 16 bits of the index.
+ *
+ * @author Group 8
+ */
+public class BlockNumbers {
+	/**
+	 * Compares two block numbers, taking rollover into account
+	 *
+	 * @param blockNumber1
+	 * @param blockNumber2
+	 * @return a negative number if blockNumber1 comes before blockNumber2, 0 if they are equal
+	 *         and a positive number if it comes after
+	 */
+	public static int compare(short blockNumber1, short blockNumber2) {
+		return (short) (blockNumber1 - blockNumber2);
+	}
+
+	/**
+	 * @param blockNumber block number of a packet
+	 * @return block number that follows it, 65535 is followed by 0
+	 */
+	public static short next(short blockNumber) {
+		return (short) (blockNumber + 1);
+	}
+
+	/**
+	 * @param blockIndex position of the block in the file starting at 1
+	 * @return block number sent in the packets of the block
+	 */
+	public static short fromBlockIndex(long blockIndex) {
+		return (short) blockIndex;
+	}
+
+	/**
+	 * Finds the position in the file of a received block number, the block is taken to be
+	 * the one closest to a block whose position is known
+	 *
+	 * @param blockNumber    block number of a packet
+	 * @param referenceIndex index of a block near the received one, usually the last block received in order
+	 * @return block index starting at 1
+	 */
+	public static long toBlockIndex(short blockNumber, long referenceIndex) {
+		return referenceIndex + compare(blockNumber, fromBlockIndex(referenceIndex));
+	}
+
+	/**
+	 * @param blockNumber block number of a packet
+	 * @return the block number as the unsigned value sent on the wire, for messages
+	 */
+	public static int toUnsigned(short blockNumber) {
+		return Short.toUnsignedInt(blockNumber);
+	}
+}
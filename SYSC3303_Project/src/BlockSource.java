@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This interface provides the data of a file that is sent one block at a time.
+ *
+ * The sender only asks for the blocks of the window it is about to send, so a
+ * transfer never needs to hold more than a window of file data in memory.
+ * Blocks are identified by their index starting at 1, the block number of the DATA packet
+ * is the low 16 bits of the index (see BlockNumbers). The last block is shorter than
+ * the block size, it is empty if the file size is a multiple of the block size
+ *
+ * @author Group 8
+ */
+public interface BlockSource {
+	/**
+	 * @return number of bytes in every block except the last one
+	 */
+	public int getBlockSize();
+
+	/**
+	 * @return number of DATA packets needed to send the whole file
+	 */
+	public long getNumberOfBlocks();
+
+	/**
+	 * @return size of the file in bytes, sent to the client in the tsize option
+	 */
+	public long getFileSize();
+
+	/**
+	 * Reads a single block of the file
+	 *
+	 * @param blockIndex block index starting at 1
+	 * @return bytes of the block
+	 * @throws IOException if the file cannot be read
+	 */
+	public byte[] readBlock(long blockIndex) throws IOException;
+
+	/**
+	 * Returns a single block of the file in a buffer owned by the block source.
+	 * Block sources that hold the file in memory return a view of it without copying the data.
+	 * The buffer is reused, it is only valid until the next call
+	 *
+	 * @param blockIndex block index starting at 1
+	 * @return buffer with the block between its position and its limit
+	 * @throws IOException if the file cannot be read
+	 */
+	public ByteBuffer getBlockBuffer(long blockIndex) throws IOException;
+
+	/**
+	 * Releases the file once the transfer is finished
+	 */
+	public void close();
+}
@@ -1,4 +1,3 @@
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -19,9 +18,9 @@ public class ByteConversions {
 	 * @return bytes array of length 2
 	 */
 	public static byte[] shortToBytes(short num) {
-		ByteBuffer buffer = ByteBuffer.allocate(2);
-		buffer.putShort(num);
-		return buffer.array();
+		byte[] numBytes = new byte[2];
+		putShort(numBytes, 0, num);
+		return numBytes;
 	}
 	
 	/**
@@ -31,8 +30,30 @@ public class ByteConversions {
 	 * @return short value 
 	 */
 	public static short bytesToShort(byte[] numBytes) {
-		ByteBuffer wrapped = ByteBuffer.wrap(numBytes);
-		return wrapped.getShort();
+		return getShort(numBytes, 0);
+	}
+	
+	/**
+	 * Reads a big endian short from two bytes of an array without allocating
+	 * 
+	 * @param bytes  array of bytes
+	 * @param offset index of the first byte
+	 * @return short value
+	 */
+	public static short getShort(byte[] bytes, int offset) {
+		return (short) (((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff));
+	}
+	
+	/**
+	 * Writes a short as two big endian bytes into an array without allocating
+	 * 
+	 * @param bytes  array of bytes
+	 * @param offset index of the first byte
+	 * @param num    value to write
+	 */
+	public static void putShort(byte[] bytes, int offset, short num) {
+		bytes[offset] = (byte) (num >> 8);
+		bytes[offset + 1] = (byte) num;
 	}
 	
 	/**
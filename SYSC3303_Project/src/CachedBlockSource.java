@@ -0,0 +1,74 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This class provides the blocks of a file held by the FileContentCache.
+ *
+ * The file data is shared by every transfer of the file, blocks are returned as
+ * views of it and are only copied by readBlock
+ *
+ * @author Group 8
+ */
+public class CachedBlockSource implements BlockSource {
+	private ByteBuffer fileContent;
+	private int blockSize;
+
+	// view of the file data returned by getBlockBuffer
+	private ByteBuffer blockBuffer;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileContent whole file data, it is not modified
+	 * @param blockSize   negotiated block size
+	 */
+	public CachedBlockSource(ByteBuffer fileContent, int blockSize) {
+		// own position and limit, the content itself is shared
+		this.fileContent = fileContent.duplicate();
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public long getNumberOfBlocks() {
+		return fileContent.capacity() / blockSize + 1;
+	}
+
+	@Override
+	public long getFileSize() {
+		return fileContent.capacity();
+	}
+
+	@Override
+	public byte[] readBlock(long blockIndex) {
+		// cached files are smaller than 2 GB
+		int position = (int) ((blockIndex - 1) * blockSize);
+		int length = Math.max(0, Math.min(blockSize, fileContent.capacity() - position));
+
+		byte[] blockBytes = new byte[length];
+		fileContent.position(position);
+		fileContent.get(blockBytes);
+
+		return blockBytes;
+	}
+
+	@Override
+	public ByteBuffer getBlockBuffer(long blockIndex) {
+		int position = (int) ((blockIndex - 1) * blockSize);
+		int length = Math.max(0, Math.min(blockSize, fileContent.capacity() - position));
+
+		if (blockBuffer == null)
+			blockBuffer = fileContent.duplicate();
+
+		blockBuffer.limit(position + length);
+		blockBuffer.position(position);
+
+		return blockBuffer;
+	}
+
+	@Override
+	public void close() {}
+}
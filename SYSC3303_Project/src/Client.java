@@ -1,6 +1,9 @@
+import java.io.File;
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -18,6 +21,16 @@ public class Client {
    
    private InetAddress serverAddress;
    private int serverPort;
+   
+   // block size requested with the blksize option
+   private int blockSize = NetworkConfig.DEFAULT_BLOCK_SIZE;
+   // window size requested with the windowsize option
+   private int windowSize = NetworkConfig.DEFAULT_WINDOW_SIZE;
+   // retransmission timeout in seconds requested with the timeout option, 0 if not requested
+   private int timeout = 0;
+   
+   // file being read from the server, open until the last block is written
+   private FileBlockWriter fileWriter;
 
    /**
     * Constructor
@@ -49,22 +62,23 @@ public class Client {
     * @param packetType   packet type
     * @param fileName     name of the file that is requested to be read or written (in bytes)
     * @param mode         mode (in bytes)
+    * @param options      options to request (RFC 2347)
     * @param ipAddress    server IP address
     * @param port         server port
     * 
     * @Return Datagram packet received from the server after making a RRQ or WRQ request
     */
-   private void makeReadWriteRequest(TFTPPacketType packetType, String fileName, String mode, InetAddress ipAddress, int port) {
+   private void makeReadWriteRequest(TFTPPacketType packetType, String fileName, String mode, Map<String, String> options, InetAddress ipAddress, int port) {
 
 	   TFTPPacket requestPacket = null;
 	   
 	   if (packetType == TFTPPacketType.RRQ) {
 		   // get read request packet
-		   requestPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.RRQ, fileName, mode, ipAddress, port);
+		   requestPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.RRQ, fileName, mode, options, ipAddress, port);
 	   }
 	   else {
 		   // get write request packet
-		   requestPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.WRQ, fileName, mode, ipAddress, port);
+		   requestPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.WRQ, fileName, mode, options, ipAddress, port);
 	   }
 	   
 	   // send request
@@ -83,10 +97,15 @@ public class Client {
         // get file name from file path
         String fileName = Paths.get(filePath).getFileName().toString();
         
+        // the server never sends DATA packets larger than the requested block size
+        // tsize 0 asks the server for the size of the file so the client can check that it fits
+        Map<String, String> requestedOptions = TransferOptions.requestOptions(blockSize, windowSize, 0, timeout);
+        tftpSocket.setMaxPacketLength(blockSize + 4);
+        
         // make a read request and wait for response
         try {
             makeReadWriteRequest(TFTPPacketType.RRQ, 
-                    fileName, mode, InetAddress.getLocalHost(), NetworkConfig.PROXY_PORT);
+                    fileName, mode, requestedOptions, InetAddress.getLocalHost(), NetworkConfig.PROXY_PORT);
         } catch (UnknownHostException e) {
             System.err.println(Globals.getErrorMessage("Client", "cannot get localhost address"));
             e.printStackTrace();
@@ -94,67 +113,126 @@ public class Client {
         }
         
         packetHandler = new PacketHandler(tftpSocket, errorHandler, serverAddress, serverPort);
-
-	    short nextBlockNumber = 1; // expect to receive DATA with valid block number
-	   
-	   	// receive all data packets from server that wants to transfer a file.
-		// once the data length is less than 512 bytes then stop listening for
-		// data packets from the server
-        int fileDataLen = NetworkConfig.DATAGRAM_PACKET_MAX_LEN;
-        while (fileDataLen == NetworkConfig.DATAGRAM_PACKET_MAX_LEN) {
-            // receive datagram packet
-        	dataPacket = packetHandler.receiveDATAPacket(nextBlockNumber);
-        	
-        	if (dataPacket == null) {
+        
+        // the server answers with an OACK packet if it accepted the options
+        // otherwise it answers with the first DATA packet
+        TFTPPacket responsePacket = packetHandler.receiveDATAOrOACKPacket();
+        
+        if (responsePacket == null) {
+        	return;
+        }
+        
+        TransferOptions transferOptions = new TransferOptions();
+        dataPacket = null;
+        
+        if (responsePacket instanceof OACKPacket) {
+        	try {
+        		transferOptions = TransferOptions.fromOACKPacket((OACKPacket) responsePacket, requestedOptions);
+        	} catch (TFTPPacketParsingError e) {
+        		System.err.println(Globals.getErrorMessage("Client", e.getMessage()));
+        		errorHandler.sendOptionNegotiationErrorPacket(e.getMessage(), serverAddress, serverPort);
         		return;
         	}
         	
-        	FileManager.FileManagerResult fmRes;
-        	if (dataPacket.getBlockNumber() == 1) {
-        		fmRes = fileManager.createFile(fileName);
-        		
-        		if (fmRes.error) {
-        			// access violation error will send an error packet with error code 2 and the connection
-        			if (fmRes.accessViolation)
-        				errorHandler.sendAccessViolationErrorPacket(String.format("write access denied to file: %s", fileName), serverAddress, serverPort);
-        			// disk full error will send an error packet with error code 3 and close the connection
-        			else if (fmRes.fileAlreadyExist)
-        				errorHandler.sendFileExistsErrorPacket(String.format("file already exists: %s", fileName), serverAddress, serverPort);
-        			else if (fmRes.diskFull)
-        				errorHandler.sendDiskFullErrorPacket(String.format("Not enough disk space for file: %s", fileName), serverAddress, serverPort);
-        			return;
-        		}
-        		 
-        	}
+        	if (transferOptions.getTimeout() > 0)
+        		packetHandler.getRetransmissionTimer().setNegotiatedTimeout(transferOptions.getTimeout());
         	
-	        // gets the data bytes from the DATA packet and converts it into a string
-        	byte[] fileData = dataPacket.getDataBytes();
-	        
-	        // write file on client side
-            fmRes = fileManager.writeFile(fileName, fileData);           
-            if (fmRes.error) {
-    			// access violation error will send an error packet with error code 2 and the connection
-    			if (fmRes.accessViolation)
-    				errorHandler.sendAccessViolationErrorPacket(String.format("write access denied to file: %s", fileName), serverAddress, serverPort);
-    			// disk full error will send an error packet with error code 3 and close the connection
-    			else if (fmRes.fileAlreadyExist)
-    				errorHandler.sendFileExistsErrorPacket(String.format("file already exists: %s", fileName), serverAddress, serverPort);
-    			else if (fmRes.diskFull)
-    			    errorHandler.sendDiskFullErrorPacket(String.format("Not enough disk space for file: %s", fileName), serverAddress, serverPort);
-    			return;
-    		}
-	    
-	        // save the length of the received packet
-	        fileDataLen = dataPacket.getPacketLength();
-	        
-	        // send ACK packet
-	        packetHandler.sendACKPacket(nextBlockNumber);
-	        nextBlockNumber++;
+        	packetHandler.sendACKPacket((short) 0);
+        }
+        else {
+        	dataPacket = (DATAPacket) responsePacket;
+        }
+
+	   	// receive all data packets from server that wants to transfer a file.
+		// once the data length is less than the block size then stop listening for
+		// data packets from the server
+        TransferOptions negotiatedOptions = transferOptions;
+        boolean finished = packetHandler.receiveDATAPackets(dataPacket, transferOptions.getMaxPacketLength(), transferOptions.getWindowSize(),
+        		(receivedDataPacket, blockIndex) -> writeDATAPacket(fileName, negotiatedOptions, receivedDataPacket, blockIndex));
+        
+        // the transfer was aborted before the last block, keep the data received so far
+        if (fileWriter != null) {
+        	fileManager.closeFileWriter(fileWriter);
+        	fileWriter = null;
+        }
+        
+        if (!finished) {
+        	return;
         }
         
         System.out.println(Globals.getVerboseMessage("Client", "Finished with reading file."));
     }
     
+    /**
+     * Writes the file data of a DATA packet received from the server to hard drive
+     * The file is created when DATA packet 1 is received and closed once the last DATA packet is written
+     * 
+     * @param fileName        name of the file being read
+     * @param transferOptions options negotiated with the server
+     * @param dataPacket      DATA packet received from the server
+     * @param blockIndex      index of the block in the file, block numbers roll over after 65535
+     * @return false if the file could not be written
+     */
+    private boolean writeDATAPacket(String fileName, TransferOptions transferOptions, DATAPacket dataPacket, long blockIndex) {
+    	FileManager.FileManagerResult fmRes;
+    	if (blockIndex == 1) {
+    		fmRes = fileManager.createFile(fileName);
+    		
+    		if (fmRes.error) {
+    			sendFileManagerErrorPacket(fileName, fmRes);
+    			return false;
+    		}
+    		
+    		// the file stays open until the last block is written, if the server sent the
+    		// size of the file in the tsize option the space is reserved before it is written
+    		fmRes = fileManager.openFileWriter(fileName, transferOptions.getBlockSize(), transferOptions.getTransferSize());
+    		fileWriter = fmRes.fileWriter;
+    		
+    		// the file created for the transfer is removed so that it can be read again
+    		if (fmRes.error) {
+    			fileManager.deleteFile(fileName);
+    			sendFileManagerErrorPacket(fileName, fmRes);
+    			return false;
+    		}
+    	}
+    	
+        // gets the data from the DATA packet without copying it
+    	ByteBuffer fileData = dataPacket.getDataBuffer();
+        
+        // write file on client side
+        fmRes = fileManager.writeBlock(fileWriter, blockIndex, fileData);
+        
+        // the buffered data is written before the last block is acknowledged
+        if (!fmRes.error && dataPacket.getPacketLength() < transferOptions.getMaxPacketLength()) {
+        	fmRes = fileManager.closeFileWriter(fileWriter);
+        	fileWriter = null;
+        }
+        
+        if (fmRes.error) {
+        	sendFileManagerErrorPacket(fileName, fmRes);
+			return false;
+		}
+        
+        return true;
+    }
+    
+    /**
+     * Sends the ERROR packet that matches a failed file operation
+     * 
+     * @param fileName name of the file being read
+     * @param fmRes    result of the file operation
+     */
+    private void sendFileManagerErrorPacket(String fileName, FileManager.FileManagerResult fmRes) {
+		// access violation error will send an error packet with error code 2 and the connection
+		if (fmRes.accessViolation)
+			errorHandler.sendAccessViolationErrorPacket(String.format("write access denied to file: %s", fileName), serverAddress, serverPort);
+		// disk full error will send an error packet with error code 3 and close the connection
+		else if (fmRes.fileAlreadyExist)
+			errorHandler.sendFileExistsErrorPacket(String.format("file already exists: %s", fileName), serverAddress, serverPort);
+		else if (fmRes.diskFull)
+		    errorHandler.sendDiskFullErrorPacket(String.format("Not enough disk space for file: %s", fileName), serverAddress, serverPort);
+    }
+    
     /**
     * Handle sending DATA packets to server 
     * 
@@ -165,10 +243,15 @@ public class Client {
         // get file name from file path
         String fileName = Paths.get(filePath).getFileName().toString();
         
+        // the size of the file lets the server check that it has room for it
+        File file = new File(filePath);
+        long fileSize = file.isFile() ? file.length() : -1;
+        Map<String, String> requestedOptions = TransferOptions.requestOptions(blockSize, windowSize, fileSize, timeout);
+        
         // make a write request and wait for response
         try {
                 makeReadWriteRequest(TFTPPacketType.WRQ, 
-                    fileName, mode, InetAddress.getLocalHost(), NetworkConfig.PROXY_PORT);
+                    fileName, mode, requestedOptions, InetAddress.getLocalHost(), NetworkConfig.PROXY_PORT);
         } catch (UnknownHostException e) {
             System.err.println(Globals.getErrorMessage("Client", "cannot get localhost address"));
             e.printStackTrace();
@@ -177,22 +260,38 @@ public class Client {
         
         packetHandler = new PacketHandler(tftpSocket, errorHandler, serverAddress, serverPort);
         
-        ACKPacket ackPacket = packetHandler.receiveACKPacket((short) 0);
+        // the server answers with an OACK packet if it accepted the options
+        // otherwise it answers with ACK 0
+        TFTPPacket responsePacket = packetHandler.receiveACKOrOACKPacket();
         
-        if (ackPacket == null) {
+        if (responsePacket == null) {
         	return;
         }
         
-        if (ackPacket.getBlockNumber() == 0) {
-	        // reads a file on client side to create on the server side
-        	FileManager.FileManagerResult res = fileManager.readFile(filePath);
+        TransferOptions transferOptions = new TransferOptions();
+        ACKPacket ackPacket = null;
+        
+        if (responsePacket instanceof OACKPacket) {
+        	try {
+        		transferOptions = TransferOptions.fromOACKPacket((OACKPacket) responsePacket, requestedOptions);
+        	} catch (TFTPPacketParsingError e) {
+        		System.err.println(Globals.getErrorMessage("Client", e.getMessage()));
+        		errorHandler.sendOptionNegotiationErrorPacket(e.getMessage(), serverAddress, serverPort);
+        		return;
+        	}
         	
-    		byte[] fileData = null;
+        	if (transferOptions.getTimeout() > 0)
+        		packetHandler.getRetransmissionTimer().setNegotiatedTimeout(transferOptions.getTimeout());
+        }
+        else {
+        	ackPacket = (ACKPacket) responsePacket;
+        }
+        
+        if (ackPacket == null || ackPacket.getBlockNumber() == 0) {
+	        // opens the file on client side to create on the server side, its data is read one window at a time
+        	FileManager.FileManagerResult res = fileManager.openFile(filePath);
     		
-    		if (!res.error) {
-    			fileData = res.fileBytes;
-    		}
-    		else {
+    		if (res.error) {
     			// access violation error will send an error packet with error code 2 and the connection
     			if (res.accessViolation) 
     				errorHandler.sendAccessViolationErrorPacket(String.format("read access denied to file: %s", fileName), serverAddress, serverPort);
@@ -203,29 +302,55 @@ public class Client {
     			return;
     		}
 	        
-	        // create list of DATA datagram packets that contain up to 512 bytes of file data
-	        Queue<DATAPacket> dataPacketStack = TFTPPacketBuilder.getStackOfDATADatagramPackets(fileData, serverAddress, serverPort);
+    		BlockSource blockSource;
+    		try {
+    			blockSource = new FileBlockSource(res.fileChannel, transferOptions.getBlockSize());
+    		} catch (IOException e) {
+    			System.err.println(Globals.getErrorMessage("Client", "cannot read file"));
+    			errorHandler.sendNotDefinedErrorPacket(String.format("cannot read file: %s", fileName), serverAddress, serverPort);
+    			fileManager.closeFile(res.fileChannel);
+    			return;
+    		}
+	        
+	        // send the DATA packets in windows and wait for acknowledgement packets from the server
+	        boolean finished = packetHandler.sendDATAPackets(blockSource, transferOptions.getWindowSize());
+	        blockSource.close();
 	        
-	        DATAPacket dataPacket = null;
-	        while (!dataPacketStack.isEmpty()) {
-				// send each datagram packet in order and wait for acknowledgement packet from the client
-				dataPacket = dataPacketStack.peek();
-				
-				packetHandler.sendDATAPacket(dataPacket);
-				
-				ackPacket = packetHandler.receiveACKPacket(dataPacket);
-				
-				if (ackPacket == null) {
-					return;
-				}
-				
-				dataPacketStack.poll();
+	        if (!finished) {
+	        	return;
 	        }
         }
         
         System.out.println(Globals.getVerboseMessage("Client", "Finished with writing file."));
     }
     
+    /**
+     * Sets the block size requested from the server with the blksize option
+     * 
+     * @param blockSize block size in bytes
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+    
+    /**
+     * Sets the window size requested from the server with the windowsize option
+     * 
+     * @param windowSize number of DATA packets sent before waiting for an ACK packet
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+    
+    /**
+     * Sets the retransmission timeout requested from the server with the timeout option
+     * 
+     * @param timeout timeout in seconds (1-255), 0 to not request it
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+    
     /**
         * Closes the datagram socket when the connection is finished
         */
@@ -246,7 +371,10 @@ public class Client {
             System.out.println("1. Write file to Server");
             System.out.println("2. Read file from Server");
             System.out.println("3. Close Client");
-            System.out.print("Enter choice (1-3): ");
+            System.out.println("4. Set block size");
+            System.out.println("5. Set window size");
+            System.out.println("6. Set timeout");
+            System.out.print("Enter choice (1-6): ");
             userInput = sc.nextInt();
             sc.nextLine();
 
@@ -268,9 +396,42 @@ public class Client {
             {
                 c.shutdown();
             }
+            else if (userInput == 4)
+            {
+                System.out.print(String.format("Enter block size (%d-%d): ", NetworkConfig.MIN_BLOCK_SIZE, NetworkConfig.MAX_BLOCK_SIZE));
+                int blockSize = sc.nextInt();
+                sc.nextLine();
+                
+                if (blockSize >= NetworkConfig.MIN_BLOCK_SIZE && blockSize <= NetworkConfig.MAX_BLOCK_SIZE)
+                    c.setBlockSize(blockSize);
+                else
+                    System.out.println("Invalid block size!");
+            }
+            else if (userInput == 5)
+            {
+                System.out.print("Enter window size (1-65535): ");
+                int windowSize = sc.nextInt();
+                sc.nextLine();
+                
+                if (windowSize >= 1 && windowSize <= 65535)
+                    c.setWindowSize(windowSize);
+                else
+                    System.out.println("Invalid window size!");
+            }
+            else if (userInput == 6)
+            {
+                System.out.print("Enter timeout in seconds (1-255): ");
+                int timeout = sc.nextInt();
+                sc.nextLine();
+                
+                if (timeout >= 1 && timeout <= 255)
+                    c.setTimeout(timeout);
+                else
+                    System.out.println("Invalid timeout!");
+            }
             else
             {
-                System.out.println("Wrong input number!\nEnter integer number 1-3!");
+                System.out.println("Wrong input number!\nEnter integer number 1-6!");
             }
         }
         while (userInput != 3);
@@ -1,4 +1,5 @@
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -8,6 +9,8 @@ import java.util.Arrays;
  *
  */
 public class DATAPacket extends TFTPPacket {
+	public static final short OP_CODE = 3;
+	public static final int HEADER_LENGTH = 4;
 	public static final int MAX_DATA_SIZE_BYTES = 512;
 	private short blockNumber;
 	private byte[] dataBytes;
@@ -41,25 +44,23 @@ public class DATAPacket extends TFTPPacket {
 	 * @throws TFTPPacketParsingError
 	 */
 	private void parseBlockNumber() throws TFTPPacketParsingError {
-		if (super.packetBytes.length < 4)
+		if (super.packetLength < 4)
 			// not enough bytes to parse block number 
 			throw new TFTPPacketParsingError("error parsing block number");
 		
-		byte[] blockNumberBytes = {packetBytes[2], packetBytes[3]};
-		blockNumber = ByteConversions.bytesToShort(blockNumberBytes);
+		blockNumber = ByteConversions.getShort(packetBytes, 2);
 	}
 	
 	/**
-	 *  Reads packet bytes to parse the data
+	 *  Checks that the packet has room for the data, the data is only copied
+	 *  out of the packet bytes when getDataBytes is called
 	 *  
 	 * @throws TFTPPacketParsingError
 	 */
 	private void parseDataBytes() throws TFTPPacketParsingError {
-		if (super.packetBytes.length < 4)
+		if (super.packetLength < 4)
 			// not enough bytes to parse data
 			throw new TFTPPacketParsingError("error parsing data");
-		
-		dataBytes = Arrays.copyOfRange(packetBytes, 4, packetBytes.length);
 	}
 	
 	/**
@@ -77,9 +78,22 @@ public class DATAPacket extends TFTPPacket {
 	 * @return block number
 	 */
 	public byte[] getDataBytes() {
+		if (dataBytes == null)
+			dataBytes = Arrays.copyOfRange(packetBytes, 4, packetLength);
+		
 		return dataBytes;
 	}
 	
+	/**
+	 * Returns the data without copying it out of the packet bytes.
+	 * The buffer is only valid until the packet is released (see TFTPSocket.release)
+	 * 
+	 * @return buffer holding the data between its position and limit
+	 */
+	public ByteBuffer getDataBuffer() {
+		return ByteBuffer.wrap(packetBytes, 4, packetLength - 4);
+	}
+	
 	/**
 	 * Returns an DATA packet given the attributes
 	 * 
@@ -96,33 +110,36 @@ public class DATAPacket extends TFTPPacket {
 		byte[] packetBytes = new byte[4 + dataBytes.length];
 		
 		// convert opCode to bytes
-		short opCode = 3;
-		byte[] opCodeBytes = ByteConversions.shortToBytes(opCode);
-				
-		packetBytes[0] = opCodeBytes[0];
-		packetBytes[1] = opCodeBytes[1];
+		short opCode = OP_CODE;
+		ByteConversions.putShort(packetBytes, 0, opCode);
 		
 		// convert block number to bytes
-		byte[] blockNumberBytes = ByteConversions.shortToBytes(blockNumber);
-				
-		packetBytes[2] = blockNumberBytes[0];
-		packetBytes[3] = blockNumberBytes[1];
+		ByteConversions.putShort(packetBytes, 2, blockNumber);
 		
 		// append the bytes in the data list to the packet's list of bytes
-		int c = 4;
-		for (int i = 0; i < dataBytes.length; i++) {
-			packetBytes[c] = dataBytes[i];
-			c++;
-		}
+		System.arraycopy(dataBytes, 0, packetBytes, 4, dataBytes.length);
 		
 		// initialize packet attributes
 		dataPacket.opCode = opCode;
 		dataPacket.blockNumber = blockNumber;
 		dataPacket.dataBytes = dataBytes;
 		dataPacket.packetBytes = packetBytes;
+		dataPacket.packetLength = packetBytes.length;
 		dataPacket.remoteAddress = remoteAddress;
 		dataPacket.remotePort = remotePort;
 		
 		return dataPacket;
 	}
+	
+	/**
+	 * Writes the OP code and block number of a DATA packet into a buffer.
+	 * Used to send the header and the file data from separate buffers
+	 * 
+	 * @param buffer      buffer with at least 4 bytes remaining
+	 * @param blockNumber block number of the DATA packet
+	 */
+	public static void putHeader(ByteBuffer buffer, short blockNumber) {
+		buffer.putShort(OP_CODE);
+		buffer.putShort(blockNumber);
+	}
 }
@@ -10,12 +10,14 @@ import java.util.Arrays;
 public class ERRORPacket extends TFTPPacket {
 	public static final short OP_CODE = 5;
 	
+	public static final short NOT_DEFINED = 0;
 	public static final short FILE_NOT_FOUND = 1;
 	public static final short ACCESS_VIOLATION = 2;
 	public static final short DISK_FULL = 3;
 	public static final short ILLEGAL_TFTP_OPERATION = 4;
 	public static final short UNKNOWN_TID = 5;
 	public static final short FILE_EXISTS = 6;
+	public static final short OPTION_NEGOTIATION = 8;
 	
 	private short errorCode; 
 	private String errorMessage;
@@ -45,12 +47,11 @@ public class ERRORPacket extends TFTPPacket {
 	 * @throws TFTPPacketParsingError
 	 */
 	private void parseErrorCode() throws TFTPPacketParsingError {
-		if (super.packetBytes.length < 4)
+		if (super.packetLength < 4)
 			// not enough byte to parse error code
 			throw new TFTPPacketParsingError("error parsing error code");
 		
-		byte[] errorCodeBytes = {packetBytes[2], packetBytes[3]};
-		errorCode = ByteConversions.bytesToShort(errorCodeBytes);
+		errorCode = ByteConversions.getShort(packetBytes, 2);
 	}
 	
 	/**
@@ -59,14 +60,14 @@ public class ERRORPacket extends TFTPPacket {
 	 * @throws TFTPPacketParsingError
 	 */
 	private void parseErrorMessage() throws TFTPPacketParsingError {
-		if (super.packetBytes.length < 5) {
+		if (super.packetLength < 5) {
 			// not enough byte to parse error message
 			throw new TFTPPacketParsingError("error parsing error message");
 		}
 		
 		// count the length  of the error message
 		int errorMessageLength = 0;
-		for (int i = 4; i < super.packetBytes.length; i++) {
+		for (int i = 4; i < super.packetLength; i++) {
 			if (packetBytes[i] == 0)
 				break;
 			
@@ -144,6 +145,7 @@ public class ERRORPacket extends TFTPPacket {
 		errorPacket.errorCode = errorCode;
 		errorPacket.errorMessage = errorMessage;
 		errorPacket.packetBytes = packetBytes;
+		errorPacket.packetLength = packetBytes.length;
 		errorPacket.remoteAddress = remoteAddress;
 		errorPacket.remotePort = remotePort;
 		
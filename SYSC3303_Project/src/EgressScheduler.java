@@ -0,0 +1,346 @@
+import java.util.ArrayDeque;
+
+/**
+ * This class shares the upload bandwidth of the server between the RRQ transfers
+ * with deficit round robin (Shreedhar and Varghese).
+ *
+ * Every RRQ transfer has a flow. Its DATA packets are queued in the flow instead of being
+ * sent right away, and a single egress thread sends the queued packets of the flows in turn.
+ * When a flow gets its turn its deficit grows by NetworkConfig.EGRESS_QUANTUM bytes times its
+ * weight, and the flow sends packets while the next packet fits in the deficit. A flow with
+ * large blocks therefore waits more turns between packets than a flow with small blocks, and
+ * each flow gets the same number of bytes per round whatever its block size or window size.
+ * A flow with a weight of 2 gets twice the bytes of a flow with a weight of 1.
+ *
+ * The total rate is limited to NetworkConfig.EGRESS_BANDWIDTH bytes per second by a token
+ * bucket, a bandwidth of 0 disables the scheduler and the transfers send their packets themselves.
+ *
+ * The egress thread sends a packet without holding the lock of the scheduler, so the transfers
+ * queueing packets and the metrics are not held up by the socket. A transfer is told when a
+ * packet left (see Flow.send) so that the time it spent in the queue is not counted in its round
+ * trip time, and it drops its queued packets before it sends a window again (see Flow.discard).
+ *
+ * @author Group 8
+ */
+public class EgressScheduler implements Runnable {
+	private static final EgressScheduler instance = new EgressScheduler(NetworkConfig.EGRESS_BANDWIDTH, NetworkConfig.EGRESS_QUANTUM);
+
+	/**
+	 * This class is the queue of DATA packets of a transfer
+	 */
+	public class Flow {
+		private TFTPSocket tftpSocket;
+		private int weight;
+
+		private ArrayDeque<QueuedPacket> packets = new ArrayDeque<QueuedPacket>();
+		// packet taken off the queue by the egress thread and being sent, null if none
+		private QueuedPacket sendingPacket;
+		private long deficit;
+		// true while the flow is in the list of flows waiting for their turn
+		private boolean active;
+		private boolean closed;
+
+		private long sentBytes;
+
+		private Flow(TFTPSocket tftpSocket, int weight) {
+			this.tftpSocket = tftpSocket;
+			this.weight = weight;
+		}
+
+		/**
+		 * Queues a packet, it is sent by the egress thread in the turn of the flow
+		 *
+		 * @param tftpPacket packet to send, it should not be changed until it is sent
+		 */
+		public void send(TFTPPacket tftpPacket) {
+			send(tftpPacket, null);
+		}
+
+		/**
+		 * Queues a packet, it is sent by the egress thread in the turn of the flow
+		 *
+		 * @param tftpPacket   packet to send, it should not be changed until it is sent
+		 * @param sentCallback run by the egress thread once the packet was sent, unless the packet
+		 *                     was discarded or the flow closed before, may be null
+		 */
+		public void send(TFTPPacket tftpPacket, Runnable sentCallback) {
+			synchronized (EgressScheduler.this) {
+				if (closed)
+					return;
+
+				QueuedPacket queuedPacket = new QueuedPacket();
+				queuedPacket.tftpPacket = tftpPacket;
+				queuedPacket.sentCallback = sentCallback;
+				packets.add(queuedPacket);
+
+				if (!active) {
+					active = true;
+					activeFlows.add(this);
+					EgressScheduler.this.notify();
+				}
+			}
+		}
+
+		/**
+		 * Drops the packets that were not sent yet, called before a window is sent again so that
+		 * stale copies do not take the bandwidth of the flow. The callback of a packet being sent
+		 * is not run
+		 */
+		public void discard() {
+			synchronized (EgressScheduler.this) {
+				packets.clear();
+				sendingPacket = null;
+			}
+		}
+
+		/**
+		 * Drops the packets that were not sent, the socket of the transfer can be closed once it
+		 * returns, a packet being sent then is dropped by the socket
+		 */
+		public void close() {
+			synchronized (EgressScheduler.this) {
+				closed = true;
+				packets.clear();
+				sendingPacket = null;
+			}
+		}
+
+		/**
+		 * @return number of bytes of the packets sent by the flow
+		 */
+		public long getSentBytes() {
+			synchronized (EgressScheduler.this) {
+				return sentBytes;
+			}
+		}
+
+		public int getWeight() {
+			synchronized (EgressScheduler.this) {
+				return weight;
+			}
+		}
+
+		/**
+		 * Changes the share of the bandwidth of the flow, from its next turn
+		 *
+		 * @param weight share of the bandwidth compared to the other flows, at least 1
+		 */
+		public void setWeight(int weight) {
+			synchronized (EgressScheduler.this) {
+				this.weight = Math.max(1, weight);
+			}
+		}
+	}
+
+	/**
+	 * This class is a packet waiting in a flow
+	 */
+	private static class QueuedPacket {
+		TFTPPacket tftpPacket;
+		Runnable sentCallback;
+	}
+
+	private long bandwidth;
+	private int quantum;
+
+	// flows that have packets waiting, the first one has the turn
+	private ArrayDeque<Flow> activeFlows = new ArrayDeque<Flow>();
+
+	// token bucket in bytes, it holds up to the bytes of one quantum or of the largest packet
+	private double tokens;
+	private double maxTokens;
+	private long lastRefillTime;
+
+	private Thread egressThread;
+
+	private long sentPackets;
+	private long sentBytes;
+	private long throttledTime;
+
+	/**
+	 * Constructor
+	 *
+	 * @param bandwidth bytes per second shared by the flows, 0 disables the scheduler
+	 * @param quantum   bytes added to the deficit of a flow of weight 1 at each of its turns
+	 */
+	public EgressScheduler(long bandwidth, int quantum) {
+		this.bandwidth = bandwidth;
+		this.quantum = quantum;
+
+		maxTokens = Math.max(quantum, NetworkConfig.MAX_DATAGRAM_PACKET_LEN);
+		tokens = maxTokens;
+		lastRefillTime = System.nanoTime();
+	}
+
+	public static EgressScheduler getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns a new flow for a transfer, the egress thread is started with the first flow
+	 *
+	 * @param tftpSocket socket of the transfer the packets are sent with
+	 * @param weight     share of the bandwidth of the flow compared to the other flows
+	 * @return flow or null if the scheduler is disabled
+	 */
+	public synchronized Flow newFlow(TFTPSocket tftpSocket, int weight) {
+		if (bandwidth <= 0)
+			return null;
+
+		if (egressThread == null) {
+			egressThread = new Thread(this, "EgressScheduler");
+			egressThread.setDaemon(true);
+			egressThread.start();
+		}
+
+		return new Flow(tftpSocket, Math.max(1, weight));
+	}
+
+	/**
+	 * Sends the packets of the active flows in turn
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			Flow flow;
+			synchronized (this) {
+				while (activeFlows.isEmpty()) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				// a new turn for the first flow
+				flow = activeFlows.poll();
+				flow.deficit += (long) quantum * flow.weight;
+			}
+
+			while (sendNextPacket(flow)) {
+				// the flow keeps its turn while its next packet fits in its deficit
+			}
+
+			synchronized (this) {
+				if (flow.packets.isEmpty()) {
+					// a flow that has nothing to send does not save its deficit for later
+					flow.deficit = 0;
+					flow.active = false;
+				}
+				else {
+					activeFlows.add(flow);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the first packet of a flow if it fits in the deficit of the flow,
+	 * waits for the token bucket to hold enough bytes for the packet
+	 *
+	 * @return false if the turn of the flow is over
+	 */
+	private boolean sendNextPacket(Flow flow) {
+		int packetLength;
+		synchronized (this) {
+			QueuedPacket queuedPacket = flow.packets.peek();
+			if (queuedPacket == null || queuedPacket.tftpPacket.getPacketLength() > flow.deficit)
+				return false;
+
+			packetLength = queuedPacket.tftpPacket.getPacketLength();
+		}
+
+		waitForTokens(packetLength);
+
+		QueuedPacket queuedPacket;
+		synchronized (this) {
+			// the flow is closed or its packets discarded while the thread waited
+			queuedPacket = flow.packets.peek();
+			if (queuedPacket == null || queuedPacket.tftpPacket.getPacketLength() > flow.deficit)
+				return false;
+
+			flow.packets.poll();
+			flow.sendingPacket = queuedPacket;
+			packetLength = queuedPacket.tftpPacket.getPacketLength();
+			flow.deficit -= packetLength;
+			flow.sentBytes += packetLength;
+			tokens -= packetLength;
+			sentPackets++;
+			sentBytes += packetLength;
+		}
+
+		// a flow closed during the send has its socket closed, the socket then drops the packet
+		flow.tftpSocket.send(queuedPacket.tftpPacket);
+
+		synchronized (this) {
+			// the callback is not run for a packet that was discarded while it was sent, the transfer
+			// may already have sent it again (Karn's algorithm), it is cheap and runs under the lock so
+			// that a discard either happens before it or sees it done
+			if (flow.sendingPacket == queuedPacket) {
+				flow.sendingPacket = null;
+				if (queuedPacket.sentCallback != null)
+					queuedPacket.sentCallback.run();
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Refills the token bucket and sleeps until it holds the given number of bytes
+	 */
+	private void waitForTokens(int packetLength) {
+		while (true) {
+			long waitTime;
+			synchronized (this) {
+				long now = System.nanoTime();
+				tokens = Math.min(maxTokens, tokens + (now - lastRefillTime) * bandwidth / 1000000000.0);
+				lastRefillTime = now;
+
+				if (tokens >= packetLength)
+					return;
+
+				waitTime = (long) ((packetLength - tokens) * 1000000000.0 / bandwidth);
+				throttledTime += waitTime;
+			}
+
+			try {
+				Thread.sleep(waitTime / 1000000, (int) (waitTime % 1000000));
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return number of flows with packets waiting to be sent
+	 */
+	public synchronized int getActiveFlowCount() {
+		return activeFlows.size();
+	}
+
+	/**
+	 * @return number of packets sent by the egress thread
+	 */
+	public synchronized long getSentPackets() {
+		return sentPackets;
+	}
+
+	/**
+	 * @return number of bytes sent by the egress thread
+	 */
+	public synchronized long getSentBytes() {
+		return sentBytes;
+	}
+
+	/**
+	 * @return time in milliseconds the egress thread waited for the bandwidth budget
+	 */
+	public synchronized long getThrottledTime() {
+		return throttledTime / 1000000;
+	}
+
+	public long getBandwidth() {
+		return bandwidth;
+	}
+}
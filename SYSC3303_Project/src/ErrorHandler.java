@@ -29,8 +29,19 @@ public class ErrorHandler {
        
         System.err.println(Globals.getErrorMessage("ErrorHandler", String.format("sending error packet, errorCode: %d, errorMessage: %s", errorCode, errorMessage)));
         tftpSocket.send(errorPacket);
+        MetricsRegistry.getInstance().errorPacketSent(errorCode);
     }
     
+    /**
+     * Sends ERROR packet with error code 0
+     * @param errorMessage
+     * @param remoteAddress
+     * @param remotePort
+     */
+	public void sendNotDefinedErrorPacket(String errorMessage, InetAddress remoteAddress, int remotePort) {
+		sendErrorPacket(ERRORPacket.NOT_DEFINED, errorMessage, remoteAddress, remotePort);
+	}
+	
     /**
      * Sends ERROR packet with error code 1
      * @param errorMessage
@@ -90,4 +101,14 @@ public class ErrorHandler {
 	public void sendFileExistsErrorPacket(String errorMessage, InetAddress remoteAddress, int remotePort) {
 		sendErrorPacket(ERRORPacket.FILE_EXISTS, errorMessage, remoteAddress, remotePort);
 	}
+	
+	/**
+     * Sends ERROR packet with error code 8 (RFC 2347)
+     * @param errorMessage
+     * @param remoteAddress
+     * @param remotePort
+     */
+	public void sendOptionNegotiationErrorPacket(String errorMessage, InetAddress remoteAddress, int remotePort) {
+		sendErrorPacket(ERRORPacket.OPTION_NEGOTIATION, errorMessage, remoteAddress, remotePort);
+	}
 }
@@ -46,6 +46,8 @@ public class ErrorSimulator implements Runnable {
 
 		// create a datagram socket to establish a connection with incoming
 		tftpSocket = new TFTPSocket(0, NetworkConfig.PROXY_PORT);
+		// packets can be as large as the largest block size that can be negotiated
+		tftpSocket.setMaxPacketLength(NetworkConfig.MAX_DATAGRAM_PACKET_LEN);
 	}
 
 	@Override
@@ -75,7 +77,7 @@ public class ErrorSimulator implements Runnable {
 			
 			TFTPPacket sendTFTPPacket;
 			try {
-				sendTFTPPacket = new TFTPPacket(tftpPacket.getPacketBytes(), 0, tftpPacket.getPacketBytes().length,
+				sendTFTPPacket = new TFTPPacket(tftpPacket.getPacketBytes(), 0, tftpPacket.getPacketLength(),
 						this.serverThreadAddress, this.serverThreadPort);
 				
 				if (duplicate) // duplicates packet
@@ -177,7 +179,7 @@ public class ErrorSimulator implements Runnable {
 			if (!lose) {
 				try {
 					sendTFTPPacket = new TFTPPacket(receiveTFTPacket.getPacketBytes(), 0,
-							receiveTFTPacket.getPacketBytes().length, sendAddress, sendPort);
+							receiveTFTPacket.getPacketLength(), sendAddress, sendPort);
 				} catch (TFTPPacketParsingError e) {
 					System.err.println(Globals.getErrorMessage("Error Simulator", "cannot create TFTP Packet"));
 					e.printStackTrace();
@@ -344,7 +346,7 @@ public class ErrorSimulator implements Runnable {
 
 		TFTPPacket corruptedTFTPPacket = null;
 		try {
-			corruptedTFTPPacket = new TFTPPacket(corruptedBytes, 0, corruptedBytes.length,
+			corruptedTFTPPacket = new TFTPPacket(corruptedBytes, 0, tftpPacket.getPacketLength(),
 					tftpPacket.getRemoteAddress(), tftpPacket.getRemotePort());
 		} catch (TFTPPacketParsingError e) {
 			// TODO Auto-generated catch block
@@ -411,6 +413,7 @@ public class ErrorSimulator implements Runnable {
 
 	public static void main(String[] args) {
 		ErrorSimulator proxy = null;
+		NetworkEmulator emulator = null;
 		Thread proxyThread = null;
 
 		System.out.println("\nSYSC 3033 TFTP Error Simulator");
@@ -420,14 +423,32 @@ public class ErrorSimulator implements Runnable {
 		System.out.println("4. Lose a packet");
 		System.out.println("5. Delay a packet");
 		System.out.println("6. Duplicate a packet");
-		System.out.println("7. Exit");
+		System.out.println("7. Emulate a lossy network (every packet, every connection)");
+		System.out.println("8. Exit");
 		System.out.println("Selection: ");
 
 		int selection = 0;
 		Scanner sc = new Scanner(System.in);
 		selection = sc.nextInt();
 
-		if (selection != 7) {
+		if (selection == 7) {
+			System.out.println("What percentage of the packets should be lost? (0 to 100)");
+			double lossRate = sc.nextDouble() / 100;
+			System.out.println("How long of a delay would you like on every packet? (in milliseconds)");
+			int delay = sc.nextInt();
+
+			try {
+				emulator = new NetworkEmulator(NetworkConfig.PROXY_PORT, InetAddress.getLocalHost(), NetworkConfig.SERVER_PORT, lossRate, delay, System.nanoTime());
+			} catch (IllegalArgumentException | UnknownHostException e) {
+				System.err.println(Globals.getErrorMessage("ErrorSimulator", e.getMessage()));
+				sc.close();
+				System.exit(-1);
+			}
+
+			proxyThread = new Thread(emulator);
+			proxyThread.start();
+
+		} else if (selection != 8) {
 			// create server a thread for it listen on
 			proxy = new ErrorSimulator();
 			proxy.errorSelection = selection; // so the errorSimulator knows what to do
@@ -455,7 +476,7 @@ public class ErrorSimulator implements Runnable {
 					Random rand = new Random();
 					TFTPPacketType[] types = TFTPPacketType.values();
 					proxy.errorOp = types[rand.nextInt(types.length)];
-					while (proxy.errorOp == TFTPPacketType.ERROR) {
+					while (proxy.errorOp == TFTPPacketType.ERROR || proxy.errorOp == TFTPPacketType.OACK) {
 						proxy.errorOp = types[rand.nextInt(types.length)];
 					}
 				} else {
@@ -514,7 +535,10 @@ public class ErrorSimulator implements Runnable {
 		}
 
 		if (shutdownCommand.equals("quit")) {
-			proxy.shutdown();
+			if (emulator != null)
+				emulator.shutdown();
+			else
+				proxy.shutdown();
 			sc.close();
 			try {
 				proxyThread.join(1000);
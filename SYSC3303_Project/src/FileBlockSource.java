@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads the blocks of a file on demand from a FileChannel.
+ *
+ * Every block is read with a positional read, so blocks can be read again
+ * when a window has to be retransmitted without keeping them in memory
+ *
+ * @author Group 8
+ */
+public class FileBlockSource implements BlockSource {
+	private FileChannel fileChannel;
+	private int blockSize;
+	private long fileSize;
+
+	// holds the block returned by getBlockBuffer
+	private ByteBuffer blockBuffer;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileChannel channel opened for reading (see FileManager.openFile)
+	 * @param blockSize   negotiated block size
+	 * @throws IOException if the size of the file cannot be read
+	 */
+	public FileBlockSource(FileChannel fileChannel, int blockSize) throws IOException {
+		this.fileChannel = fileChannel;
+		this.blockSize = blockSize;
+		this.fileSize = fileChannel.size();
+	}
+
+	@Override
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public long getNumberOfBlocks() {
+		return fileSize / blockSize + 1;
+	}
+
+	@Override
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	@Override
+	public byte[] readBlock(long blockIndex) throws IOException {
+		ByteBuffer blockBuffer = ByteBuffer.allocate(getBlockLength(blockIndex));
+		read(blockBuffer, blockIndex);
+
+		return blockBuffer.array();
+	}
+
+	@Override
+	public ByteBuffer getBlockBuffer(long blockIndex) throws IOException {
+		if (blockBuffer == null)
+			blockBuffer = ByteBuffer.allocateDirect(blockSize);
+
+		blockBuffer.clear();
+		blockBuffer.limit(getBlockLength(blockIndex));
+		read(blockBuffer, blockIndex);
+		blockBuffer.flip();
+
+		return blockBuffer;
+	}
+
+	private int getBlockLength(long blockIndex) {
+		long position = (blockIndex - 1) * blockSize;
+		return (int) Math.max(0, Math.min(blockSize, fileSize - position));
+	}
+
+	/**
+	 * Reads a block into a buffer until the buffer is full
+	 *
+	 * @param blockBuffer buffer with room for the block
+	 * @param blockIndex  block index starting at 1
+	 * @throws IOException if the file cannot be read
+	 */
+	private void read(ByteBuffer blockBuffer, long blockIndex) throws IOException {
+		long position = (blockIndex - 1) * blockSize;
+		int start = blockBuffer.position();
+
+		while (blockBuffer.hasRemaining()) {
+			int bytesRead = fileChannel.read(blockBuffer, position + blockBuffer.position() - start);
+
+			// the file was truncated while it was being sent
+			if (bytesRead < 0)
+				throw new IOException(String.format("unexpected end of file at block %d", blockIndex));
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileBlockSource", "cannot close file"));
+		}
+	}
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class writes the blocks of a WRQ to a file that stays open for the whole transfer.
+ *
+ * Each block is written at its offset in the file. Blocks that follow each other are
+ * collected in a buffer and written together once the buffer is full, so a transfer
+ * with small blocks does not make a write call for every DATA packet.
+ * The buffered data is written when the writer is flushed or closed, the buffer is taken
+ * from the FileWriteBufferPool and given back when the writer is closed
+ *
+ * @author Group 8
+ */
+public class FileBlockWriter {
+	private FileChannel fileChannel;
+	private int blockSize;
+
+	private ByteBuffer writeBuffer;
+	// offset in the file of the first byte in the write buffer
+	private long bufferFilePosition;
+	// disk space reserved for the file that was not written yet (see FileManager.openFileWriter)
+	private long reservedBytes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileChannel   channel opened for writing (see FileManager.openFileWriter)
+	 * @param blockSize     negotiated block size
+	 * @param reservedBytes disk space reserved for the file, released as it is written and when the writer is closed
+	 */
+	public FileBlockWriter(FileChannel fileChannel, int blockSize, long reservedBytes) {
+		this.fileChannel = fileChannel;
+		this.blockSize = blockSize;
+		this.reservedBytes = reservedBytes;
+
+		writeBuffer = FileWriteBufferPool.getInstance().acquire();
+	}
+
+	/**
+	 * Writes a single block of the file
+	 *
+	 * @param blockIndex block index starting at 1 (see BlockNumbers)
+	 * @param blockBytes file data of the block
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeBlock(long blockIndex, byte[] blockBytes) throws IOException {
+		writeBlock(blockIndex, ByteBuffer.wrap(blockBytes));
+	}
+
+	/**
+	 * Writes a single block of the file from a buffer, the buffer is read up to its limit
+	 *
+	 * @param blockIndex  block index starting at 1 (see BlockNumbers)
+	 * @param blockBuffer file data of the block
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeBlock(long blockIndex, ByteBuffer blockBuffer) throws IOException {
+		long position = (blockIndex - 1) * blockSize;
+		int length = blockBuffer.remaining();
+
+		// the buffer only holds data that is contiguous in the file
+		if (writeBuffer.position() > 0 &&
+				(position != bufferFilePosition + writeBuffer.position() || length > writeBuffer.remaining()))
+			flush();
+
+		// a block larger than the buffer is written directly
+		if (length > writeBuffer.capacity()) {
+			write(blockBuffer, position);
+			return;
+		}
+
+		if (writeBuffer.position() == 0)
+			bufferFilePosition = position;
+
+		writeBuffer.put(blockBuffer);
+	}
+
+	/**
+	 * Writes the buffered blocks to the file
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public void flush() throws IOException {
+		writeBuffer.flip();
+		try {
+			write(writeBuffer, bufferFilePosition);
+		} finally {
+			writeBuffer.clear();
+		}
+	}
+
+	/**
+	 * Writes the buffered blocks, closes the file, gives the buffer back to the pool
+	 * and releases the disk space that is still reserved
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public void close() throws IOException {
+		if (!fileChannel.isOpen())
+			return;
+
+		try {
+			flush();
+		} finally {
+			fileChannel.close();
+			FileWriteBufferPool.getInstance().release(writeBuffer);
+			writeBuffer = null;
+
+			FileManager.releaseSpace(reservedBytes);
+			reservedBytes = 0;
+		}
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int length = fileChannel.write(buffer, position);
+			position += length;
+
+			// the bytes written now take up space on the disk, they no longer need a reservation
+			if (reservedBytes > 0) {
+				long writtenBytes = Math.min(length, reservedBytes);
+				FileManager.releaseSpace(writtenBytes);
+				reservedBytes -= writtenBytes;
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class keeps the content of frequently read files in memory for every RRQ transfer of the server.
+ *
+ * The cache has a byte budget (NetworkConfig.FILE_CACHE_SIZE). File data is stored in direct
+ * buffers, outside of the garbage collected heap. Which files are kept is decided with TinyLFU:
+ * a file only replaces cached files if it was requested more often than each of them recently,
+ * so reading many files once (a scan) does not push out the files every client asks for.
+ *
+ * A cached file is checked against the size and modification time of the file on disk before
+ * it is used and dropped if the file changed.
+ *
+ * Files are loaded on a background thread, the request that causes the load and requests that
+ * arrive while it is loading read the file from disk, or from the copy they share when
+ * more than one transfer reads it at once (see SharedFileReaders).
+ *
+ * @author Group 8
+ */
+public class FileContentCache {
+	private static final FileContentCache instance = new FileContentCache(NetworkConfig.FILE_CACHE_SIZE);
+
+	/**
+	 * This class is a cached file and the state of the file on disk it was read from
+	 */
+	private class CacheEntry {
+		ByteBuffer fileContent;
+		long fileSize;
+		long lastModified;
+	}
+
+	// changed at runtime by setCapacity
+	private volatile long capacityBytes;
+	private volatile long maxFileSize;
+
+	// cached files in least recently used order
+	private LinkedHashMap<Path, CacheEntry> entries;
+	// files being loaded and the bytes reserved for them
+	private Map<Path, Long> loadingFiles;
+	private FrequencySketch frequencySketch;
+	private long usedBytes;
+
+	private ExecutorService loader;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacityBytes byte budget of the cache, 0 disables the cache
+	 */
+	public FileContentCache(long capacityBytes) {
+		this.capacityBytes = capacityBytes;
+		// a single file may not take more than a quarter of the cache
+		this.maxFileSize = Math.min(capacityBytes / 4, Integer.MAX_VALUE);
+
+		entries = new LinkedHashMap<Path, CacheEntry>(16, 0.75f, true);
+		loadingFiles = new HashMap<Path, Long>();
+		frequencySketch = new FrequencySketch(NetworkConfig.FILE_CACHE_SKETCH_WIDTH);
+
+		loader = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "FileContentCacheLoader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @return cache shared by every transfer of the server
+	 */
+	public static FileContentCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the blocks of a file opened for a RRQ.
+	 * If the file is cached the blocks come from memory and the file channel is closed.
+	 * Otherwise the blocks come from the file channel or from a memory mapping of it,
+	 * or from a copy of the file shared with the other transfers reading it at the same
+	 * time (see SharedFileReaders)
+	 *
+	 * @param fileName     name of the requested file
+	 * @param fileChannel  file opened with FileManager.openFile
+	 * @param blockSize    negotiated block size
+	 * @param memoryMapped true if a file that is not cached or shared should be memory-mapped
+	 * @return block source of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public BlockSource getBlockSource(String fileName, FileChannel fileChannel, int blockSize, boolean memoryMapped) throws IOException {
+		Path path = new File(fileName).getAbsoluteFile().toPath().normalize();
+		long fileSize = fileChannel.size();
+		long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+		if (capacityBytes > 0) {
+			ByteBuffer fileContent = lookup(path, fileSize, lastModified);
+
+			if (fileContent != null) {
+				fileChannel.close();
+				return new CachedBlockSource(fileContent, blockSize);
+			}
+
+			if (reserve(path, fileSize))
+				loader.execute(() -> load(path));
+		}
+
+		return SharedFileReaders.getInstance().getBlockSource(path, fileChannel, fileSize, lastModified, blockSize, memoryMapped);
+	}
+
+	/**
+	 * Returns the cached content of a file if it matches the file on disk
+	 *
+	 * @param path         absolute path of the file
+	 * @param fileSize     size of the file on disk
+	 * @param lastModified modification time of the file on disk
+	 * @return cached content or null
+	 */
+	private synchronized ByteBuffer lookup(Path path, long fileSize, long lastModified) {
+		frequencySketch.increment(path);
+
+		CacheEntry entry = entries.get(path);
+
+		// the file changed since it was cached
+		if (entry != null && (entry.fileSize != fileSize || entry.lastModified != lastModified)) {
+			Log.verbose("FileContentCache", "%s changed on disk, removing it from the cache", path);
+			remove(path);
+			entry = null;
+		}
+
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+
+		hitCount++;
+		return entry.fileContent;
+	}
+
+	/**
+	 * Decides if a file that is not cached should be loaded and makes room for it.
+	 * Cached files are only evicted for a file that was requested more often than each of them
+	 *
+	 * @param path     absolute path of the file
+	 * @param fileSize size of the file on disk
+	 * @return true if the file has to be loaded
+	 */
+	private synchronized boolean reserve(Path path, long fileSize) {
+		if (fileSize > maxFileSize || loadingFiles.containsKey(path) || entries.containsKey(path))
+			return false;
+
+		long reservedBytes = usedBytes + fileSize;
+		int candidateFrequency = frequencySketch.frequency(path);
+		List<Path> victims = new ArrayList<Path>();
+
+		Iterator<Map.Entry<Path, CacheEntry>> iterator = entries.entrySet().iterator();
+		while (reservedBytes > capacityBytes && iterator.hasNext()) {
+			Map.Entry<Path, CacheEntry> victim = iterator.next();
+
+			if (frequencySketch.frequency(victim.getKey()) >= candidateFrequency)
+				return false;
+
+			victims.add(victim.getKey());
+			reservedBytes -= victim.getValue().fileSize;
+		}
+
+		if (reservedBytes > capacityBytes)
+			return false;
+
+		for (Path victim : victims) {
+			remove(victim);
+			evictionCount++;
+		}
+
+		// the bytes are counted now so that other loads do not take the same room
+		usedBytes += fileSize;
+		loadingFiles.put(path, fileSize);
+		return true;
+	}
+
+	/**
+	 * Reads a whole file into a direct buffer, runs on the loader thread
+	 *
+	 * @param path absolute path of the file
+	 */
+	private void load(Path path) {
+		CacheEntry entry = new CacheEntry();
+
+		try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			entry.lastModified = Files.getLastModifiedTime(path).toMillis();
+			entry.fileSize = fileChannel.size();
+
+			if (entry.fileSize <= maxFileSize) {
+				ByteBuffer fileContent = ByteBuffer.allocateDirect((int) entry.fileSize);
+				while (fileContent.hasRemaining() && fileChannel.read(fileContent) >= 0);
+
+				// the file is only cached if it did not change while it was read
+				if (!fileContent.hasRemaining() && Files.getLastModifiedTime(path).toMillis() == entry.lastModified) {
+					fileContent.flip();
+					entry.fileContent = fileContent.asReadOnlyBuffer();
+				}
+			}
+		} catch (IOException e) {
+			Log.error("FileContentCache", "cannot load %s", path);
+		}
+
+		synchronized (this) {
+			// the room was reserved for the size the file had when it was requested
+			usedBytes -= loadingFiles.remove(path);
+
+			if (entry.fileContent != null && usedBytes + entry.fileSize <= capacityBytes) {
+				entries.put(path, entry);
+				usedBytes += entry.fileSize;
+				Log.verbose("FileContentCache", "cached %s (%d bytes)", path, entry.fileSize);
+			}
+		}
+	}
+
+	private synchronized void remove(Path path) {
+		CacheEntry entry = entries.remove(path);
+		if (entry != null)
+			usedBytes -= entry.fileSize;
+	}
+
+	/**
+	 * Changes the byte budget of the cache, the least recently used files are removed
+	 * until the cached files fit in the new budget
+	 *
+	 * @param capacityBytes byte budget of the cache, 0 disables the cache
+	 */
+	public synchronized void setCapacity(long capacityBytes) {
+		this.capacityBytes = Math.max(0, capacityBytes);
+		this.maxFileSize = Math.min(this.capacityBytes / 4, Integer.MAX_VALUE);
+
+		// get() would reorder the entries, they are read from the iterator
+		Iterator<Map.Entry<Path, CacheEntry>> iterator = entries.entrySet().iterator();
+		while (usedBytes > this.capacityBytes && iterator.hasNext()) {
+			usedBytes -= iterator.next().getValue().fileSize;
+			iterator.remove();
+			evictionCount++;
+		}
+	}
+
+	public long getCapacity() {
+		return capacityBytes;
+	}
+
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+}
@@ -3,6 +3,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 /**
  * This class provides an interface for objects to write or read files from hard drive
@@ -13,6 +19,8 @@ import java.io.FileNotFoundException;
 public class FileManager {
 	// directory where the file that are transferred will be saved
 	private static String destinationDirectoryStr = "transfered_files";
+	// bytes promised to the files being written that they have not written yet (see openFileWriter)
+	private static long reservedBytes = 0;
 	
 	/**
 	 * This class has the necessary variables to indicate the result
@@ -22,6 +30,8 @@ public class FileManager {
 	 */
 	public class FileManagerResult {
 		public byte[] fileBytes = null;
+		public FileChannel fileChannel = null;
+		public FileBlockWriter fileWriter = null;
 		boolean accessViolation = false;
 		boolean fileNotFound = false;
 		boolean fileAlreadyExist = false;
@@ -31,6 +41,13 @@ public class FileManager {
 
 	public FileManager() {}
 	
+	/**
+	 * @return directory, relative to the working directory, where the files written by WRQ transfers are saved
+	 */
+	public static String getDestinationDirectory() {
+		return destinationDirectoryStr;
+	}
+	
 	/**
 	 * Read file from hard dive and return data in list of bytes
 	 * 
@@ -43,6 +60,13 @@ public class FileManager {
 		
 		File file = new File(fileName);
 		
+		// an array cannot hold a file of 2 GB or more, such files are only sent with openFile
+		if (file.length() > Integer.MAX_VALUE - 8) {
+			System.err.println(Globals.getErrorMessage("FileManager", "file is too large to be read at once."));
+			res.error = true;
+			return res;
+		}
+		
 		byte[] fileBytes = new byte[(int)file.length()];
 		
 		try {
@@ -81,6 +105,63 @@ public class FileManager {
 		return res;
 	}
 	
+	/**
+	 * Opens a file from hard drive for reading without reading its data,
+	 * the data is read later one block at a time (see FileBlockSource)
+	 * 
+	 * @param fileName: fileName
+	 * 
+	 * Return FileManagerResult containing the opened file channel or error flagged
+	 */
+	public FileManagerResult openFile(String fileName) {
+		FileManagerResult res = new FileManagerResult();
+		
+		File file = new File(fileName);
+		
+		// a directory cannot be sent as a file
+		if (file.isDirectory()) {
+			res.fileNotFound = true;
+			res.error = true;
+			return res;
+		}
+		
+		try {
+			res.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			res.fileNotFound = true;
+			res.error = true;
+		} catch (AccessDeniedException e) {
+			res.accessViolation = true;
+			res.error = true;
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileManager", "cannot read file."));
+			e.printStackTrace();
+			
+			// if the error message contains "Permission denied"
+			// then set the accessViolation flag to true
+			if (e.getMessage() != null && e.getMessage().contains("Permission denied"))
+				res.accessViolation = true;
+			
+			// set error flag
+			res.error = true;
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Closes a file opened with openFile
+	 * 
+	 * @param fileChannel file channel returned by openFile
+	 */
+	public void closeFile(FileChannel fileChannel) {
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileManager", "cannot close file."));
+		}
+	}
+	
 	/**
 	 * Method used to create a file if it is not already there
 	 * 
@@ -126,6 +207,190 @@ public class FileManager {
 		return res;
 	}
 	
+	/**
+	 * Opens a file created with createFile for the whole transfer
+	 * 
+	 * If the size of the file is known (tsize option) the space is reserved before the transfer
+	 * starts: the file must fit in the usable space of the disk minus the space reserved by the
+	 * other files being written, and the reservation shrinks as the file is written until the
+	 * writer is closed. Java cannot allocate the blocks of a file without writing them (setLength
+	 * makes a sparse file), so the space is only reserved between the transfers of this process,
+	 * other processes can still fill the disk
+	 * 
+	 * @param fileName:  file name
+	 * @param blockSize: negotiated block size
+	 * @param fileSize:  size of the file in bytes or -1 if it is not known
+	 * 
+	 * Return FileManagerResult containing the file writer or error flagged, diskFull if the file does not fit
+	 */
+	public FileManagerResult openFileWriter(String fileName, int blockSize, long fileSize) {
+		FileManagerResult res = new FileManagerResult();
+		
+		String fileNameFull = System.getProperty("user.dir") + File.separator + destinationDirectoryStr + File.separator + fileName;
+		File file = new File(fileNameFull);
+		long reservation = Math.max(fileSize, 0);
+		
+		if (!reserveSpace(file, reservation)) {
+			res.diskFull = true;
+			res.error = true;
+			return res;
+		}
+		
+		try {
+			FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+			res.fileWriter = new FileBlockWriter(fileChannel, blockSize, reservation);
+		} catch (NoSuchFileException e) {
+			res.fileNotFound = true;
+			res.error = true;
+		} catch (AccessDeniedException e) {
+			res.accessViolation = true;
+			res.error = true;
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileManager", "cannot open file."));
+			e.printStackTrace();
+			setWriteErrorFlags(res, e);
+		}
+		
+		if (res.error)
+			releaseSpace(reservation);
+		
+		return res;
+	}
+	
+	/**
+	 * Writes a block of file data with the file writer of the transfer
+	 * 
+	 * @param fileWriter: file writer returned by openFileWriter
+	 * @param blockIndex: index of the block in the file starting at 1 (see BlockNumbers)
+	 * @param data:       file data in byte form
+	 * 
+	 * Return FileManagerResult containing the errors flags
+	 */
+	public FileManagerResult writeBlock(FileBlockWriter fileWriter, long blockIndex, byte[] data) {
+		return writeBlock(fileWriter, blockIndex, ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Writes a block of file data from a buffer with the file writer of the transfer
+	 * 
+	 * @param fileWriter: file writer returned by openFileWriter
+	 * @param blockIndex: index of the block in the file starting at 1 (see BlockNumbers)
+	 * @param data:       file data, read up to the limit of the buffer
+	 * 
+	 * Return FileManagerResult containing the errors flags
+	 */
+	public FileManagerResult writeBlock(FileBlockWriter fileWriter, long blockIndex, ByteBuffer data) {
+		FileManagerResult res = new FileManagerResult();
+		
+		try {
+			fileWriter.writeBlock(blockIndex, data);
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileManager", "cannot write file."));
+			e.printStackTrace();
+			setWriteErrorFlags(res, e);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Reserves space for a file being written if the usable space of the partition
+	 * it is on minus the space already reserved is large enough
+	 * 
+	 * @param file:  file being written
+	 * @param bytes: number of bytes to reserve
+	 * 
+	 * Return false if the file does not fit
+	 */
+	private static synchronized boolean reserveSpace(File file, long bytes) {
+		if (bytes == 0)
+			return true;
+		
+		if (bytes > file.getUsableSpace() - reservedBytes)
+			return false;
+		
+		reservedBytes += bytes;
+		return true;
+	}
+	
+	/**
+	 * Gives back space reserved by openFileWriter, once it was written or the file was closed
+	 * 
+	 * @param bytes: number of bytes released
+	 */
+	public static synchronized void releaseSpace(long bytes) {
+		reservedBytes -= bytes;
+	}
+	
+	/**
+	 * @return number of bytes reserved for the files being written that they have not written yet
+	 */
+	public static synchronized long getReservedBytes() {
+		return reservedBytes;
+	}
+	
+	/**
+	 * Deletes a file created with createFile for a transfer that could not start,
+	 * so that the client can send its request again
+	 * 
+	 * @param fileName: file name
+	 */
+	public void deleteFile(String fileName) {
+		String fileNameFull = System.getProperty("user.dir") + File.separator + destinationDirectoryStr + File.separator + fileName;
+		
+		try {
+			Files.deleteIfExists(new File(fileNameFull).toPath());
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileManager", "cannot delete file."));
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Writes the buffered data of the file writer and closes the file.
+	 * Called once the last block was received or when the transfer is aborted
+	 * 
+	 * @param fileWriter: file writer returned by openFileWriter
+	 * 
+	 * Return FileManagerResult containing the errors flags
+	 */
+	public FileManagerResult closeFileWriter(FileBlockWriter fileWriter) {
+		FileManagerResult res = new FileManagerResult();
+		
+		try {
+			fileWriter.close();
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("FileManager", "cannot write file."));
+			e.printStackTrace();
+			setWriteErrorFlags(res, e);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Sets the error flags for an exception thrown while writing a file
+	 * 
+	 * @param res: result to set the flags on
+	 * @param e:   exception thrown
+	 */
+	private void setWriteErrorFlags(FileManagerResult res, IOException e) {
+		String message = e.getMessage() != null ? e.getMessage() : "";
+		
+		// if the error message contains "Permission denied"
+		// then set the accessViolation flag to true
+		if (message.contains("Permission denied"))
+			res.accessViolation = true;
+		
+		// Check error message to see if the error is about disk full
+		if (message.contains("not enough space") || message.contains("Not enough space")
+		        || message.contains("No space left"))
+		    res.diskFull = true;
+		
+		// set error flag
+		res.error = true;
+	}
+	
 	/**
 	 * Writes file data in bytes to a hard drive with the given file name
 	 * 
@@ -0,0 +1,105 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * This class keeps the direct buffers that the blocks of WRQ transfers are collected in before
+ * they are written to their file (see FileBlockWriter), so that an upload does not allocate one.
+ *
+ * Direct buffers are slow to allocate and their memory is only freed once the garbage collector
+ * finds them, so at most NetworkConfig.FILE_WRITE_BUFFER_POOL_SIZE of them are ever allocated.
+ * While they are all taken a writer gets a heap buffer, which the file channel copies from, and
+ * heap buffers are not kept by the pool.
+ *
+ * @author Group 8
+ */
+public class FileWriteBufferPool {
+	private static final FileWriteBufferPool instance = new FileWriteBufferPool(NetworkConfig.FILE_WRITE_BUFFER_POOL_SIZE,
+			NetworkConfig.FILE_WRITE_BUFFER_SIZE);
+
+	private int maxDirectBuffers;
+	private int bufferSize;
+
+	private ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<ByteBuffer>();
+	// direct buffers allocated, free or taken
+	private int directBufferCount;
+	// heap buffers handed out because every direct buffer was taken
+	private long exhaustedCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxDirectBuffers largest number of direct buffers allocated
+	 * @param bufferSize       size of a buffer in bytes
+	 */
+	public FileWriteBufferPool(int maxDirectBuffers, int bufferSize) {
+		this.maxDirectBuffers = maxDirectBuffers;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @return pool shared by every file writer of the process
+	 */
+	public static FileWriteBufferPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Takes a free direct buffer, allocates one if fewer than the maximum exist,
+	 * otherwise allocates a heap buffer
+	 *
+	 * @return empty buffer of NetworkConfig.FILE_WRITE_BUFFER_SIZE bytes
+	 */
+	public ByteBuffer acquire() {
+		synchronized (this) {
+			ByteBuffer buffer = freeBuffers.pollLast();
+			if (buffer != null)
+				return buffer;
+
+			if (directBufferCount >= maxDirectBuffers) {
+				exhaustedCount++;
+				return ByteBuffer.allocate(bufferSize);
+			}
+
+			directBufferCount++;
+		}
+
+		return ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Gives a buffer back to the pool, it must not be used by the caller anymore
+	 *
+	 * @param buffer buffer returned by acquire
+	 */
+	public void release(ByteBuffer buffer) {
+		if (!buffer.isDirect())
+			return;
+
+		buffer.clear();
+
+		synchronized (this) {
+			freeBuffers.addLast(buffer);
+		}
+	}
+
+	/**
+	 * @return number of direct buffers allocated, free or taken
+	 */
+	public synchronized int getDirectBufferCount() {
+		return directBufferCount;
+	}
+
+	/**
+	 * @return number of free direct buffers held by the pool
+	 */
+	public synchronized int getPooledCount() {
+		return freeBuffers.size();
+	}
+
+	/**
+	 * @return number of times a heap buffer was handed out because every direct buffer was taken
+	 */
+	public synchronized long getExhaustedCount() {
+		return exhaustedCount;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * This class estimates how often a key was accessed recently (count-min sketch).
+ *
+ * Every key is counted in one counter of each row, the estimate is the smallest of
+ * those counters. Counters stop at MAX_COUNT and all counters are halved once enough
+ * accesses were recorded, so keys that were popular a long time ago fade out.
+ * Used by FileContentCache to decide which files are worth keeping (TinyLFU)
+ *
+ * @author Group 8
+ */
+public class FrequencySketch {
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+	private int[][] counters;
+	private int widthMask;
+	private int sampleSize;
+	private int additions;
+
+	/**
+	 * Constructor
+	 *
+	 * @param width number of counters in each row, rounded up to a power of two
+	 */
+	public FrequencySketch(int width) {
+		int tableWidth = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+
+		counters = new int[DEPTH][tableWidth];
+		widthMask = tableWidth - 1;
+		sampleSize = 10 * tableWidth;
+	}
+
+	/**
+	 * Records an access to a key
+	 *
+	 * @param key accessed key
+	 */
+	public void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+
+		for (int row = 0; row < DEPTH; row++) {
+			int index = indexOf(hash, row);
+			if (counters[row][index] < MAX_COUNT) {
+				counters[row][index]++;
+				added = true;
+			}
+		}
+
+		if (added && ++additions == sampleSize)
+			reset();
+	}
+
+	/**
+	 * @param key key to look up
+	 * @return estimated number of recent accesses to the key
+	 */
+	public int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+
+		for (int row = 0; row < DEPTH; row++)
+			frequency = Math.min(frequency, counters[row][indexOf(hash, row)]);
+
+		return frequency;
+	}
+
+	/**
+	 * Halves every counter
+	 */
+	private void reset() {
+		for (int[] row : counters)
+			for (int i = 0; i < row.length; i++)
+				row[i] >>>= 1;
+
+		additions /= 2;
+	}
+
+	private int indexOf(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * SEEDS[row];
+		return (h ^ (h >>> 16)) & widthMask;
+	}
+
+	private static int spread(int hash) {
+		hash ^= hash >>> 17;
+		hash *= 0xED5AD4BB;
+		hash ^= hash >>> 11;
+		return hash;
+	}
+}
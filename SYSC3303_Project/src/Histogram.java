@@ -0,0 +1,99 @@
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts values in fixed buckets, like a Prometheus histogram.
+ *
+ * Each bucket is a striped counter (LongAdder) so threads recording values at the same time
+ * do not contend on a single memory location and no lock is taken. A value is counted in the
+ * first bucket whose upper bound it does not exceed, the buckets are added up when the histogram
+ * is written so that each bucket counts the values less than or equal to its bound.
+ *
+ * @author Group 8
+ */
+public class Histogram {
+	private double[] upperBounds;
+	// the last counter is the +Inf bucket
+	private LongAdder[] bucketCounts;
+	private DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 * Constructor
+	 *
+	 * @param upperBounds upper bounds of the buckets in increasing order, +Inf is added
+	 */
+	public Histogram(double... upperBounds) {
+		this.upperBounds = upperBounds.clone();
+
+		bucketCounts = new LongAdder[upperBounds.length + 1];
+		for (int i = 0; i < bucketCounts.length; i++)
+			bucketCounts[i] = new LongAdder();
+	}
+
+	/**
+	 * Returns the bounds start, start * factor, start * factor^2... used for latencies and rates
+	 *
+	 * @param start  upper bound of the first bucket
+	 * @param factor ratio between two bounds
+	 * @param count  number of bounds
+	 * @return bounds
+	 */
+	public static double[] exponentialBounds(double start, double factor, int count) {
+		double[] bounds = new double[count];
+		for (int i = 0; i < count; i++)
+			bounds[i] = start * Math.pow(factor, i);
+		return bounds;
+	}
+
+	/**
+	 * @param value value to count
+	 */
+	public void record(double value) {
+		int bucket = 0;
+		while (bucket < upperBounds.length && value > upperBounds[bucket])
+			bucket++;
+
+		bucketCounts[bucket].increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Writes the histogram in the Prometheus text format
+	 *
+	 * @param output text the lines are added to
+	 * @param name   name of the metric
+	 * @param labels labels of the histogram without braces (for example type="rrq"), empty for none
+	 */
+	public void write(StringBuilder output, String name, String labels) {
+		String separator = labels.isEmpty() ? "" : ",";
+		long cumulativeCount = 0;
+
+		for (int i = 0; i < bucketCounts.length; i++) {
+			cumulativeCount += bucketCounts[i].sum();
+			String bound = i < upperBounds.length ? Double.toString(upperBounds[i]) : "+Inf";
+			output.append(name).append("_bucket{").append(labels).append(separator)
+					.append("le=\"").append(bound).append("\"} ").append(cumulativeCount).append('\n');
+		}
+
+		String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+		output.append(name).append("_sum").append(braces).append(' ').append(sum.sum()).append('\n');
+		output.append(name).append("_count").append(braces).append(' ').append(cumulativeCount).append('\n');
+	}
+
+	/**
+	 * @return number of values counted
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucketCount : bucketCounts)
+			count += bucketCount.sum();
+		return count;
+	}
+
+	/**
+	 * @return sum of the values counted
+	 */
+	public double getSum() {
+		return sum.sum();
+	}
+}
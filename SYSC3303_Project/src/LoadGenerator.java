@@ -0,0 +1,647 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a headless load generator for a running server.
+ *
+ * A number of clients run at the same time against a server address. Each client makes RRQ
+ * and WRQ transfers back to back until the end of the run, the size of each file is drawn from
+ * a weighted mix. The clients start one after the other during the ramp-up and only the transfers
+ * requested after the ramp-up are measured. At the end the goodput (bytes of file data of the
+ * completed transfers per second), the requests per second and the 50th, 99th and 99.9th
+ * percentiles of the transfer latency and of the time to first block are printed as text, JSON
+ * or CSV so that runs can be compared.
+ *
+ * The latency of a transfer runs from the request to its last block. The time to first block
+ * runs from the request to DATA 1 for a RRQ and to the ACK 0 or OACK packet for a WRQ, when
+ * the server is ready for the first block.
+ *
+ * The files read by the RRQ transfers are written to the server before the run (loadgen-SIZE.bin).
+ * The WRQ transfers of the run create new files (loadgen-RUN-CLIENT-N.bin) that are left on the
+ * server. Every client sends from the address of this host, so the request rate limit of the
+ * server applies to the run as a whole: raise RateLimitRequestsPerSecond and RateLimitBurst of
+ * the ServerTuning MBean before a run that makes more requests than NetworkConfig allows.
+ * A request that is not answered is sent again, like the client of RFC 1350 does.
+ *
+ * The options, run and results are package-private so that NetworkSweepBenchmark can run the
+ * load generator in-process at every point of its sweep.
+ *
+ * Usage: LoadGenerator [options]
+ * 		--server HOST[:PORT]   server address (localhost:8000)
+ * 		--clients N            number of concurrent clients (16)
+ * 		--duration SECONDS     measured time of the run (30)
+ * 		--ramp-up SECONDS      time over which the clients start, not measured (0)
+ * 		--mix SIZE:WEIGHT,...  file size mix, sizes take a k or m suffix (1k:50,64k:40,1m:10)
+ * 		--write-ratio RATIO    fraction of the transfers that are WRQ (0.2)
+ * 		--blksize BYTES        requested block size (512)
+ * 		--windowsize BLOCKS    requested window size (1)
+ * 		--format FORMAT        text, json or csv (text)
+ *
+ * @author Group 8
+ */
+public class LoadGenerator {
+	private static final int RRQ = 0;
+	private static final int WRQ = 1;
+	private static final String[] TRANSFER_TYPES = { "rrq", "wrq", "all" };
+
+	private InetAddress serverAddress;
+	private int serverPort = NetworkConfig.SERVER_PORT;
+	private int numberOfClients = 16;
+	private int durationSeconds = 30;
+	private int rampUpSeconds = 0;
+	private double writeRatio = 0.2;
+	private int blockSize = NetworkConfig.DEFAULT_BLOCK_SIZE;
+	private int windowSize = NetworkConfig.DEFAULT_WINDOW_SIZE;
+	private String format = "text";
+
+	// file sizes of the mix, their weights and the data written by the WRQ transfers
+	private int[] fileSizes = { 1024, 64 * 1024, 1024 * 1024 };
+	private int[] fileSizeWeights = { 50, 40, 10 };
+	private int totalWeight;
+	private byte[][] fileContents;
+
+	// makes the names of the files written during the run unique
+	private String runId;
+	// time in nanoseconds from the end of the ramp-up until the last transfer ended
+	private long measuredTime;
+
+	/**
+	 * This class holds the progress of a single transfer
+	 */
+	private static class Transfer {
+		long firstBlockTime;
+		long bytes;
+	}
+
+	/**
+	 * This class is a growable list of durations in nanoseconds
+	 */
+	static class Samples {
+		long[] values = new long[256];
+		int size;
+		boolean sorted;
+
+		void add(long value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+
+			values[size++] = value;
+			sorted = false;
+		}
+
+		void addAll(Samples other) {
+			for (int i = 0; i < other.size; i++)
+				add(other.values[i]);
+		}
+
+		/**
+		 * @param percentile between 0 and 1
+		 * @return duration in milliseconds (nearest rank) or NaN if there are no samples
+		 */
+		double percentileMillis(double percentile) {
+			if (size == 0)
+				return Double.NaN;
+
+			if (!sorted) {
+				Arrays.sort(values, 0, size);
+				sorted = true;
+			}
+
+			int rank = (int) Math.ceil(percentile * size);
+			return values[Math.max(rank, 1) - 1] / 1000000.0;
+		}
+	}
+
+	/**
+	 * This class holds the measurements of one transfer type, either of a client or of the whole run
+	 */
+	static class Result {
+		long completed;
+		long failed;
+		long bytes;
+		Samples latencies = new Samples();
+		Samples firstBlockTimes = new Samples();
+
+		void add(Result other) {
+			completed += other.completed;
+			failed += other.failed;
+			bytes += other.bytes;
+			latencies.addAll(other.latencies);
+			firstBlockTimes.addAll(other.firstBlockTimes);
+		}
+	}
+
+	/**
+	 * Prepares the data of the file size mix
+	 */
+	void prepare() {
+		totalWeight = 0;
+		for (int weight : fileSizeWeights)
+			totalWeight += weight;
+
+		fileContents = new byte[fileSizes.length][];
+		for (int i = 0; i < fileSizes.length; i++) {
+			fileContents[i] = new byte[fileSizes[i]];
+			ThreadLocalRandom.current().nextBytes(fileContents[i]);
+		}
+
+		runId = Long.toString(System.currentTimeMillis(), 36);
+	}
+
+	/**
+	 * Writes the files read by the RRQ transfers to the server, a file left by an earlier
+	 * run is read instead
+	 *
+	 * @return false if a file can neither be written nor read
+	 */
+	boolean writeReadFiles() {
+		for (int i = 0; i < fileSizes.length; i++) {
+			if (!writeFile(writeFileName(i), fileContents[i], new Transfer()) && !readFile(readFileName(i), new Transfer())) {
+				System.err.println(Globals.getErrorMessage("LoadGenerator", String.format("cannot write or read %s on the server", readFileName(i))));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private String writeFileName(int sizeIndex) {
+		return String.format("loadgen-%d.bin", fileSizes[sizeIndex]);
+	}
+
+	/**
+	 * @return name a RRQ gives to the file written by writeReadFiles, RRQ file names are relative to
+	 *         the working directory of the server and WRQ files are saved in its destination directory
+	 */
+	private String readFileName(int sizeIndex) {
+		return FileManager.getDestinationDirectory() + "/" + writeFileName(sizeIndex);
+	}
+
+	/**
+	 * Runs every client and returns the measurements of the transfers requested after the ramp-up
+	 *
+	 * @return results of the RRQ, WRQ and all transfers
+	 */
+	Result[] run() throws InterruptedException {
+		Result[][] clientResults = new Result[numberOfClients][];
+
+		// clients run on virtual threads when available so that the load generator
+		// does not limit how many transfers the server sees at once
+		ExecutorService clientExecutor = Server.newVirtualThreadExecutor();
+		if (clientExecutor == null)
+			clientExecutor = Executors.newFixedThreadPool(numberOfClients);
+
+		long runStartTime = System.nanoTime();
+		long measureStartTime = runStartTime + TimeUnit.SECONDS.toNanos(rampUpSeconds);
+		long runEndTime = measureStartTime + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		for (int i = 0; i < numberOfClients; i++) {
+			int clientIndex = i;
+			long clientStartTime = runStartTime + TimeUnit.SECONDS.toNanos(rampUpSeconds) * i / numberOfClients;
+			clientResults[i] = new Result[] { new Result(), new Result() };
+
+			clientExecutor.execute(() -> runClient(clientIndex, clientStartTime, measureStartTime, runEndTime, clientResults[clientIndex]));
+		}
+
+		clientExecutor.shutdown();
+		clientExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+		// transfers still running at the end of the run are measured until they end
+		measuredTime = Math.max(1, System.nanoTime() - measureStartTime);
+
+		Result[] results = { new Result(), new Result(), new Result() };
+		for (Result[] clientResult : clientResults) {
+			results[RRQ].add(clientResult[RRQ]);
+			results[WRQ].add(clientResult[WRQ]);
+		}
+		results[2].add(results[RRQ]);
+		results[2].add(results[WRQ]);
+
+		return results;
+	}
+
+	/**
+	 * Makes transfers back to back from the start time of the client until the end of the run
+	 */
+	private void runClient(int clientIndex, long startTime, long measureStartTime, long endTime, Result[] results) {
+		long sleepTime = startTime - System.nanoTime();
+		if (sleepTime > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(sleepTime);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int sequence = 0;
+
+		while (System.nanoTime() < endTime) {
+			int sizeIndex = pickFileSize(random);
+			int type = random.nextDouble() < writeRatio ? WRQ : RRQ;
+			Transfer transfer = new Transfer();
+
+			long requestTime = System.nanoTime();
+			boolean finished;
+			if (type == RRQ)
+				finished = readFile(readFileName(sizeIndex), transfer);
+			else
+				finished = writeFile(String.format("loadgen-%s-%d-%d.bin", runId, clientIndex, sequence++), fileContents[sizeIndex], transfer);
+			long transferEndTime = System.nanoTime();
+
+			// the transfers of the ramp-up are not measured
+			if (requestTime < measureStartTime)
+				continue;
+
+			Result result = results[type];
+			if (finished) {
+				result.completed++;
+				result.bytes += transfer.bytes;
+				result.latencies.add(transferEndTime - requestTime);
+				result.firstBlockTimes.add(transfer.firstBlockTime - requestTime);
+			}
+			else {
+				result.failed++;
+			}
+		}
+	}
+
+	private int pickFileSize(ThreadLocalRandom random) {
+		int weight = random.nextInt(totalWeight);
+
+		for (int i = 0; i < fileSizeWeights.length; i++) {
+			weight -= fileSizeWeights[i];
+			if (weight < 0)
+				return i;
+		}
+
+		return fileSizeWeights.length - 1;
+	}
+
+	/**
+	 * Reads a file from the server, the data received is discarded
+	 *
+	 * @param fileName name of the file on the server
+	 * @param transfer receives the time of the first block and the number of bytes
+	 * @return true if every block was received
+	 */
+	private boolean readFile(String fileName, Transfer transfer) {
+		TFTPSocket tftpSocket = new TFTPSocket(NetworkConfig.TIMEOUT_TIME);
+		ErrorHandler errorHandler = new ErrorHandler(tftpSocket);
+
+		try {
+			// tsize 0 asks the server for the size of the file, like the client does
+			Map<String, String> requestedOptions = TransferOptions.requestOptions(blockSize, windowSize, 0, 0);
+			tftpSocket.setMaxPacketLength(blockSize + 4);
+			TFTPPacket requestPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.RRQ, fileName, "octet", requestedOptions, serverAddress, serverPort);
+			tftpSocket.send(requestPacket);
+
+			PacketHandler packetHandler = new PacketHandler(tftpSocket, errorHandler, serverAddress, serverPort);
+			packetHandler.acceptNewRemoteTID();
+
+			// the server answers with an OACK packet if it accepted the options
+			// otherwise it answers with the first DATA packet
+			TFTPPacket responsePacket = packetHandler.receiveDATAOrOACKPacket(requestPacket);
+
+			if (responsePacket == null)
+				return false;
+
+			TransferOptions transferOptions = new TransferOptions();
+			DATAPacket dataPacket = null;
+
+			if (responsePacket instanceof OACKPacket) {
+				try {
+					transferOptions = TransferOptions.fromOACKPacket((OACKPacket) responsePacket, requestedOptions);
+				} catch (TFTPPacketParsingError e) {
+					errorHandler.sendOptionNegotiationErrorPacket(e.getMessage(), responsePacket.getRemoteAddress(), responsePacket.getRemotePort());
+					return false;
+				}
+
+				packetHandler.sendACKPacket((short) 0);
+			}
+			else {
+				dataPacket = (DATAPacket) responsePacket;
+			}
+
+			return packetHandler.receiveDATAPackets(dataPacket, transferOptions.getMaxPacketLength(), transferOptions.getWindowSize(),
+					(receivedDataPacket, blockIndex) -> {
+						if (blockIndex == 1)
+							transfer.firstBlockTime = System.nanoTime();
+
+						transfer.bytes += receivedDataPacket.getPacketLength() - DATAPacket.HEADER_LENGTH;
+						return true;
+					});
+		} finally {
+			tftpSocket.close();
+		}
+	}
+
+	/**
+	 * Writes a file to the server
+	 *
+	 * @param fileName    name of the file on the server
+	 * @param fileContent data of the file
+	 * @param transfer    receives the time the server accepted the request and the number of bytes
+	 * @return true if every block was acknowledged
+	 */
+	private boolean writeFile(String fileName, byte[] fileContent, Transfer transfer) {
+		TFTPSocket tftpSocket = new TFTPSocket(NetworkConfig.TIMEOUT_TIME);
+		ErrorHandler errorHandler = new ErrorHandler(tftpSocket);
+
+		try {
+			// the size of the file lets the server check that it has room for it
+			Map<String, String> requestedOptions = TransferOptions.requestOptions(blockSize, windowSize, fileContent.length, 0);
+			TFTPPacket requestPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.WRQ, fileName, "octet", requestedOptions, serverAddress, serverPort);
+			tftpSocket.send(requestPacket);
+
+			PacketHandler packetHandler = new PacketHandler(tftpSocket, errorHandler, serverAddress, serverPort);
+			packetHandler.acceptNewRemoteTID();
+
+			// the server answers with an OACK packet if it accepted the options
+			// otherwise it answers with ACK 0
+			TFTPPacket responsePacket = packetHandler.receiveACKOrOACKPacket(requestPacket);
+
+			if (responsePacket == null)
+				return false;
+
+			transfer.firstBlockTime = System.nanoTime();
+			TransferOptions transferOptions = new TransferOptions();
+
+			if (responsePacket instanceof OACKPacket) {
+				try {
+					transferOptions = TransferOptions.fromOACKPacket((OACKPacket) responsePacket, requestedOptions);
+				} catch (TFTPPacketParsingError e) {
+					errorHandler.sendOptionNegotiationErrorPacket(e.getMessage(), responsePacket.getRemoteAddress(), responsePacket.getRemotePort());
+					return false;
+				}
+			}
+			else if (((ACKPacket) responsePacket).getBlockNumber() != 0) {
+				return false;
+			}
+
+			BlockSource blockSource = new CachedBlockSource(ByteBuffer.wrap(fileContent), transferOptions.getBlockSize());
+			boolean finished = packetHandler.sendDATAPackets(blockSource, transferOptions.getWindowSize());
+			blockSource.close();
+
+			if (finished)
+				transfer.bytes = fileContent.length;
+
+			return finished;
+		} finally {
+			tftpSocket.close();
+		}
+	}
+
+	private void printText(Result[] results) {
+		double seconds = measuredTime / 1e9;
+
+		System.out.println(String.format("\nSYSC 3033 TFTP Load Generator - %d clients against %s:%d for %d s (ramp-up %d s), write ratio %.2f, blksize %d, windowsize %d",
+				numberOfClients, serverAddress.getHostAddress(), serverPort, durationSeconds, rampUpSeconds, writeRatio, blockSize, windowSize));
+		System.out.println(String.format("%-5s %10s %8s %10s %12s %30s %30s", "type", "completed", "failed", "req/s", "goodput(MB/s)",
+				"latency p50/p99/p999 (ms)", "first block p50/p99/p999 (ms)"));
+
+		for (int i = 0; i < results.length; i++) {
+			Result result = results[i];
+			System.out.println(String.format(Locale.ROOT, "%-5s %10d %8d %10.1f %12.2f %30s %30s", TRANSFER_TYPES[i], result.completed, result.failed,
+					result.completed / seconds, result.bytes / seconds / (1024.0 * 1024.0),
+					String.format(Locale.ROOT, "%.2f / %.2f / %.2f", result.latencies.percentileMillis(0.5), result.latencies.percentileMillis(0.99), result.latencies.percentileMillis(0.999)),
+					String.format(Locale.ROOT, "%.2f / %.2f / %.2f", result.firstBlockTimes.percentileMillis(0.5), result.firstBlockTimes.percentileMillis(0.99), result.firstBlockTimes.percentileMillis(0.999))));
+		}
+	}
+
+	private void printJSON(Result[] results) {
+		double seconds = measuredTime / 1e9;
+		StringBuilder json = new StringBuilder(2048);
+
+		json.append("{\"server\":\"").append(serverAddress.getHostAddress()).append(':').append(serverPort).append('"');
+		json.append(",\"clients\":").append(numberOfClients);
+		json.append(",\"durationSeconds\":").append(durationSeconds);
+		json.append(",\"rampUpSeconds\":").append(rampUpSeconds);
+		json.append(",\"measuredSeconds\":").append(jsonNumber(seconds));
+		json.append(",\"writeRatio\":").append(jsonNumber(writeRatio));
+		json.append(",\"blockSize\":").append(blockSize);
+		json.append(",\"windowSize\":").append(windowSize);
+
+		json.append(",\"fileSizeMix\":[");
+		for (int i = 0; i < fileSizes.length; i++) {
+			if (i > 0)
+				json.append(',');
+			json.append("{\"size\":").append(fileSizes[i]).append(",\"weight\":").append(fileSizeWeights[i]).append('}');
+		}
+		json.append(']');
+
+		json.append(",\"results\":{");
+		for (int i = 0; i < results.length; i++) {
+			Result result = results[i];
+			if (i > 0)
+				json.append(',');
+
+			json.append('"').append(TRANSFER_TYPES[i]).append("\":{");
+			json.append("\"completed\":").append(result.completed);
+			json.append(",\"failed\":").append(result.failed);
+			json.append(",\"requestsPerSecond\":").append(jsonNumber(result.completed / seconds));
+			json.append(",\"goodputBytesPerSecond\":").append(jsonNumber(result.bytes / seconds));
+			json.append(",\"latencyMillis\":");
+			appendPercentiles(json, result.latencies);
+			json.append(",\"timeToFirstBlockMillis\":");
+			appendPercentiles(json, result.firstBlockTimes);
+			json.append('}');
+		}
+		json.append("}}");
+
+		System.out.println(json);
+	}
+
+	private static void appendPercentiles(StringBuilder json, Samples samples) {
+		json.append("{\"p50\":").append(jsonNumber(samples.percentileMillis(0.5)));
+		json.append(",\"p99\":").append(jsonNumber(samples.percentileMillis(0.99)));
+		json.append(",\"p999\":").append(jsonNumber(samples.percentileMillis(0.999)));
+		json.append(",\"max\":").append(jsonNumber(samples.percentileMillis(1))).append('}');
+	}
+
+	static String jsonNumber(double value) {
+		// a type without completed transfers has no percentiles
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return "null";
+
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	private void printCSV(Result[] results) {
+		double seconds = measuredTime / 1e9;
+
+		System.out.println("type,clients,measured_seconds,completed,failed,requests_per_second,goodput_bytes_per_second,"
+				+ "latency_p50_ms,latency_p99_ms,latency_p999_ms,latency_max_ms,first_block_p50_ms,first_block_p99_ms,first_block_p999_ms,first_block_max_ms");
+
+		for (int i = 0; i < results.length; i++) {
+			Result result = results[i];
+			System.out.println(String.format(Locale.ROOT, "%s,%d,%.3f,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f", TRANSFER_TYPES[i], numberOfClients, seconds,
+					result.completed, result.failed, result.completed / seconds, result.bytes / seconds,
+					result.latencies.percentileMillis(0.5), result.latencies.percentileMillis(0.99), result.latencies.percentileMillis(0.999), result.latencies.percentileMillis(1),
+					result.firstBlockTimes.percentileMillis(0.5), result.firstBlockTimes.percentileMillis(0.99), result.firstBlockTimes.percentileMillis(0.999), result.firstBlockTimes.percentileMillis(1)));
+		}
+	}
+
+	/**
+	 * Reads a file size such as 512, 64k or 1m
+	 */
+	private static int parseSize(String size) {
+		String lowerCase = size.trim().toLowerCase(Locale.ROOT);
+		int multiplier = 1;
+
+		if (lowerCase.endsWith("k")) {
+			multiplier = 1024;
+			lowerCase = lowerCase.substring(0, lowerCase.length() - 1);
+		}
+		else if (lowerCase.endsWith("m")) {
+			multiplier = 1024 * 1024;
+			lowerCase = lowerCase.substring(0, lowerCase.length() - 1);
+		}
+
+		return Math.multiplyExact(Integer.parseInt(lowerCase), multiplier);
+	}
+
+	/**
+	 * Reads a file size mix such as 1k:50,64k:40,1m:10, a size without weight has weight 1
+	 */
+	private void parseMix(String mix) {
+		String[] entries = mix.split(",");
+		fileSizes = new int[entries.length];
+		fileSizeWeights = new int[entries.length];
+
+		for (int i = 0; i < entries.length; i++) {
+			String[] sizeAndWeight = entries[i].split(":");
+			fileSizes[i] = parseSize(sizeAndWeight[0]);
+			fileSizeWeights[i] = sizeAndWeight.length > 1 ? Integer.parseInt(sizeAndWeight[1].trim()) : 1;
+
+			if (fileSizes[i] < 0 || fileSizeWeights[i] <= 0)
+				throw new IllegalArgumentException("invalid file size mix: " + mix);
+		}
+	}
+
+	/**
+	 * Reads the command line options
+	 *
+	 * @throws IllegalArgumentException if an option is unknown or invalid
+	 */
+	void parseArguments(String[] args) throws UnknownHostException {
+		String serverHost = null;
+
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + option);
+			String value = args[++i];
+
+			switch (option) {
+			case "--server":
+				int colon = value.lastIndexOf(':');
+				if (colon >= 0) {
+					serverHost = value.substring(0, colon);
+					serverPort = Integer.parseInt(value.substring(colon + 1));
+				}
+				else {
+					serverHost = value;
+				}
+				break;
+			case "--clients":
+				numberOfClients = Integer.parseInt(value);
+				break;
+			case "--duration":
+				durationSeconds = Integer.parseInt(value);
+				break;
+			case "--ramp-up":
+				rampUpSeconds = Integer.parseInt(value);
+				break;
+			case "--mix":
+				parseMix(value);
+				break;
+			case "--write-ratio":
+				writeRatio = Double.parseDouble(value);
+				break;
+			case "--blksize":
+				blockSize = Integer.parseInt(value);
+				break;
+			case "--windowsize":
+				windowSize = Integer.parseInt(value);
+				break;
+			case "--format":
+				format = value;
+				break;
+			default:
+				throw new IllegalArgumentException("unknown option " + option);
+			}
+		}
+
+		if (numberOfClients < 1 || durationSeconds < 1 || rampUpSeconds < 0 || writeRatio < 0 || writeRatio > 1
+				|| blockSize < NetworkConfig.MIN_BLOCK_SIZE || blockSize > NetworkConfig.MAX_BLOCK_SIZE
+				|| windowSize < 1 || windowSize > NetworkConfig.MAX_WINDOW_SIZE)
+			throw new IllegalArgumentException("option out of range");
+
+		if (!format.equals("text") && !format.equals("json") && !format.equals("csv"))
+			throw new IllegalArgumentException("unknown format " + format);
+
+		serverAddress = serverHost != null ? InetAddress.getByName(serverHost) : InetAddress.getLocalHost();
+	}
+
+	/**
+	 * @return time in seconds from the end of the ramp-up until the last transfer of the run ended
+	 */
+	double getMeasuredSeconds() {
+		return measuredTime / 1e9;
+	}
+
+	double getWriteRatio() {
+		return writeRatio;
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: LoadGenerator [--server HOST[:PORT]] [--clients N] [--duration SECONDS] [--ramp-up SECONDS]");
+		System.err.println("                     [--mix SIZE:WEIGHT,...] [--write-ratio RATIO] [--blksize BYTES] [--windowsize BLOCKS]");
+		System.err.println("                     [--format text|json|csv]");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		LoadGenerator loadGenerator = new LoadGenerator();
+
+		try {
+			loadGenerator.parseArguments(args);
+		} catch (IllegalArgumentException | ArithmeticException | UnknownHostException e) {
+			System.err.println(Globals.getErrorMessage("LoadGenerator", e.getMessage()));
+			printUsage();
+			System.exit(1);
+		}
+
+		// a timeout or an ERROR packet of a single transfer is counted, not printed
+		Log.setLevel(LogLevel.OFF);
+
+		loadGenerator.prepare();
+
+		if (loadGenerator.writeRatio < 1 && !loadGenerator.writeReadFiles())
+			System.exit(1);
+
+		// progress goes to stderr so that stdout only holds the results
+		System.err.println(String.format("running %d clients for %d s...", loadGenerator.numberOfClients,
+				loadGenerator.rampUpSeconds + loadGenerator.durationSeconds));
+
+		Result[] results = loadGenerator.run();
+
+		if (loadGenerator.format.equals("json"))
+			loadGenerator.printJSON(results);
+		else if (loadGenerator.format.equals("csv"))
+			loadGenerator.printCSV(results);
+		else
+			loadGenerator.printText(results);
+
+		System.exit(0);
+	}
+}
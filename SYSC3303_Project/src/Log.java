@@ -0,0 +1,267 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class writes the messages of the server without slowing down the transfers.
+ *
+ * Messages are not formatted by the thread that logs them. The format string and its arguments
+ * are stored in a slot of a ring buffer (NetworkConfig.LOG_BUFFER_SIZE slots allocated once) and a
+ * background writer formats them and writes them to System.out (verbose messages) or System.err
+ * (errors) in the order they were logged, with the same prefixes as Globals. A message whose level
+ * is disabled costs a single volatile read. Call sites on the packet path that pass numbers check
+ * isVerbose first so that their arguments are not boxed either.
+ *
+ * Threads claim a slot with a compare and set and never wait for the writer, a message that finds
+ * the ring buffer full is dropped and counted. The writer parks while the ring buffer is empty and
+ * the thread that logs the next message unparks it, the streams are flushed once the writer has
+ * written all the messages it found. The messages left in the ring buffer are written when the
+ * JVM exits.
+ *
+ * @author Group 8
+ */
+public class Log {
+	/**
+	 * This class is a slot of the ring buffer
+	 */
+	private static class LogEvent {
+		// sequence of the message the slot holds, written last to publish the message to the writer
+		volatile long sequence = -1;
+		LogLevel level;
+		String className;
+		String format;
+		Object[] args = new Object[MAX_ARGS];
+		int argCount;
+	}
+
+	private static final int MAX_ARGS = 4;
+	// time flush sleeps between two checks of the writer, in nanoseconds
+	private static final long FLUSH_PARK_TIME = 1000000;
+
+	private static volatile LogLevel level = LogLevel.VERBOSE;
+
+	private static final LogEvent[] ringBuffer;
+	private static final int mask;
+	// next sequence to claim
+	private static final AtomicLong claimSequence = new AtomicLong();
+	// next sequence the writer writes, slots below it can be claimed again
+	private static volatile long writeSequence;
+
+	private static final Thread writerThread;
+	// set by the writer before it parks, a thread that logs a message unparks it
+	private static volatile boolean writerParked;
+
+	private static final LongAdder droppedCount = new LongAdder();
+	private static volatile long writtenCount;
+
+	static {
+		int size = 1;
+		while (size < NetworkConfig.LOG_BUFFER_SIZE)
+			size <<= 1;
+
+		ringBuffer = new LogEvent[size];
+		for (int i = 0; i < size; i++)
+			ringBuffer[i] = new LogEvent();
+		mask = size - 1;
+
+		writerThread = new Thread(Log::write, "LogWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+	}
+
+	public static LogLevel getLevel() {
+		return level;
+	}
+
+	/**
+	 * @param newLevel most detailed level written from now on
+	 */
+	public static void setLevel(LogLevel newLevel) {
+		level = newLevel;
+	}
+
+	/**
+	 * @return true if verbose messages are written
+	 */
+	public static boolean isVerbose() {
+		return level == LogLevel.VERBOSE;
+	}
+
+	/**
+	 * @return true if errors are written
+	 */
+	public static boolean isError() {
+		return level != LogLevel.OFF;
+	}
+
+	public static void verbose(String className, String message) {
+		if (isVerbose())
+			log(LogLevel.VERBOSE, className, message, 0, null, null, null, null);
+	}
+
+	/**
+	 * Logs a verbose message, the format string is a String.format format
+	 * formatted by the writer
+	 */
+	public static void verbose(String className, String format, Object arg1) {
+		if (isVerbose())
+			log(LogLevel.VERBOSE, className, format, 1, arg1, null, null, null);
+	}
+
+	public static void verbose(String className, String format, Object arg1, Object arg2) {
+		if (isVerbose())
+			log(LogLevel.VERBOSE, className, format, 2, arg1, arg2, null, null);
+	}
+
+	public static void verbose(String className, String format, Object arg1, Object arg2, Object arg3) {
+		if (isVerbose())
+			log(LogLevel.VERBOSE, className, format, 3, arg1, arg2, arg3, null);
+	}
+
+	public static void verbose(String className, String format, Object arg1, Object arg2, Object arg3, Object arg4) {
+		if (isVerbose())
+			log(LogLevel.VERBOSE, className, format, 4, arg1, arg2, arg3, arg4);
+	}
+
+	public static void error(String className, String message) {
+		if (isError())
+			log(LogLevel.ERROR, className, message, 0, null, null, null, null);
+	}
+
+	/**
+	 * Logs an error, the format string is a String.format format formatted by the writer
+	 */
+	public static void error(String className, String format, Object arg1) {
+		if (isError())
+			log(LogLevel.ERROR, className, format, 1, arg1, null, null, null);
+	}
+
+	public static void error(String className, String format, Object arg1, Object arg2) {
+		if (isError())
+			log(LogLevel.ERROR, className, format, 2, arg1, arg2, null, null);
+	}
+
+	public static void error(String className, String format, Object arg1, Object arg2, Object arg3) {
+		if (isError())
+			log(LogLevel.ERROR, className, format, 3, arg1, arg2, arg3, null);
+	}
+
+	/**
+	 * Stores a message in the next free slot of the ring buffer
+	 */
+	private static void log(LogLevel messageLevel, String className, String format, int argCount, Object arg1, Object arg2, Object arg3, Object arg4) {
+		long sequence;
+		do {
+			sequence = claimSequence.get();
+
+			// the writer is a whole ring behind, the message is dropped rather than waiting
+			if (sequence - writeSequence >= ringBuffer.length) {
+				droppedCount.increment();
+				return;
+			}
+		} while (!claimSequence.compareAndSet(sequence, sequence + 1));
+
+		LogEvent event = ringBuffer[(int) (sequence & mask)];
+		event.level = messageLevel;
+		event.className = className;
+		event.format = format;
+		event.argCount = argCount;
+		event.args[0] = arg1;
+		event.args[1] = arg2;
+		event.args[2] = arg3;
+		event.args[3] = arg4;
+		event.sequence = sequence;
+
+		if (writerParked)
+			LockSupport.unpark(writerThread);
+	}
+
+	/**
+	 * Writes the messages in order, runs on the writer thread
+	 */
+	private static void write() {
+		long sequence = 0;
+		boolean flushed = true;
+
+		while (true) {
+			LogEvent event = ringBuffer[(int) (sequence & mask)];
+
+			if (event.sequence != sequence) {
+				// the batch is written, the streams are flushed once before the writer parks
+				if (!flushed) {
+					System.out.flush();
+					System.err.flush();
+					flushed = true;
+					continue;
+				}
+
+				// a message published before writerParked is set is seen by the check below,
+				// a message published after it unparks the writer
+				writerParked = true;
+				if (event.sequence != sequence)
+					LockSupport.park();
+				writerParked = false;
+				continue;
+			}
+
+			writeEvent(event);
+			sequence++;
+			writeSequence = sequence;
+			writtenCount++;
+			flushed = false;
+		}
+	}
+
+	private static void writeEvent(LogEvent event) {
+		String message = event.format;
+		if (event.argCount > 0) {
+			Object[] args = new Object[event.argCount];
+			System.arraycopy(event.args, 0, args, 0, event.argCount);
+
+			try {
+				message = String.format(event.format, args);
+			} catch (RuntimeException e) {
+				message = event.format;
+			}
+		}
+
+		// the slot no longer holds on to the arguments
+		for (int i = 0; i < MAX_ARGS; i++)
+			event.args[i] = null;
+
+		PrintStream stream = event.level == LogLevel.ERROR ? System.err : System.out;
+		String prefix = event.level == LogLevel.ERROR ? "ERROR" : "VERBOSE";
+		stream.print(prefix + ": " + event.className + " - " + message + System.lineSeparator());
+	}
+
+	/**
+	 * Waits up to a second for the writer to write the messages logged so far
+	 */
+	public static void flush() {
+		long lastSequence = claimSequence.get();
+		long deadline = System.nanoTime() + 1000000000L;
+
+		while (writeSequence < lastSequence && System.nanoTime() < deadline)
+			LockSupport.parkNanos(FLUSH_PARK_TIME);
+
+		System.out.flush();
+		System.err.flush();
+	}
+
+	/**
+	 * @return number of messages dropped because the ring buffer was full
+	 */
+	public static long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * @return number of messages written
+	 */
+	public static long getWrittenCount() {
+		return writtenCount;
+	}
+}
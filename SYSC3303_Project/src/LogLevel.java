@@ -0,0 +1,15 @@
+/**
+ * Levels of the messages written by Log, a message is written if its level
+ * is enabled by the level set with Log.setLevel
+ *
+ * @author Group 8
+ *
+ */
+public enum LogLevel {
+	// nothing is written
+	OFF,
+	// errors of the transfers and of the server
+	ERROR,
+	// every packet sent and received, errors included
+	VERBOSE
+}
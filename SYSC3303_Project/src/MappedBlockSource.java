@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class provides the blocks of a file by memory-mapping it.
+ *
+ * Blocks are returned as views of the mapped region, so the file data is read by the
+ * operating system straight from the page cache when a DATA packet is sent and is never
+ * copied onto the heap. The file is mapped in regions of whole blocks
+ * (NetworkConfig.MAPPED_REGION_SIZE), each region is mapped when its first block is needed
+ *
+ * @author Group 8
+ */
+public class MappedBlockSource implements BlockSource {
+	private FileChannel fileChannel;
+	private int blockSize;
+	private long fileSize;
+
+	private int blocksPerRegion;
+	private MappedByteBuffer[] regions;
+
+	// view of the mapped region returned by getBlockBuffer
+	private ByteBuffer blockBuffer;
+	private int blockBufferRegionIndex = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileChannel channel opened for reading (see FileManager.openFile)
+	 * @param blockSize   negotiated block size
+	 * @throws IOException if the size of the file cannot be read
+	 */
+	public MappedBlockSource(FileChannel fileChannel, int blockSize) throws IOException {
+		this.fileChannel = fileChannel;
+		this.blockSize = blockSize;
+		this.fileSize = fileChannel.size();
+
+		// a block never spans two regions
+		blocksPerRegion = Math.max(1, NetworkConfig.MAPPED_REGION_SIZE / blockSize);
+		regions = new MappedByteBuffer[(int) ((getNumberOfBlocks() - 1) / blocksPerRegion) + 1];
+	}
+
+	@Override
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public long getNumberOfBlocks() {
+		return fileSize / blockSize + 1;
+	}
+
+	@Override
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	@Override
+	public byte[] readBlock(long blockIndex) throws IOException {
+		ByteBuffer blockBuffer = getBlockBuffer(blockIndex);
+
+		byte[] blockBytes = new byte[blockBuffer.remaining()];
+		blockBuffer.get(blockBytes);
+
+		return blockBytes;
+	}
+
+	@Override
+	public ByteBuffer getBlockBuffer(long blockIndex) throws IOException {
+		int regionIndex = (int) ((blockIndex - 1) / blocksPerRegion);
+		MappedByteBuffer region = regions[regionIndex];
+
+		if (region == null) {
+			long regionPosition = (long) regionIndex * blocksPerRegion * blockSize;
+			long regionLength = Math.min((long) blocksPerRegion * blockSize, fileSize - regionPosition);
+
+			region = fileChannel.map(FileChannel.MapMode.READ_ONLY, regionPosition, regionLength);
+			regions[regionIndex] = region;
+		}
+
+		if (blockBufferRegionIndex != regionIndex) {
+			blockBuffer = region.duplicate();
+			blockBufferRegionIndex = regionIndex;
+		}
+
+		int position = (int) ((blockIndex - 1) % blocksPerRegion) * blockSize;
+		int length = Math.max(0, Math.min(blockSize, region.capacity() - position));
+
+		blockBuffer.limit(position + length);
+		blockBuffer.position(position);
+
+		return blockBuffer;
+	}
+
+	@Override
+	public void close() {
+		// the mapped regions are released once they are garbage collected
+		regions = null;
+
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("MappedBlockSource", "cannot close file"));
+		}
+	}
+}
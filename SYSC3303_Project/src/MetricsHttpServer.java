@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class serves the metrics of the server in the Prometheus text format at
+ * http://localhost:NetworkConfig.METRICS_PORT/metrics
+ *
+ * The HTTP server of the JDK is bound to the loopback address only, the metrics are scraped
+ * by an agent running on the same machine. The metrics are written by the thread of the HTTP
+ * server, the transfers only increment their counters.
+ *
+ * @author Group 8
+ */
+public class MetricsHttpServer {
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private HttpServer httpServer;
+
+	/**
+	 * Starts the HTTP server
+	 *
+	 * @param port local port, 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public MetricsHttpServer(int port) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/metrics", this::handleMetrics);
+		httpServer.start();
+	}
+
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(405, -1);
+			exchange.close();
+			return;
+		}
+
+		byte[] body = MetricsRegistry.getInstance().write().getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(200, -1);
+		}
+		else {
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		}
+		exchange.close();
+	}
+
+	/**
+	 * @return local port the metrics are served on
+	 */
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	public void stop() {
+		httpServer.stop(0);
+	}
+}
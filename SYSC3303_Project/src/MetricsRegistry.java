@@ -0,0 +1,268 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * This class keeps the metrics of the server: the running transfers, the DATA blocks and bytes
+ * sent and received, the retransmissions and timeouts, the ERROR packets by error code and the
+ * duration and throughput of the transfers.
+ *
+ * Every counter is a striped counter (LongAdder), recording a packet is an increment of a cell
+ * that is rarely shared with another thread, it takes no lock and a few nanoseconds. The counters
+ * are added up only when the metrics are written in the Prometheus text format (see MetricsHttpServer).
+ *
+ * Other parts of the server that already keep their own counts (the transfer worker pool, the
+ * rate limiter...) register them as collectors, they are read when the metrics are written.
+ *
+ * @author Group 8
+ */
+public class MetricsRegistry {
+	// ERROR packets are counted by error code, codes above 8 are counted as 0 (not defined)
+	private static final int NUMBER_OF_ERROR_CODES = 9;
+	private static final String[] TRANSFER_TYPES = { "rrq", "wrq" };
+
+	// created after the constants it uses
+	private static final MetricsRegistry instance = new MetricsRegistry();
+
+	/**
+	 * This class is a value read from another part of the server when the metrics are written
+	 */
+	private static class Collector {
+		String name;
+		String help;
+		String type;
+		DoubleSupplier supplier;
+	}
+
+	private LongAdder[] activeTransfers = newCounters(TRANSFER_TYPES.length);
+	private LongAdder[] completedTransfers = newCounters(TRANSFER_TYPES.length);
+
+	private LongAdder dataBlocksSent = new LongAdder();
+	private LongAdder dataBytesSent = new LongAdder();
+	private LongAdder dataBlocksReceived = new LongAdder();
+	private LongAdder dataBytesReceived = new LongAdder();
+	private LongAdder retransmittedBlocks = new LongAdder();
+	private LongAdder timeouts = new LongAdder();
+
+	private LongAdder[] errorPacketsSent = newCounters(NUMBER_OF_ERROR_CODES);
+	private LongAdder[] errorPacketsReceived = newCounters(NUMBER_OF_ERROR_CODES);
+
+	// duration in seconds and throughput in bytes per second of the transfers that completed
+	private Histogram[] transferDurations = new Histogram[TRANSFER_TYPES.length];
+	private Histogram[] transferThroughputs = new Histogram[TRANSFER_TYPES.length];
+
+	private List<Collector> collectors = new CopyOnWriteArrayList<Collector>();
+
+	private MetricsRegistry() {
+		for (int i = 0; i < TRANSFER_TYPES.length; i++) {
+			// 1 ms to about 9 minutes
+			transferDurations[i] = new Histogram(Histogram.exponentialBounds(0.001, 2, 20));
+			// 1 KB/s to about 1 GB/s
+			transferThroughputs[i] = new Histogram(Histogram.exponentialBounds(1024, 2, 21));
+		}
+	}
+
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+
+	private static LongAdder[] newCounters(int count) {
+		LongAdder[] counters = new LongAdder[count];
+		for (int i = 0; i < count; i++)
+			counters[i] = new LongAdder();
+		return counters;
+	}
+
+	private static int transferTypeIndex(TFTPPacketType transferType) {
+		return transferType == TFTPPacketType.WRQ ? 1 : 0;
+	}
+
+	private static int errorCodeIndex(int errorCode) {
+		return errorCode >= 0 && errorCode < NUMBER_OF_ERROR_CODES ? errorCode : 0;
+	}
+
+	/**
+	 * @param transferType RRQ or WRQ
+	 */
+	public void transferStarted(TFTPPacketType transferType) {
+		activeTransfers[transferTypeIndex(transferType)].increment();
+	}
+
+	/**
+	 * @param transferType RRQ or WRQ
+	 */
+	public void transferEnded(TFTPPacketType transferType) {
+		activeTransfers[transferTypeIndex(transferType)].decrement();
+	}
+
+	/**
+	 * Records a transfer that sent or received every block of its file
+	 *
+	 * @param transferType RRQ or WRQ
+	 * @param startTime    time in nanoseconds (System.nanoTime) the transfer started at
+	 * @param fileSize     number of bytes of the file
+	 */
+	public void transferCompleted(TFTPPacketType transferType, long startTime, long fileSize) {
+		int index = transferTypeIndex(transferType);
+		double duration = Math.max(1, System.nanoTime() - startTime) / 1000000000.0;
+
+		completedTransfers[index].increment();
+		transferDurations[index].record(duration);
+		transferThroughputs[index].record(fileSize / duration);
+	}
+
+	/**
+	 * @param dataLength  number of bytes of file data of the block
+	 * @param retransmit  true if the block was sent before
+	 */
+	public void dataBlockSent(int dataLength, boolean retransmit) {
+		dataBlocksSent.increment();
+		dataBytesSent.add(dataLength);
+
+		if (retransmit)
+			retransmittedBlocks.increment();
+	}
+
+	/**
+	 * @param dataLength number of bytes of file data of a block received in order
+	 */
+	public void dataBlockReceived(int dataLength) {
+		dataBlocksReceived.increment();
+		dataBytesReceived.add(dataLength);
+	}
+
+	/**
+	 * Records a retransmission timeout that expired
+	 */
+	public void timeout() {
+		timeouts.increment();
+	}
+
+	public void errorPacketSent(int errorCode) {
+		errorPacketsSent[errorCodeIndex(errorCode)].increment();
+	}
+
+	public void errorPacketReceived(int errorCode) {
+		errorPacketsReceived[errorCodeIndex(errorCode)].increment();
+	}
+
+	/**
+	 * Registers a value read from another part of the server when the metrics are written
+	 *
+	 * @param name     name of the metric
+	 * @param help     description of the metric
+	 * @param type     Prometheus type of the metric, counter or gauge
+	 * @param supplier reads the value
+	 */
+	public void registerCollector(String name, String help, String type, DoubleSupplier supplier) {
+		Collector collector = new Collector();
+		collector.name = name;
+		collector.help = help;
+		collector.type = type;
+		collector.supplier = supplier;
+
+		// a collector registered again (a new server) replaces the old one
+		collectors.removeIf(registered -> registered.name.equals(name));
+		collectors.add(collector);
+	}
+
+	/**
+	 * @return the metrics in the Prometheus text format (version 0.0.4)
+	 */
+	public String write() {
+		StringBuilder output = new StringBuilder(8192);
+
+		writeHeader(output, "tftp_active_transfers", "Transfers running", "gauge");
+		for (int i = 0; i < TRANSFER_TYPES.length; i++)
+			writeValue(output, "tftp_active_transfers", "type=\"" + TRANSFER_TYPES[i] + "\"", activeTransfers[i].sum());
+
+		writeHeader(output, "tftp_completed_transfers_total", "Transfers that sent or received their whole file", "counter");
+		for (int i = 0; i < TRANSFER_TYPES.length; i++)
+			writeValue(output, "tftp_completed_transfers_total", "type=\"" + TRANSFER_TYPES[i] + "\"", completedTransfers[i].sum());
+
+		writeCounter(output, "tftp_data_blocks_sent_total", "DATA packets sent, retransmissions included", dataBlocksSent.sum());
+		writeCounter(output, "tftp_data_bytes_sent_total", "Bytes of file data sent, retransmissions included", dataBytesSent.sum());
+		writeCounter(output, "tftp_data_blocks_received_total", "DATA packets received in order", dataBlocksReceived.sum());
+		writeCounter(output, "tftp_data_bytes_received_total", "Bytes of file data received in order", dataBytesReceived.sum());
+		writeCounter(output, "tftp_retransmitted_blocks_total", "DATA packets sent again", retransmittedBlocks.sum());
+		writeCounter(output, "tftp_timeouts_total", "Retransmission timeouts that expired", timeouts.sum());
+
+		writeHeader(output, "tftp_error_packets_sent_total", "ERROR packets sent by error code", "counter");
+		for (int i = 0; i < NUMBER_OF_ERROR_CODES; i++)
+			writeValue(output, "tftp_error_packets_sent_total", "code=\"" + i + "\"", errorPacketsSent[i].sum());
+
+		writeHeader(output, "tftp_error_packets_received_total", "ERROR packets received by error code", "counter");
+		for (int i = 0; i < NUMBER_OF_ERROR_CODES; i++)
+			writeValue(output, "tftp_error_packets_received_total", "code=\"" + i + "\"", errorPacketsReceived[i].sum());
+
+		writeHeader(output, "tftp_transfer_duration_seconds", "Duration of the transfers that completed", "histogram");
+		for (int i = 0; i < TRANSFER_TYPES.length; i++)
+			transferDurations[i].write(output, "tftp_transfer_duration_seconds", "type=\"" + TRANSFER_TYPES[i] + "\"");
+
+		writeHeader(output, "tftp_transfer_throughput_bytes_per_second", "File size divided by the duration of the transfers that completed", "histogram");
+		for (int i = 0; i < TRANSFER_TYPES.length; i++)
+			transferThroughputs[i].write(output, "tftp_transfer_throughput_bytes_per_second", "type=\"" + TRANSFER_TYPES[i] + "\"");
+
+		for (Collector collector : collectors) {
+			writeHeader(output, collector.name, collector.help, collector.type);
+			writeValue(output, collector.name, "", collector.supplier.getAsDouble());
+		}
+
+		return output.toString();
+	}
+
+	private static void writeHeader(StringBuilder output, String name, String help, String type) {
+		output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void writeCounter(StringBuilder output, String name, String help, long value) {
+		writeHeader(output, name, help, "counter");
+		writeValue(output, name, "", value);
+	}
+
+	private static void writeValue(StringBuilder output, String name, String labels, double value) {
+		output.append(name);
+		if (!labels.isEmpty())
+			output.append('{').append(labels).append('}');
+
+		// whole numbers are written without a fraction
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			output.append(' ').append((long) value).append('\n');
+		else
+			output.append(' ').append(value).append('\n');
+	}
+
+	public long getDataBlocksSent() {
+		return dataBlocksSent.sum();
+	}
+
+	public long getDataBlocksReceived() {
+		return dataBlocksReceived.sum();
+	}
+
+	public long getRetransmittedBlocks() {
+		return retransmittedBlocks.sum();
+	}
+
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * @param transferType RRQ or WRQ
+	 * @return number of transfers of the type running
+	 */
+	public long getActiveTransfers(TFTPPacketType transferType) {
+		return activeTransfers[transferTypeIndex(transferType)].sum();
+	}
+
+	/**
+	 * @param transferType RRQ or WRQ
+	 * @return number of transfers of the type that completed
+	 */
+	public long getCompletedTransfers(TFTPPacketType transferType) {
+		return completedTransfers[transferTypeIndex(transferType)].sum();
+	}
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * This class represents the NIO server engine.
+ * Instead of starting a thread for every request, every transfer is registered with
+ * one of a few event loops. Each event loop owns a Selector and drives all of its
+ * transfers as non-blocking state machines (see NIOTransferSession)
+ *
+ * @author Group 8
+ *
+ */
+public class NIOServerEngine {
+	private EventLoop[] eventLoops;
+	private Thread[] eventLoopThreads;
+	private int nextEventLoop = 0;
+
+	// RRQ files are memory-mapped and sent without copying (see NIOTransferSession)
+	private boolean zeroCopy;
+
+	/**
+	 * Constructor
+	 *
+	 * @param numberOfEventLoops number of selector threads
+	 * @param zeroCopy           true if DATA packets are sent with gathering writes of memory-mapped files
+	 */
+	public NIOServerEngine(int numberOfEventLoops, boolean zeroCopy) {
+		this.zeroCopy = zeroCopy;
+		eventLoops = new EventLoop[numberOfEventLoops];
+		eventLoopThreads = new Thread[numberOfEventLoops];
+
+		for (int i = 0; i < numberOfEventLoops; i++) {
+			try {
+				eventLoops[i] = new EventLoop();
+			} catch (IOException e) {
+				System.err.println(Globals.getErrorMessage("NIOServerEngine", "cannot open selector"));
+				e.printStackTrace();
+				System.exit(-1);
+			}
+
+			eventLoopThreads[i] = new Thread(eventLoops[i], "NIOEventLoop-" + i);
+		}
+	}
+
+	/**
+	 * Starts the event loop threads
+	 */
+	public void start() {
+		for (Thread eventLoopThread : eventLoopThreads)
+			eventLoopThread.start();
+	}
+
+	/**
+	 * Hands a RRQ or WRQ request over to one of the event loops.
+	 * Event loops are picked in a round robin order
+	 *
+	 * @param requestPacket request packet received by the server
+	 * @param transferStatus progress of the transfer, may be null
+	 * @param endListener   called once the transfer ends
+	 */
+	public void startTransfer(TFTPPacket requestPacket, TransferStatus transferStatus, Runnable endListener) {
+		EventLoop eventLoop = eventLoops[nextEventLoop];
+		nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+		eventLoop.register(new NIOTransferSession(requestPacket, zeroCopy, endListener, transferStatus));
+	}
+
+	/**
+	 * Stops the event loops and closes every open transfer
+	 */
+	public void shutdown() {
+		for (EventLoop eventLoop : eventLoops)
+			eventLoop.shutdown();
+
+		for (Thread eventLoopThread : eventLoopThreads) {
+			try {
+				eventLoopThread.join(1000);
+			} catch (InterruptedException e) {
+				Log.error("NIOServerEngine", "cannot close event loop thread");
+			}
+		}
+	}
+
+	/**
+	 * This class is a single selector thread that drives many transfers
+	 */
+	private class EventLoop implements Runnable {
+		private Selector selector;
+		private Queue<NIOTransferSession> newSessions;
+		private ByteBuffer receiveBuffer;
+		// the packets of the sessions are built in these buffers, the sessions of an
+		// event loop all run on its thread so they share them instead of allocating their own
+		private ByteBuffer headerBuffer;
+		private ByteBuffer sendBuffer;
+		// reads the packets in the receive buffer without copying them
+		private TFTPPacketView packetView;
+		// passed to select so that the ready keys are handled without building the selected-key set
+		private Consumer<SelectionKey> readyKeyHandler;
+		private volatile boolean running;
+		// retransmission, idle and linger timeouts of the sessions of this event loop
+		private TimingWheel timingWheel;
+
+		public EventLoop() throws IOException {
+			selector = Selector.open();
+			newSessions = new ConcurrentLinkedQueue<NIOTransferSession>();
+			// large enough for the largest block size that can be negotiated
+			receiveBuffer = ByteBuffer.allocateDirect(NetworkConfig.MAX_DATAGRAM_PACKET_LEN);
+			headerBuffer = ByteBuffer.allocateDirect(DATAPacket.HEADER_LENGTH);
+			sendBuffer = ByteBuffer.allocateDirect(NetworkConfig.MAX_DATAGRAM_PACKET_LEN);
+			packetView = new TFTPPacketView();
+			readyKeyHandler = this::handleReadyKey;
+			timingWheel = new TimingWheel(NetworkConfig.TIMING_WHEEL_TICK, NetworkConfig.TIMING_WHEEL_SIZE, System.currentTimeMillis());
+			running = true;
+		}
+
+		/**
+		 * Queues a new session, it is registered by the event loop thread itself
+		 *
+		 * @param session transfer session
+		 */
+		public void register(NIOTransferSession session) {
+			newSessions.add(session);
+			selector.wakeup();
+		}
+
+		public void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					// wake up for the next tick while a timeout is scheduled, otherwise
+					// only a packet or a new session wakes the event loop up
+					long selectTimeout = 0;
+					if (timingWheel.getScheduledCount() > 0)
+						selectTimeout = timingWheel.getTimeUntilNextTick(System.currentTimeMillis());
+
+					// the packets of the ready channels are handled while selecting
+					selector.select(readyKeyHandler, selectTimeout);
+
+					long now = System.currentTimeMillis();
+
+					registerNewSessions(now);
+
+					// the sessions retransmit, expire or stop lingering when their timeouts fire
+					timingWheel.advance(now);
+				}
+			} catch (IOException | ClosedSelectorException e) {
+				System.err.println(Globals.getErrorMessage("NIOServerEngine", "oops... the event loop broke"));
+				e.printStackTrace();
+			}
+
+			closeAllSessions();
+		}
+
+		/**
+		 * Opens a channel for every queued session and sends its first packet
+		 *
+		 * @param now current time in milliseconds
+		 */
+		private void registerNewSessions(long now) {
+			NIOTransferSession session;
+			while ((session = newSessions.poll()) != null) {
+				try {
+					DatagramChannel channel = session.openChannel();
+					channel.register(selector, SelectionKey.OP_READ, session);
+				} catch (IOException e) {
+					System.err.println(Globals.getErrorMessage("NIOServerEngine", "cannot open datagram channel"));
+					e.printStackTrace();
+					session.close();
+					continue;
+				}
+
+				session.start(timingWheel, headerBuffer, sendBuffer, now);
+
+				if (session.isFinished())
+					session.close();
+			}
+		}
+
+		/**
+		 * Reads every datagram waiting on a ready channel and passes it to its session
+		 *
+		 * @param key selection key of the ready channel
+		 */
+		private void handleReadyKey(SelectionKey key) {
+			if (!key.isValid() || !key.isReadable())
+				return;
+
+			NIOTransferSession session = (NIOTransferSession) key.attachment();
+			DatagramChannel channel = (DatagramChannel) key.channel();
+			long now = System.currentTimeMillis();
+
+			// drain the channel, more than one datagram may be queued
+			while (!session.isFinished()) {
+				receiveBuffer.clear();
+
+				InetSocketAddress source;
+				try {
+					source = (InetSocketAddress) channel.receive(receiveBuffer);
+				} catch (IOException e) {
+					Log.error("NIOServerEngine", "cannot receive from datagram channel");
+					session.close();
+					break;
+				}
+
+				if (source == null)
+					break;
+
+				receiveBuffer.flip();
+				session.handlePacket(packetView.wrap(receiveBuffer), source, now);
+			}
+
+			if (session.isFinished())
+				session.close();
+		}
+
+		private void closeAllSessions() {
+			try {
+				for (SelectionKey key : selector.keys())
+					((NIOTransferSession) key.attachment()).close();
+
+				selector.close();
+			} catch (IOException | ClosedSelectorException e) {
+				Log.error("NIOServerEngine", "cannot close selector");
+			}
+
+			NIOTransferSession session;
+			while ((session = newSessions.poll()) != null)
+				session.close();
+		}
+	}
+}
@@ -0,0 +1,779 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * This class represents a single RRQ or WRQ transfer driven by the NIO server engine.
+ *
+ * It performs the same steps as RRQServerThread and WRQServerThread but as a
+ * non-blocking state machine, every step is triggered either by a received packet
+ * or by a timeout fired by the timing wheel of the event loop that owns the session.
+ *
+ * A session has three timeouts: the retransmission timeout, the idle timeout that closes
+ * a transfer the client does not move forward and, once the last block of a WRQ is
+ * acknowledged, the linger timeout during which a retransmitted last DATA packet is
+ * acknowledged again.
+ *
+ * @author Group 8
+ *
+ */
+public class NIOTransferSession {
+	/**
+	 * States of the transfer
+	 */
+	public enum State {
+		// RRQ: a window of DATA packets was sent and an ACK is expected
+		AWAITING_ACK,
+		// WRQ: an ACK packet was sent and the next DATA packets are expected
+		AWAITING_DATA,
+		// WRQ: the last block was acknowledged, the ACK is sent again if the client did not receive it
+		LINGERING,
+		// transfer completed or aborted
+		FINISHED
+	}
+
+	private TFTPPacket requestPacket;
+	private TFTPPacketType transferType;
+
+	private DatagramChannel channel;
+	private InetAddress remoteAddress;
+	private int remotePort;
+	private InetSocketAddress remoteSocketAddress;
+
+	private FileManager fileManager;
+	private String fileName;
+	private TransferOptions transferOptions;
+
+	private State state;
+	// RRQ: index of the first block that is not acknowledged yet
+	// WRQ: index of the last block received in order
+	// 0 until the transfer starts or while the OACK packet is not acknowledged,
+	// unlike the block numbers of the packets the index does not roll over (see BlockNumbers)
+	private long blockIndex;
+
+	// RRQ: file data and the number of blocks of the window that are not acknowledged yet,
+	// the blocks are read from the block source every time the window is sent
+	private BlockSource blockSource;
+	private int windowLength;
+	// RRQ: last block sent at least once, a window starting after it is sent for the first time
+	private long lastBlockSent;
+	// RRQ: the window was sent again because the block before it was acknowledged
+	private boolean windowResent;
+
+	// packets sent on the hot path are built in these buffers, they belong to the event loop and
+	// are reused for every packet of its sessions, which all run on the event loop thread
+	private ByteBuffer headerBuffer;
+	private ByteBuffer[] gatherBuffers;
+	private ByteBuffer sendBuffer;
+
+	// RRQ files are memory-mapped and the channel is connected to the client so that
+	// each DATA packet can be sent with a gathering write of its header and the mapped data
+	private boolean zeroCopy;
+
+	// WRQ: file being written, open until the last block is written
+	private FileBlockWriter fileWriter;
+
+	// WRQ: bytes of file data received in order
+	private long receivedBytes;
+	// time in nanoseconds the transfer started at, for the transfer metrics
+	private long startTime;
+
+	// WRQ: blocks received since the last ACK packet was sent
+	private int blocksInWindow;
+	private boolean gapAcknowledged;
+
+	// OACK packet sent to the client or null if no options were accepted
+	private OACKPacket oackPacket;
+	private int numberOfTries;
+	// timeout computed from the round trip times of the transfer
+	private RetransmissionTimer retransmissionTimer;
+
+	// timing wheel of the event loop that owns the session
+	private TimingWheel timingWheel;
+	private TimingWheel.Timeout retransmitTimeout;
+	private TimingWheel.Timeout idleTimeout;
+	private TimingWheel.Timeout lingerTimeout;
+
+	// called once when the transfer ends, before the linger time of a WRQ, null if nobody listens
+	private Runnable endListener;
+	// progress of the transfer shown to operators, null if it is not tracked
+	private TransferStatus transferStatus;
+
+	/**
+	 * Constructor
+	 *
+	 * @param requestPacket RRQ or WRQ packet received by the server
+	 * @param zeroCopy      true if DATA packets are sent with gathering writes of memory-mapped files
+	 * @param endListener   called once the transfer ends, may be null
+	 * @param transferStatus progress of the transfer, may be null
+	 */
+	public NIOTransferSession(TFTPPacket requestPacket, boolean zeroCopy, Runnable endListener, TransferStatus transferStatus) {
+		this.requestPacket = requestPacket;
+		this.zeroCopy = zeroCopy;
+		this.endListener = endListener;
+		this.transferStatus = transferStatus;
+		this.transferType = requestPacket.getPacketType();
+
+		remoteAddress = requestPacket.getRemoteAddress();
+		remotePort = requestPacket.getRemotePort();
+		remoteSocketAddress = new InetSocketAddress(remoteAddress, remotePort);
+
+		fileManager = new FileManager();
+
+		retransmissionTimer = new RetransmissionTimer();
+		if (transferStatus != null)
+			transferStatus.setRetransmissionTimer(retransmissionTimer);
+		retransmitTimeout = new TimingWheel.Timeout(this::onRetransmitTimeout);
+		idleTimeout = new TimingWheel.Timeout(this::onIdleTimeout);
+		lingerTimeout = new TimingWheel.Timeout(this::onLingerTimeout);
+	}
+
+	/**
+	 * Opens the non-blocking channel used for this transfer.
+	 * The local port of the channel is the server's transfer ID
+	 *
+	 * In zero copy mode the channel is connected to the client, which gathering writes require.
+	 * Packets from other transfer IDs are then dropped by the operating system instead of
+	 * being answered with an ERROR packet
+	 *
+	 * @return datagram channel
+	 * @throws IOException
+	 */
+	public DatagramChannel openChannel() throws IOException {
+		channel = DatagramChannel.open();
+		channel.bind(null);
+		channel.configureBlocking(false);
+
+		if (zeroCopy && transferType == TFTPPacketType.RRQ)
+			channel.connect(remoteSocketAddress);
+
+		return channel;
+	}
+
+	/**
+	 * Parses the request and sends the first packet of the transfer
+	 *
+	 * @param timingWheel  timing wheel of the event loop that owns the session
+	 * @param headerBuffer buffer of the event loop the ACK packets and DATA headers are built in,
+	 *                     at least DATAPacket.HEADER_LENGTH bytes
+	 * @param sendBuffer   buffer of the event loop the DATA packets are copied into when they are
+	 *                     not sent with a gathering write, at least NetworkConfig.MAX_DATAGRAM_PACKET_LEN bytes
+	 * @param now          current time in milliseconds
+	 */
+	public void start(TimingWheel timingWheel, ByteBuffer headerBuffer, ByteBuffer sendBuffer, long now) {
+		this.timingWheel = timingWheel;
+		this.headerBuffer = headerBuffer;
+		this.sendBuffer = sendBuffer;
+		gatherBuffers = new ByteBuffer[] { headerBuffer, null };
+		this.startTime = System.nanoTime();
+		resetIdleTimeout(now);
+
+		RRQWRQPacket rrqwrqPacket = null;
+
+		try {
+			rrqwrqPacket = new RRQWRQPacket(requestPacket);
+		} catch (TFTPPacketParsingError e) {
+			Log.error("NIOTransferSession", "cannot parse %s TFTP packet", transferType);
+			sendErrorPacket(ERRORPacket.ILLEGAL_TFTP_OPERATION, String.format("invalid %s TFTP packet", transferType), remoteAddress, remotePort);
+			finish();
+			return;
+		}
+
+		fileName = rrqwrqPacket.getFileName();
+		transferOptions = TransferOptions.negotiate(rrqwrqPacket);
+
+		if (transferOptions.getTimeout() > 0)
+			retransmissionTimer.setNegotiatedTimeout(transferOptions.getTimeout());
+
+		if (transferType == TFTPPacketType.RRQ)
+			startRRQ(now);
+		else
+			startWRQ(now);
+	}
+
+	/**
+	 * Opens the requested file and sends the first DATA packets
+	 *
+	 * @param now current time in milliseconds
+	 */
+	private void startRRQ(long now) {
+		FileManager.FileManagerResult res = fileManager.openFile(fileName);
+
+		if (res.error) {
+			// access violation error will send an error packet with error code 2 and the connection
+			if (res.accessViolation)
+				sendErrorPacket(ERRORPacket.ACCESS_VIOLATION, String.format("read access denied to file: %s", fileName), remoteAddress, remotePort);
+			// file not found error will send an error packet with error code 1 and the connection
+			else if (res.fileNotFound)
+				sendErrorPacket(ERRORPacket.FILE_NOT_FOUND, String.format("file not found: %s", fileName), remoteAddress, remotePort);
+
+			finish();
+			return;
+		}
+
+		// files that are read often are served from memory
+		try {
+			blockSource = FileContentCache.getInstance().getBlockSource(fileName, res.fileChannel, transferOptions.getBlockSize(), zeroCopy);
+		} catch (IOException e) {
+			Log.error("NIOTransferSession", "cannot read file");
+			sendErrorPacket(ERRORPacket.NOT_DEFINED, String.format("cannot read file: %s", fileName), remoteAddress, remotePort);
+			fileManager.closeFile(res.fileChannel);
+			finish();
+			return;
+		}
+
+		// the client can check that it has room for the file with the size sent in the tsize option
+		transferOptions.setTransferSize(blockSource.getFileSize());
+
+		if (transferOptions.hasAcceptedOptions())
+			oackPacket = TFTPPacketBuilder.getOACKDatagram(transferOptions.getAcceptedOptions(), remoteAddress, remotePort);
+
+		state = State.AWAITING_ACK;
+
+		retransmissionTimer.startMeasurement();
+
+		// the client acknowledges the OACK packet with ACK 0
+		if (oackPacket != null) {
+			blockIndex = 0;
+			windowLength = 0;
+			send(oackPacket);
+		}
+		else {
+			blockIndex = 1;
+			windowLength = (int) Math.min(transferOptions.getWindowSize(), blockSource.getNumberOfBlocks());
+			sendWindow();
+		}
+
+		resetTimeout(now);
+	}
+
+	/**
+	 * Creates the file to be written and sends ACK 0
+	 *
+	 * @param now current time in milliseconds
+	 */
+	private void startWRQ(long now) {
+		FileManager.FileManagerResult res = fileManager.createFile(fileName);
+
+		if (res.error) {
+			sendFileManagerErrorPacket(res);
+			finish();
+			return;
+		}
+
+		// if the client gave the size of the file the space is reserved before the transfer starts
+		res = fileManager.openFileWriter(fileName, transferOptions.getBlockSize(), transferOptions.getTransferSize());
+		fileWriter = res.fileWriter;
+
+		// the file created for the request is removed so that the client can send it again
+		if (res.error) {
+			fileManager.deleteFile(fileName);
+			sendFileManagerErrorPacket(res);
+			finish();
+			return;
+		}
+
+		if (transferOptions.hasAcceptedOptions())
+			oackPacket = TFTPPacketBuilder.getOACKDatagram(transferOptions.getAcceptedOptions(), remoteAddress, remotePort);
+
+		blockIndex = 0;
+		state = State.AWAITING_DATA;
+
+		retransmissionTimer.startMeasurement();
+
+		// the OACK packet takes the place of ACK 0
+		if (oackPacket != null)
+			send(oackPacket);
+		else
+			sendACKPacket((short) 0);
+
+		resetTimeout(now);
+	}
+
+	/**
+	 * Handles a packet received on the session's channel.
+	 * The packet is read through the event loop's view of its receive buffer and is only
+	 * valid until this method returns
+	 *
+	 * @param packetView view of the packet received
+	 * @param source     address and port the packet was received from
+	 * @param now        current time in milliseconds
+	 */
+	public void handlePacket(TFTPPacketView packetView, InetSocketAddress source, long now) {
+		if (state == State.FINISHED)
+			return;
+
+		// if the packet was received from another source then send error packet with error code 5
+		if (!source.equals(remoteSocketAddress)) {
+			String errorMessage = String.format("Received packet from unknown source. Expected: %s:%d, Received: %s:%d",
+					remoteAddress, remotePort, source.getAddress(), source.getPort());
+			Log.error("NIOTransferSession", errorMessage);
+			sendErrorPacket(ERRORPacket.UNKNOWN_TID, errorMessage, source.getAddress(), source.getPort());
+			return;
+		}
+
+		TFTPPacketType packetType = packetView.getPacketType();
+
+		if (packetType != TFTPPacketType.INVALID && !packetView.hasBlockNumber()) {
+			String errorMessage = String.format("cannot parse %s packet", packetType);
+			Log.error("NIOTransferSession", errorMessage);
+			sendErrorPacket(ERRORPacket.ILLEGAL_TFTP_OPERATION, errorMessage, remoteAddress, remotePort);
+			finish();
+		}
+		else if (packetType == TFTPPacketType.ACK && state == State.AWAITING_ACK) {
+			handleACKPacket(packetView.getBlockNumber(), now);
+		}
+		else if (packetType == TFTPPacketType.DATA && state == State.AWAITING_DATA) {
+			handleDATAPacket(packetView, now);
+		}
+		else if (packetType == TFTPPacketType.DATA && state == State.LINGERING) {
+			handleLingeringDATAPacket(packetView.getBlockNumber());
+		}
+		else if (packetType == TFTPPacketType.ERROR) {
+			Log.verbose("NIOTransferSession", "received ERROR packet from client %s:%d, errorCode: %d, errorMessage: %s", remoteAddress, remotePort, packetView.getErrorCode(), packetView.getErrorMessage());
+			MetricsRegistry.getInstance().errorPacketReceived(packetView.getErrorCode());
+			finish();
+		}
+		else {
+			String errorMessage = "invalid TFTP packet";
+			Log.error("NIOTransferSession", errorMessage);
+			sendErrorPacket(ERRORPacket.ILLEGAL_TFTP_OPERATION, errorMessage, remoteAddress, remotePort);
+			finish();
+		}
+	}
+
+	/**
+	 * RRQ: moves the window past the acknowledged block and sends the next window
+	 *
+	 * @param ackBlockNumber block number of the ACK packet received
+	 * @param now            current time in milliseconds
+	 */
+	private void handleACKPacket(short ackBlockNumber, long now) {
+		short blockNumber = BlockNumbers.fromBlockIndex(blockIndex);
+
+		// the ACK packet may acknowledge any block of the window that was sent
+		short lastBlockNumber = (short) (blockNumber + windowLength - 1);
+		if (blockIndex == 0)
+			lastBlockNumber = 0;
+
+		// the client acknowledges the last block it received in order when the first block of the
+		// window is lost, the window is sent again without waiting for the timeout (RFC 7440), once
+		// per window. With a window of 1 a duplicate ACK is ignored (Sorcerer's Apprentice Syndrome)
+		if (blockIndex > 0 && transferOptions.getWindowSize() > 1 && !windowResent && ackBlockNumber == (short) (blockNumber - 1)) {
+			Log.verbose("NIOTransferSession", "received ACK packet %d before the window from client %s:%d", BlockNumbers.toUnsigned(ackBlockNumber), remoteAddress, remotePort);
+			windowResent = true;
+			retransmit();
+			if (!isFinished())
+				resetTimeout(now);
+			return;
+		}
+
+		if (BlockNumbers.compare(ackBlockNumber, blockNumber) < 0) {
+			// duplicate ACK, ignore it and keep waiting
+			Log.error("NIOTransferSession", "duplicate ACK packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(blockNumber), BlockNumbers.toUnsigned(ackBlockNumber));
+			return;
+		}
+		else if (BlockNumbers.compare(ackBlockNumber, lastBlockNumber) > 0) {
+			String errorMessage = String.format("incorrect ACK packet block number received. Expected: %d, Received: %d",
+					BlockNumbers.toUnsigned(blockNumber), BlockNumbers.toUnsigned(ackBlockNumber));
+			Log.error("NIOTransferSession", errorMessage);
+			sendErrorPacket(ERRORPacket.ILLEGAL_TFTP_OPERATION, errorMessage, remoteAddress, remotePort);
+			finish();
+			return;
+		}
+
+		retransmissionTimer.stopMeasurement();
+
+		// the window moves past the acknowledged block,
+		// ACK 0 acknowledges the OACK packet and the window starts at block 1
+		blockIndex = BlockNumbers.toBlockIndex(ackBlockNumber, blockIndex) + 1;
+
+		if (blockIndex > blockSource.getNumberOfBlocks()) {
+			Log.verbose("NIOTransferSession", "connection finished");
+			MetricsRegistry.getInstance().transferCompleted(transferType, startTime, blockSource.getFileSize());
+			finish();
+			return;
+		}
+
+		windowLength = (int) Math.min(transferOptions.getWindowSize(), blockSource.getNumberOfBlocks() - blockIndex + 1);
+		numberOfTries = 0;
+		windowResent = false;
+		resetIdleTimeout(now);
+
+		// blocks of a window that was cut short by a lost packet are sent again, their ACK is not timed
+		if (blockIndex > lastBlockSent)
+			retransmissionTimer.startMeasurement();
+
+		sendWindow();
+		resetTimeout(now);
+	}
+
+	/**
+	 * WRQ: writes the received DATA packet to the file and acknowledges the last block of each window
+	 *
+	 * @param dataPacket view of the DATA packet received
+	 * @param now        current time in milliseconds
+	 */
+	private void handleDATAPacket(TFTPPacketView dataPacket, long now) {
+		short blockNumber = BlockNumbers.fromBlockIndex(blockIndex);
+		short expectedBlockNumber = BlockNumbers.next(blockNumber);
+		boolean windowed = transferOptions.getWindowSize() > 1;
+
+		if (BlockNumbers.compare(dataPacket.getBlockNumber(), expectedBlockNumber) < 0) {
+			Log.error("NIOTransferSession", "duplicate DATA packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(dataPacket.getBlockNumber()));
+
+			// the last ACK might have been lost so it is sent again
+			if (dataPacket.getBlockNumber() == blockNumber)
+				retransmit();
+			return;
+		}
+		else if (BlockNumbers.compare(dataPacket.getBlockNumber(), expectedBlockNumber) > 0 && windowed) {
+			// a block of the window was lost, the client restarts after the last block received in order
+			Log.error("NIOTransferSession", "out of order DATA packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(dataPacket.getBlockNumber()));
+
+			if (!gapAcknowledged) {
+				sendACKPacket(blockNumber);
+				gapAcknowledged = true;
+			}
+
+			// the next block in order is an answer to a retransmission
+			retransmissionTimer.cancelMeasurement();
+			blocksInWindow = 0;
+			return;
+		}
+		else if (BlockNumbers.compare(dataPacket.getBlockNumber(), expectedBlockNumber) > 0) {
+			String errorMessage = String.format("incorrect DATA packet block number received. Expected: %d, Received: %d",
+					BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(dataPacket.getBlockNumber()));
+			Log.error("NIOTransferSession", errorMessage);
+			sendErrorPacket(ERRORPacket.ILLEGAL_TFTP_OPERATION, errorMessage, remoteAddress, remotePort);
+			finish();
+			return;
+		}
+
+		retransmissionTimer.stopMeasurement();
+
+		// once the data length is less than the block size the transfer is finished
+		boolean lastDataPacket = dataPacket.getPacketLength() < transferOptions.getMaxPacketLength();
+
+		int dataLength = dataPacket.getDataLength();
+		receivedBytes += dataLength;
+		MetricsRegistry.getInstance().dataBlockReceived(dataLength);
+		if (transferStatus != null)
+			transferStatus.blockReceived(blockIndex + 1, dataLength);
+
+		// write file data from DATA packet to hard drive
+		FileManager.FileManagerResult res = fileManager.writeBlock(fileWriter, blockIndex + 1, dataPacket.getDataBuffer());
+
+		// the buffered data is written before the last block is acknowledged
+		if (!res.error && lastDataPacket) {
+			res = fileManager.closeFileWriter(fileWriter);
+			fileWriter = null;
+		}
+
+		if (res.error) {
+			sendFileManagerErrorPacket(res);
+			finish();
+			return;
+		}
+
+		blockIndex++;
+		blocksInWindow++;
+		gapAcknowledged = false;
+		numberOfTries = 0;
+		resetTimeout(now);
+		resetIdleTimeout(now);
+
+		if (lastDataPacket || blocksInWindow == transferOptions.getWindowSize()) {
+			retransmissionTimer.startMeasurement();
+			sendACKPacket(expectedBlockNumber);
+			blocksInWindow = 0;
+		}
+
+		// the client sends the last DATA packet again if the last ACK is lost
+		if (lastDataPacket) {
+			Log.verbose("NIOTransferSession", "connection is finished");
+			MetricsRegistry.getInstance().transferCompleted(transferType, startTime, receivedBytes);
+			state = State.LINGERING;
+			timingWheel.cancel(retransmitTimeout);
+			timingWheel.cancel(idleTimeout);
+			timingWheel.schedule(lingerTimeout, now + NetworkConfig.FINAL_ACK_LINGER_TIME);
+
+			// a new request from the same client is not a duplicate of this one anymore
+			notifyEnd();
+		}
+	}
+
+	/**
+	 * WRQ: acknowledges the last block again when the client sent it again
+	 *
+	 * @param dataBlockNumber block number of the DATA packet received
+	 */
+	private void handleLingeringDATAPacket(short dataBlockNumber) {
+		short lastBlockNumber = BlockNumbers.fromBlockIndex(blockIndex);
+
+		if (dataBlockNumber == lastBlockNumber)
+			sendACKPacket(lastBlockNumber);
+	}
+
+	/**
+	 * Retransmits when the retransmission timeout expires
+	 *
+	 * @param now current time in milliseconds
+	 */
+	private void onRetransmitTimeout(long now) {
+		if (state == State.FINISHED)
+			return;
+
+		numberOfTries++;
+		if (numberOfTries >= NetworkConfig.MAX_TRIES) {
+			Log.error("NIOTransferSession", "max tries reached. Exitting connection");
+			finish();
+			close();
+			return;
+		}
+
+		Log.error("NIOTransferSession", "Socket timed out. Resending to client %s:%d", remoteAddress, remotePort);
+
+		retransmissionTimer.backOff();
+		retransmit();
+
+		if (isFinished())
+			close();
+		else
+			resetTimeout(now);
+	}
+
+	/**
+	 * Closes a transfer the client did not move forward for the session idle timeout of ServerSettings
+	 *
+	 * @param now current time in milliseconds
+	 */
+	private void onIdleTimeout(long now) {
+		Log.error("NIOTransferSession", "no progress from client %s:%d. Exitting connection", remoteAddress, remotePort);
+		finish();
+		close();
+	}
+
+	/**
+	 * Closes a WRQ transfer once the client had time to send the last DATA packet again
+	 *
+	 * @param now current time in milliseconds
+	 */
+	private void onLingerTimeout(long now) {
+		finish();
+		close();
+	}
+
+	/**
+	 * RRQ: sends the OACK packet or the window starting at the first block that is not acknowledged
+	 * WRQ: sends the OACK packet or acknowledges the last block received in order
+	 */
+	private void retransmit() {
+		// the answer could be the answer to any copy of the packet (Karn's algorithm)
+		retransmissionTimer.cancelMeasurement();
+
+		if (blockIndex == 0 && oackPacket != null)
+			send(oackPacket);
+		else if (state == State.AWAITING_ACK)
+			sendWindow();
+		else {
+			sendACKPacket(BlockNumbers.fromBlockIndex(blockIndex));
+			if (transferStatus != null)
+				transferStatus.acknowledgementResent();
+		}
+
+		blocksInWindow = 0;
+	}
+
+	/**
+	 * RRQ: sends the DATA packets of the window starting at the first block that is not acknowledged
+	 */
+	private void sendWindow() {
+		for (int i = 0; i < windowLength; i++) {
+			long windowBlock = blockIndex + i;
+
+			// a memory-mapped file that was truncated on disk fails with an InternalError when the
+			// missing part is read, only this transfer ends and not the event loop
+			try {
+				ByteBuffer blockBuffer = blockSource.getBlockBuffer(windowBlock);
+
+				MetricsRegistry.getInstance().dataBlockSent(blockBuffer.remaining(), windowBlock <= lastBlockSent);
+				if (transferStatus != null)
+					transferStatus.blockSent(windowBlock, blockBuffer.remaining(), windowBlock <= lastBlockSent);
+				sendDATAPacket(BlockNumbers.fromBlockIndex(windowBlock), blockBuffer);
+			} catch (IOException | InternalError e) {
+				Log.error("NIOTransferSession", "cannot read file %s", fileName);
+				sendErrorPacket(ERRORPacket.NOT_DEFINED, String.format("cannot read file: %s", fileName), remoteAddress, remotePort);
+				finish();
+				return;
+			}
+
+			lastBlockSent = Math.max(lastBlockSent, windowBlock);
+
+			if (isFinished())
+				return;
+		}
+	}
+
+	/**
+	 * RRQ: sends a DATA packet without building it on the heap.
+	 * In zero copy mode the header and the file data are passed to a single gathering write,
+	 * otherwise they are put together in the send buffer
+	 *
+	 * @param dataBlockNumber block number of the DATA packet
+	 * @param blockBuffer     file data of the block
+	 */
+	private void sendDATAPacket(short dataBlockNumber, ByteBuffer blockBuffer) {
+		TFTPPacketView.putDATAHeader(headerBuffer, dataBlockNumber);
+
+		try {
+			if (zeroCopy) {
+				gatherBuffers[1] = blockBuffer;
+				channel.write(gatherBuffers);
+			}
+			else {
+				sendBuffer.clear();
+				sendBuffer.put(headerBuffer);
+				sendBuffer.put(blockBuffer);
+				sendBuffer.flip();
+				channel.send(sendBuffer, remoteSocketAddress);
+			}
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("NIOTransferSession", "oops... the connection broke"));
+			e.printStackTrace();
+			finish();
+		}
+	}
+
+	/**
+	 * Sends an ACK packet without building it on the heap
+	 *
+	 * @param ackBlockNumber block number to acknowledge
+	 */
+	private void sendACKPacket(short ackBlockNumber) {
+		TFTPPacketView.putACKPacket(headerBuffer, ackBlockNumber);
+		try {
+			channel.send(headerBuffer, remoteSocketAddress);
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("NIOTransferSession", "oops... the connection broke"));
+			e.printStackTrace();
+			finish();
+		}
+	}
+
+	private void resetTimeout(long now) {
+		timingWheel.schedule(retransmitTimeout, now + retransmissionTimer.getTimeout());
+	}
+
+	private void resetIdleTimeout(long now) {
+		timingWheel.schedule(idleTimeout, now + ServerSettings.getSessionIdleTimeout());
+	}
+
+	/**
+	 * Writes a packet to the session's channel
+	 *
+	 * @param tftpPacket packet to send
+	 */
+	private void send(TFTPPacket tftpPacket) {
+		send(tftpPacket, remoteSocketAddress);
+	}
+
+	private void send(TFTPPacket tftpPacket, InetSocketAddress target) {
+		try {
+			channel.send(ByteBuffer.wrap(tftpPacket.getPacketBytes(), 0, tftpPacket.getPacketLength()), target);
+		} catch (IOException e) {
+			System.err.println(Globals.getErrorMessage("NIOTransferSession", "oops... the connection broke"));
+			e.printStackTrace();
+			finish();
+		}
+	}
+
+	/**
+	 * Sends ERROR packet and prints error message
+	 *
+	 * @param errorCode
+	 * @param errorMessage
+	 * @param address
+	 * @param port
+	 */
+	private void sendErrorPacket(short errorCode, String errorMessage, InetAddress address, int port) {
+		ERRORPacket errorPacket = TFTPPacketBuilder.getERRORDatagram(errorCode, errorMessage, address, port);
+
+		Log.error("NIOTransferSession", "sending error packet, errorCode: %d, errorMessage: %s", errorCode, errorMessage);
+		send(errorPacket, new InetSocketAddress(address, port));
+		MetricsRegistry.getInstance().errorPacketSent(errorCode);
+	}
+
+	/**
+	 * Sends the ERROR packet that matches a failed file operation
+	 *
+	 * @param res result of the file operation
+	 */
+	private void sendFileManagerErrorPacket(FileManager.FileManagerResult res) {
+		// access violation error will send an error packet with error code 2 and the connection
+		if (res.accessViolation)
+			sendErrorPacket(ERRORPacket.ACCESS_VIOLATION, String.format("write access denied to file: %s", fileName), remoteAddress, remotePort);
+		else if (res.fileAlreadyExist)
+			sendErrorPacket(ERRORPacket.FILE_EXISTS, String.format("file already exists: %s", fileName), remoteAddress, remotePort);
+		// disk full error will send an error packet with error code 3 and close the connection
+		else if (res.diskFull)
+			sendErrorPacket(ERRORPacket.DISK_FULL, String.format("Not enough disk space for file: %s", fileName), remoteAddress, remotePort);
+	}
+
+	private void finish() {
+		state = State.FINISHED;
+	}
+
+	public boolean isFinished() {
+		return state == State.FINISHED;
+	}
+
+	public DatagramChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Closes the session's channel once the transfer is finished
+	 */
+	public void close() {
+		state = State.FINISHED;
+
+		if (timingWheel != null) {
+			timingWheel.cancel(retransmitTimeout);
+			timingWheel.cancel(idleTimeout);
+			timingWheel.cancel(lingerTimeout);
+		}
+
+		if (blockSource != null) {
+			blockSource.close();
+			blockSource = null;
+		}
+
+		// the transfer was aborted before the last block, keep the data received so far
+		if (fileWriter != null) {
+			fileManager.closeFileWriter(fileWriter);
+			fileWriter = null;
+		}
+
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			Log.error("NIOTransferSession", "cannot close datagram channel");
+		}
+
+		notifyEnd();
+	}
+
+	/**
+	 * Tells the listener that the transfer ended, only the first call does it
+	 */
+	private void notifyEnd() {
+		if (endListener != null) {
+			endListener.run();
+			endListener = null;
+		}
+	}
+}
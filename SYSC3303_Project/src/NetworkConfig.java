@@ -8,7 +8,72 @@ public class NetworkConfig {
 	// should be changed to 69 when submitting the project
 	public static final int SERVER_PORT = 8000;
 	public static final int DATAGRAM_PACKET_MAX_LEN = 516;
+	// block sizes that can be negotiated with the blksize option (RFC 2348)
+	public static final int DEFAULT_BLOCK_SIZE = 512;
+	public static final int MIN_BLOCK_SIZE = 8;
+	public static final int MAX_BLOCK_SIZE = 65464;
+	public static final int MAX_DATAGRAM_PACKET_LEN = MAX_BLOCK_SIZE + 4;
+	// length of the pooled receive buffers used for packets that fit an Ethernet frame (1500 bytes - IP and UDP headers)
+	public static final int SMALL_PACKET_BUFFER_LEN = 1472;
+	// number of DATA packets sent before waiting for an ACK, negotiated with the windowsize option (RFC 7440)
+	public static final int DEFAULT_WINDOW_SIZE = 1;
+	public static final int MAX_WINDOW_SIZE = 64;
 	public static final int PROXY_PORT = 6000;
+	// longest time (in ms) to wait for an answer before a packet is sent again
 	public static final int TIMEOUT_TIME = 5000;
+	// retransmission timeout (in ms) used until a round trip time is measured (RFC 6298)
+	public static final int INITIAL_RETRANSMIT_TIMEOUT = 1000;
+	// shortest retransmission timeout (in ms), the same floor as the Linux TCP minimum RTO
+	public static final int MIN_RETRANSMIT_TIMEOUT = 200;
+	// largest random part added to a retransmission timeout, as a fraction of the timeout
+	public static final double RETRANSMIT_TIMEOUT_JITTER = 0.25;
 	public static final int MAX_TRIES = 5;
+	// largest number of transfers the server runs at once, further requests wait in a queue
+	public static final int MAX_CONCURRENT_TRANSFERS = 256;
+	// largest number of requests waiting for a transfer to end, further requests are answered with a busy ERROR packet
+	public static final int MAX_PENDING_TRANSFERS = 1024;
+	// requests per second a client address can send to the server port, further requests are dropped
+	public static final double RATE_LIMIT_REQUESTS_PER_SECOND = 50;
+	// number of requests a client address can send at once before it is limited
+	public static final int RATE_LIMIT_BURST = 100;
+	// number of client addresses the rate limiter tracks, the least recently seen address is forgotten first
+	public static final int RATE_LIMIT_TABLE_SIZE = 4096;
+	// shortest time (in ms) between two ERROR packets sent to a client address that is limited
+	public static final int RATE_LIMIT_ERROR_INTERVAL = 1000;
+	// upload bandwidth (in bytes per second) shared by the RRQ transfers with deficit round robin, 0 disables the egress scheduler
+	public static final long EGRESS_BANDWIDTH = 0;
+	// bytes a transfer may send at each of its turns in the egress scheduler, multiplied by its weight
+	public static final int EGRESS_QUANTUM = 1500;
+	// weight of a RRQ transfer in the egress scheduler
+	public static final int EGRESS_DEFAULT_WEIGHT = 1;
+	// number of selector threads used by the NIO server engine
+	public static final int NIO_EVENT_LOOP_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	// duration (in ms) of a tick of the timing wheel of a NIO event loop, timeouts expire up to a tick late
+	public static final int TIMING_WHEEL_TICK = 10;
+	// number of ticks in a turn of the timing wheel
+	public static final int TIMING_WHEEL_SIZE = 512;
+	// longest time (in ms) a NIO transfer may go without the client moving it forward before it is closed
+	public static final int SESSION_IDLE_TIMEOUT = 30000;
+	// time (in ms) a NIO transfer stays open after the last ACK of a WRQ to answer a retransmitted last DATA packet
+	public static final int FINAL_ACK_LINGER_TIME = TIMEOUT_TIME;
+	// number of bytes of received blocks collected before they are written to the file
+	public static final int FILE_WRITE_BUFFER_SIZE = 64 * 1024;
+	// largest number of direct write buffers allocated for the WRQ transfers, further transfers use heap buffers
+	public static final int FILE_WRITE_BUFFER_POOL_SIZE = 64;
+	// bytes of file data the server keeps in memory for files that are read often, 0 disables the cache
+	public static final long FILE_CACHE_SIZE = 256L * 1024 * 1024;
+	// number of counters per row used to estimate how often files are requested
+	public static final int FILE_CACHE_SKETCH_WIDTH = 4096;
+	// largest part of a file that is memory-mapped at once when RRQ files are memory-mapped
+	public static final int MAPPED_REGION_SIZE = 256 * 1024 * 1024;
+	// local port the metrics are served on in the Prometheus text format (http://localhost:port/metrics), 0 disables it
+	public static final int METRICS_PORT = 9169;
+	// number of log messages waiting to be written, further messages are dropped until the writer catches up
+	public static final int LOG_BUFFER_SIZE = 8192;
+	// number of shards of the receive buffer pool shared by the sockets, a thread always uses the same shard
+	public static final int PACKET_BUFFER_POOL_SHARDS = Runtime.getRuntime().availableProcessors();
+	// free buffers of each size kept by a shard of the receive buffer pool
+	public static final int PACKET_BUFFER_POOL_SHARD_CAPACITY = 64;
+	// time (in ms) a connection of the network emulator stays open without a packet in either direction
+	public static final int EMULATOR_IDLE_TIMEOUT = TIMEOUT_TIME * MAX_TRIES;
 }
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a headless error simulator that emulates a lossy, slow network between
+ * any number of clients and the server.
+ *
+ * The ErrorSimulator relays a single connection and changes one chosen packet. The network
+ * emulator relays every connection at once and changes every packet the same way: each packet
+ * is lost with the given probability and the ones that get through are held for the given delay,
+ * in each direction, so the round trip time grows by twice the delay. Delayed packets are sent
+ * by a single thread in the order they were received.
+ *
+ * Clients send their requests to the port of the emulator, like they do with the ErrorSimulator.
+ * Every client gets its own relay: a socket facing the server, so that the server sees a transfer
+ * ID per client, and a thread that passes the packets of the server back to the client from the
+ * port of the emulator. A relay is closed once no packet went through it for
+ * NetworkConfig.EMULATOR_IDLE_TIMEOUT.
+ *
+ * Each direction of a relay decides its losses with its own Random, seeded from the seed of the
+ * emulator and the order in which the relays were opened. The losses of a connection do not depend
+ * on how the threads of the other connections interleave, so a run can be repeated as long as the
+ * clients send their requests in the same order.
+ *
+ * @author Group 8
+ */
+public class NetworkEmulator implements Runnable {
+	// faces the clients, every packet to a client is sent from this socket
+	private TFTPSocket tftpSocket;
+
+	private InetAddress serverAddress;
+	private int serverPort;
+
+	// probability that a packet is lost, between 0 and 1
+	private double lossRate;
+	// time (in ms) every packet that is not lost is held before it is sent
+	private int delay;
+	// gives the seeds of the relays in the order they are opened, used by the receiving thread only
+	private Random seedRandom;
+
+	// relays of the clients by client address and port
+	private Map<InetSocketAddress, Relay> relays = new ConcurrentHashMap<InetSocketAddress, Relay>();
+	// runs the relay threads
+	private ExecutorService relayExecutor;
+	// sends the delayed packets, null if packets are not delayed
+	private ScheduledExecutorService delayExecutor;
+
+	private LongAdder forwardedCount = new LongAdder();
+	private LongAdder lostCount = new LongAdder();
+
+	/**
+	 * This class relays the packets of one client to the server and back
+	 */
+	private class Relay implements Runnable {
+		private InetSocketAddress clientAddress;
+		// faces the server, its port is the transfer ID of the client seen by the server
+		private TFTPSocket serverSocket;
+		// the server port until the server answers from the port of the transfer
+		private volatile int serverTransferPort;
+		private volatile long lastPacketTime;
+		// decide which packets are lost, each used by the single thread that forwards in its direction
+		private Random toServerRandom;
+		private Random toClientRandom;
+
+		Relay(InetSocketAddress clientAddress, long toServerSeed, long toClientSeed) {
+			this.clientAddress = clientAddress;
+			toServerRandom = new Random(toServerSeed);
+			toClientRandom = new Random(toClientSeed);
+			serverSocket = new TFTPSocket(NetworkConfig.EMULATOR_IDLE_TIMEOUT);
+			serverSocket.setMaxPacketLength(NetworkConfig.MAX_DATAGRAM_PACKET_LEN);
+			serverTransferPort = serverPort;
+			lastPacketTime = System.currentTimeMillis();
+		}
+
+		/**
+		 * Passes a packet of the client to the server, requests always go to the server port
+		 */
+		void forwardToServer(TFTPPacket tftpPacket) {
+			lastPacketTime = System.currentTimeMillis();
+
+			TFTPPacketType packetType = tftpPacket.getPacketType();
+			int port = packetType == TFTPPacketType.RRQ || packetType == TFTPPacketType.WRQ ? serverPort : serverTransferPort;
+			forward(tftpPacket, toServerRandom, serverSocket, serverAddress, port);
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				TFTPPacket tftpPacket;
+
+				try {
+					tftpPacket = serverSocket.receive();
+				} catch (SocketTimeoutException e) {
+					if (System.currentTimeMillis() - lastPacketTime >= NetworkConfig.EMULATOR_IDLE_TIMEOUT)
+						break;
+					continue;
+				} catch (IOException e) {
+					break;
+				}
+
+				if (tftpPacket == null)
+					continue;
+
+				if (!tftpPacket.getRemoteAddress().equals(serverAddress)) {
+					serverSocket.release(tftpPacket);
+					continue;
+				}
+
+				lastPacketTime = System.currentTimeMillis();
+				// the first answer of the server gives the port of the transfer
+				serverTransferPort = tftpPacket.getRemotePort();
+				forward(tftpPacket, toClientRandom, tftpSocket, clientAddress.getAddress(), clientAddress.getPort());
+			}
+
+			relays.remove(clientAddress, this);
+			close();
+			Log.verbose("NetworkEmulator", "closed relay of client %s", clientAddress);
+		}
+
+		void close() {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param port          local port the clients send their requests to
+	 * @param serverAddress address of the server
+	 * @param serverPort    port the server receives requests on
+	 * @param lossRate      probability that a packet is lost, between 0 and 1
+	 * @param delay         time (in ms) every packet is held in each direction, less than NetworkConfig.EMULATOR_IDLE_TIMEOUT
+	 * @param seed          seed of the random losses
+	 */
+	public NetworkEmulator(int port, InetAddress serverAddress, int serverPort, double lossRate, int delay, long seed) {
+		if (lossRate < 0 || lossRate > 1)
+			throw new IllegalArgumentException("loss rate must be between 0 and 1");
+		if (delay < 0 || delay >= NetworkConfig.EMULATOR_IDLE_TIMEOUT)
+			throw new IllegalArgumentException("delay must be between 0 and " + NetworkConfig.EMULATOR_IDLE_TIMEOUT + " ms");
+
+		this.serverAddress = serverAddress;
+		this.serverPort = serverPort;
+		this.lossRate = lossRate;
+		this.delay = delay;
+		seedRandom = new Random(seed);
+
+		tftpSocket = new TFTPSocket(0, port);
+		// packets can be as large as the largest block size that can be negotiated
+		tftpSocket.setMaxPacketLength(NetworkConfig.MAX_DATAGRAM_PACKET_LEN);
+
+		// relays spend their time blocked on a receive, virtual threads are cheaper when available
+		relayExecutor = Server.newVirtualThreadExecutor();
+		if (relayExecutor == null)
+			relayExecutor = Executors.newCachedThreadPool();
+
+		if (delay > 0)
+			delayExecutor = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	/**
+	 * Receives the packets of the clients until the emulator is shut down
+	 */
+	@Override
+	public void run() {
+		while (!tftpSocket.isClosed()) {
+			TFTPPacket tftpPacket;
+
+			try {
+				tftpPacket = tftpSocket.receive();
+			} catch (IOException e) {
+				continue;
+			}
+
+			if (tftpPacket == null)
+				continue;
+
+			InetSocketAddress clientAddress = new InetSocketAddress(tftpPacket.getRemoteAddress(), tftpPacket.getRemotePort());
+			Relay relay = relays.get(clientAddress);
+
+			if (relay == null) {
+				TFTPPacketType packetType = tftpPacket.getPacketType();
+
+				// a packet of a connection that was closed is dropped, a new connection starts with a request
+				if (packetType != TFTPPacketType.RRQ && packetType != TFTPPacketType.WRQ) {
+					tftpSocket.release(tftpPacket);
+					continue;
+				}
+
+				relay = new Relay(clientAddress, seedRandom.nextLong(), seedRandom.nextLong());
+				relays.put(clientAddress, relay);
+				relayExecutor.execute(relay);
+				Log.verbose("NetworkEmulator", "opened relay of client %s", clientAddress);
+			}
+
+			relay.forwardToServer(tftpPacket);
+		}
+	}
+
+	/**
+	 * Drops the packet or sends a copy of it now or after the delay.
+	 * The received packet is released
+	 *
+	 * @param tftpPacket packet received
+	 * @param random     decides if the packet is lost, belongs to the direction of the packet
+	 * @param socket     socket the packet is sent from
+	 * @param address    address the packet is sent to
+	 * @param port       port the packet is sent to
+	 */
+	private void forward(TFTPPacket tftpPacket, Random random, TFTPSocket socket, InetAddress address, int port) {
+		if (lossRate > 0 && random.nextDouble() < lossRate) {
+			lostCount.increment();
+			socket.release(tftpPacket);
+			return;
+		}
+
+		TFTPPacket sendPacket;
+		try {
+			sendPacket = new TFTPPacket(tftpPacket.getPacketBytes(), 0, tftpPacket.getPacketLength(), address, port);
+		} catch (TFTPPacketParsingError e) {
+			Log.error("NetworkEmulator", "cannot copy TFTP packet");
+			return;
+		} finally {
+			socket.release(tftpPacket);
+		}
+
+		forwardedCount.increment();
+
+		if (delayExecutor == null) {
+			socket.send(sendPacket);
+			return;
+		}
+
+		delayExecutor.schedule(() -> {
+			// the relay may have been closed while the packet was held
+			if (!socket.isClosed())
+				socket.send(sendPacket);
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes the socket of the emulator and every relay, packets still held are dropped
+	 */
+	public void shutdown() {
+		if (delayExecutor != null) {
+			delayExecutor.shutdownNow();
+			try {
+				delayExecutor.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Log.error("NetworkEmulator", "cannot stop delayed packets");
+			}
+		}
+
+		tftpSocket.close();
+
+		for (Relay relay : relays.values())
+			relay.close();
+		relays.clear();
+
+		relayExecutor.shutdown();
+	}
+
+	/**
+	 * @return number of packets passed on, in either direction
+	 */
+	public long getForwardedCount() {
+		return forwardedCount.sum();
+	}
+
+	/**
+	 * @return number of packets lost on purpose, in either direction
+	 */
+	public long getLostCount() {
+		return lostCount.sum();
+	}
+
+	/**
+	 * @return number of clients with an open relay
+	 */
+	public int getRelayCount() {
+		return relays.size();
+	}
+}
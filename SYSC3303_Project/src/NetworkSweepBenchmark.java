@@ -0,0 +1,296 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class measures how the server copes with a lossy, slow network.
+ *
+ * The server, a NetworkEmulator in front of it and a LoadGenerator run in this process. For every
+ * added delay and every loss rate of the sweep a new emulator is started and the load generator runs
+ * against it, then the goodput, the completion time of the transfers (from the request to the last
+ * block), the packets the emulator passed on and lost, and the DATA blocks retransmitted and timeouts
+ * expired by both ends are recorded. The report is written to stdout as CSV or JSON, one row per point,
+ * with fixed formatting so that the reports of two versions can be diffed.
+ *
+ * The loss rate applies to each packet in each direction, the delay is added to each packet in each
+ * direction so the round trip time grows by twice the delay. The seed of the emulator is the same at
+ * every point, each connection draws its losses from a Random seeded from it in the order the
+ * connections are opened, so that the points of a sweep and of two runs see comparable losses.
+ *
+ * The server runs with its request rate limit lifted, every client of the load generator sends from
+ * the address of this host. The ports of the server, of the error simulator and of the metrics
+ * (NetworkConfig) must be free.
+ *
+ * Usage: NetworkSweepBenchmark [options] [LoadGenerator options except --server and --format]
+ * 		--mode MODE            server mode (NIO)
+ * 		--loss PERCENT,...     loss rates of the sweep (0,1,2,5,10)
+ * 		--delay MS,...         delays added to each packet of the sweep (0,10,50)
+ * 		--seed N               seed of the random losses (1)
+ * 		--format FORMAT        csv or json (csv)
+ *
+ * The load generator runs 8 clients for 10 s at every point unless --clients and --duration say otherwise.
+ *
+ * @author Group 8
+ */
+public class NetworkSweepBenchmark {
+	// LoadGenerator options given before the ones of the command line, which override them
+	private static final String[] DEFAULT_LOAD_ARGUMENTS = { "--clients", "8", "--duration", "10" };
+
+	private ServerMode serverMode = ServerMode.NIO;
+	private double[] lossPercents = { 0, 1, 2, 5, 10 };
+	private int[] delays = { 0, 10, 50 };
+	private long seed = 1;
+	private String format = "csv";
+	private List<String> loadArguments = new ArrayList<String>(Arrays.asList(DEFAULT_LOAD_ARGUMENTS));
+
+	private InetAddress localAddress;
+
+	/**
+	 * This class holds the measurements of one point of the sweep
+	 */
+	private static class Point {
+		double lossPercent;
+		int delay;
+		double measuredSeconds;
+		LoadGenerator.Result result;
+		long forwardedPackets;
+		long lostPackets;
+		long retransmittedBlocks;
+		long timeouts;
+	}
+
+	/**
+	 * Runs the load generator against a new network emulator at every point of the sweep
+	 *
+	 * @return measurements of the points, by delay then by loss rate
+	 */
+	private List<Point> run() throws InterruptedException, UnknownHostException {
+		List<Point> points = new ArrayList<Point>();
+		MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+
+		Server server = new Server(serverMode);
+		server.getRequestRateLimiter().setRequestsPerSecond(1e9);
+		server.getRequestRateLimiter().setBurst(1000000);
+
+		Thread serverThread = new Thread(server, "Server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		// the files read by the RRQ transfers are written straight to the server, not through the emulator
+		LoadGenerator seedLoadGenerator = newLoadGenerator(NetworkConfig.SERVER_PORT);
+		if (seedLoadGenerator.getWriteRatio() < 1 && !seedLoadGenerator.writeReadFiles()) {
+			server.shutdown();
+			return null;
+		}
+
+		for (int delay : delays) {
+			for (double lossPercent : lossPercents) {
+				System.err.println(String.format(Locale.ROOT, "loss %.1f%%, delay %d ms...", lossPercent, delay));
+
+				NetworkEmulator emulator = new NetworkEmulator(NetworkConfig.PROXY_PORT, localAddress, NetworkConfig.SERVER_PORT, lossPercent / 100, delay, seed);
+				Thread emulatorThread = new Thread(emulator, "NetworkEmulator");
+				emulatorThread.start();
+
+				LoadGenerator loadGenerator = newLoadGenerator(NetworkConfig.PROXY_PORT);
+				long retransmittedBlocks = metricsRegistry.getRetransmittedBlocks();
+				long timeouts = metricsRegistry.getTimeouts();
+
+				LoadGenerator.Result[] results = loadGenerator.run();
+
+				Point point = new Point();
+				point.lossPercent = lossPercent;
+				point.delay = delay;
+				point.measuredSeconds = loadGenerator.getMeasuredSeconds();
+				// RRQ and WRQ transfers together
+				point.result = results[2];
+				point.forwardedPackets = emulator.getForwardedCount();
+				point.lostPackets = emulator.getLostCount();
+				// the server and the load generator record into the same registry
+				point.retransmittedBlocks = metricsRegistry.getRetransmittedBlocks() - retransmittedBlocks;
+				point.timeouts = metricsRegistry.getTimeouts() - timeouts;
+				points.add(point);
+
+				emulator.shutdown();
+				emulatorThread.join(1000);
+			}
+		}
+
+		server.shutdown();
+		return points;
+	}
+
+	/**
+	 * @param port port of this host the load generator sends its requests to
+	 * @return load generator ready to run
+	 */
+	private LoadGenerator newLoadGenerator(int port) throws UnknownHostException {
+		List<String> arguments = new ArrayList<String>(loadArguments);
+		arguments.add("--server");
+		arguments.add(localAddress.getHostAddress() + ":" + port);
+
+		LoadGenerator loadGenerator = new LoadGenerator();
+		loadGenerator.parseArguments(arguments.toArray(new String[0]));
+		loadGenerator.prepare();
+		return loadGenerator;
+	}
+
+	private void printCSV(List<Point> points) {
+		System.out.println("mode,loss_percent,delay_ms,measured_seconds,completed,failed,goodput_bytes_per_second,"
+				+ "completion_p50_ms,completion_p99_ms,completion_p999_ms,completion_max_ms,"
+				+ "forwarded_packets,lost_packets,retransmitted_blocks,timeouts");
+
+		for (Point point : points) {
+			LoadGenerator.Result result = point.result;
+			System.out.println(String.format(Locale.ROOT, "%s,%.1f,%d,%.3f,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%d", serverMode,
+					point.lossPercent, point.delay, point.measuredSeconds, result.completed, result.failed, result.bytes / point.measuredSeconds,
+					result.latencies.percentileMillis(0.5), result.latencies.percentileMillis(0.99), result.latencies.percentileMillis(0.999), result.latencies.percentileMillis(1),
+					point.forwardedPackets, point.lostPackets, point.retransmittedBlocks, point.timeouts));
+		}
+	}
+
+	private void printJSON(List<Point> points) {
+		StringBuilder json = new StringBuilder(4096);
+
+		json.append("{\"mode\":\"").append(serverMode).append('"');
+		json.append(",\"seed\":").append(seed);
+		json.append(",\"loadArguments\":\"").append(String.join(" ", loadArguments)).append('"');
+
+		json.append(",\"points\":[");
+		for (int i = 0; i < points.size(); i++) {
+			Point point = points.get(i);
+			LoadGenerator.Result result = point.result;
+			if (i > 0)
+				json.append(',');
+
+			json.append("\n{\"lossPercent\":").append(LoadGenerator.jsonNumber(point.lossPercent));
+			json.append(",\"delayMillis\":").append(point.delay);
+			json.append(",\"measuredSeconds\":").append(LoadGenerator.jsonNumber(point.measuredSeconds));
+			json.append(",\"completed\":").append(result.completed);
+			json.append(",\"failed\":").append(result.failed);
+			json.append(",\"goodputBytesPerSecond\":").append(LoadGenerator.jsonNumber(result.bytes / point.measuredSeconds));
+			json.append(",\"completionTimeMillis\":{\"p50\":").append(LoadGenerator.jsonNumber(result.latencies.percentileMillis(0.5)));
+			json.append(",\"p99\":").append(LoadGenerator.jsonNumber(result.latencies.percentileMillis(0.99)));
+			json.append(",\"p999\":").append(LoadGenerator.jsonNumber(result.latencies.percentileMillis(0.999)));
+			json.append(",\"max\":").append(LoadGenerator.jsonNumber(result.latencies.percentileMillis(1))).append('}');
+			json.append(",\"forwardedPackets\":").append(point.forwardedPackets);
+			json.append(",\"lostPackets\":").append(point.lostPackets);
+			json.append(",\"retransmittedBlocks\":").append(point.retransmittedBlocks);
+			json.append(",\"timeouts\":").append(point.timeouts).append('}');
+		}
+		json.append("\n]}");
+
+		System.out.println(json);
+	}
+
+	private static double[] parseDoubles(String values) {
+		String[] entries = values.split(",");
+		double[] doubles = new double[entries.length];
+
+		for (int i = 0; i < entries.length; i++)
+			doubles[i] = Double.parseDouble(entries[i].trim());
+
+		return doubles;
+	}
+
+	private static int[] parseInts(String values) {
+		String[] entries = values.split(",");
+		int[] ints = new int[entries.length];
+
+		for (int i = 0; i < entries.length; i++)
+			ints[i] = Integer.parseInt(entries[i].trim());
+
+		return ints;
+	}
+
+	/**
+	 * Reads the command line options, the options of the load generator are checked by a
+	 * load generator built from them
+	 *
+	 * @throws IllegalArgumentException if an option is unknown or invalid
+	 */
+	private void parseArguments(String[] args) throws UnknownHostException {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("missing value for " + option);
+			String value = args[++i];
+
+			switch (option) {
+			case "--mode":
+				serverMode = ServerMode.valueOf(value.toUpperCase(Locale.ROOT));
+				break;
+			case "--loss":
+				lossPercents = parseDoubles(value);
+				break;
+			case "--delay":
+				delays = parseInts(value);
+				break;
+			case "--seed":
+				seed = Long.parseLong(value);
+				break;
+			case "--format":
+				format = value;
+				break;
+			case "--server":
+				throw new IllegalArgumentException("the server runs in-process, --server cannot be given");
+			default:
+				loadArguments.add(option);
+				loadArguments.add(value);
+				break;
+			}
+		}
+
+		for (double lossPercent : lossPercents) {
+			if (lossPercent < 0 || lossPercent > 100)
+				throw new IllegalArgumentException("loss rate out of range");
+		}
+
+		for (int delay : delays) {
+			if (delay < 0 || delay >= NetworkConfig.EMULATOR_IDLE_TIMEOUT)
+				throw new IllegalArgumentException("delay out of range");
+		}
+
+		if (!format.equals("csv") && !format.equals("json"))
+			throw new IllegalArgumentException("unknown format " + format);
+
+		localAddress = InetAddress.getLocalHost();
+
+		// the load generator options are checked before the server starts
+		new LoadGenerator().parseArguments(loadArguments.toArray(new String[0]));
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: NetworkSweepBenchmark [--mode MODE] [--loss PERCENT,...] [--delay MS,...] [--seed N] [--format csv|json]");
+		System.err.println("                             [LoadGenerator options except --server and --format]");
+	}
+
+	public static void main(String[] args) throws InterruptedException, UnknownHostException {
+		NetworkSweepBenchmark benchmark = new NetworkSweepBenchmark();
+
+		try {
+			benchmark.parseArguments(args);
+		} catch (IllegalArgumentException | ArithmeticException | UnknownHostException e) {
+			System.err.println(Globals.getErrorMessage("NetworkSweepBenchmark", e.getMessage()));
+			printUsage();
+			System.exit(1);
+		}
+
+		// timeouts and lost transfers are expected, they are counted, not printed
+		Log.setLevel(LogLevel.OFF);
+
+		List<Point> points = benchmark.run();
+		if (points == null)
+			System.exit(1);
+
+		if (benchmark.format.equals("json"))
+			benchmark.printJSON(points);
+		else
+			benchmark.printCSV(points);
+
+		System.exit(0);
+	}
+}
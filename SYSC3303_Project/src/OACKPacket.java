@@ -0,0 +1,133 @@
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents the OACK TFTP packet (RFC 2347)
+ *
+ * @author Group 8
+ *
+ */
+public class OACKPacket extends TFTPPacket {
+	public static final short OP_CODE = 6;
+
+	// option names are in lower case
+	private Map<String, String> options;
+
+	/**
+	 * Constructor used in the static buildPacket method
+	 */
+	private OACKPacket() {
+		super();
+	}
+
+	/**
+	 * Main constructor that parses the bytes into attributes
+	 *
+	 * @param packetBytes list of bytes that form the packet
+	 * @throws TFTPPacketParsingError
+	 */
+	public OACKPacket(TFTPPacket tftpPacket) throws TFTPPacketParsingError {
+		super(tftpPacket);
+		parseOptions();
+	}
+
+	/**
+	 * Reads the option name and value pairs that follow the OP code
+	 *
+	 * @throws TFTPPacketParsingError
+	 */
+	private void parseOptions() throws TFTPPacketParsingError {
+		options = new LinkedHashMap<String, String>();
+
+		String optionName = null;
+		int i = 2;
+		while (i < super.packetLength) {
+			int stringLength = 0;
+			while (i + stringLength < super.packetLength && super.packetBytes[i + stringLength] != 0)
+				stringLength++;
+
+			String str = ByteConversions.bytesToString(Arrays.copyOfRange(super.packetBytes, i, i + stringLength));
+			i += stringLength + 1;
+
+			if (optionName == null) {
+				optionName = str.toLowerCase();
+			}
+			else {
+				options.put(optionName, str);
+				optionName = null;
+			}
+		}
+
+		if (optionName != null && !optionName.isEmpty()) {
+			throw new TFTPPacketParsingError(String.format("missing value for option %s", optionName));
+		}
+	}
+
+	/**
+	 * Getter function for returning the acknowledged options
+	 *
+	 * @return map of option names to option values
+	 */
+	public Map<String, String> getOptions() {
+		return options;
+	}
+
+	/**
+	 * Converts options to the name\0value\0 format used by RRQ, WRQ and OACK packets
+	 *
+	 * @param options map of option names to option values
+	 * @return array of bytes
+	 */
+	public static byte[] optionsToBytes(Map<String, String> options) {
+		ByteArrayOutputStream optionsBytes = new ByteArrayOutputStream();
+
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			byte[] nameBytes = ByteConversions.stringToBytes(option.getKey());
+			byte[] valueBytes = ByteConversions.stringToBytes(option.getValue());
+
+			optionsBytes.write(nameBytes, 0, nameBytes.length);
+			optionsBytes.write(0);
+			optionsBytes.write(valueBytes, 0, valueBytes.length);
+			optionsBytes.write(0);
+		}
+
+		return optionsBytes.toByteArray();
+	}
+
+	/**
+	 * Returns an OACK packet given the attributes
+	 *
+	 * @param options options accepted by the server
+	 * @return OACK packet containing the array of bytes that form the packet and the
+	 * 					  initialized attributes
+	 */
+	public static OACKPacket buildPacket(Map<String, String> options, InetAddress remoteAddress, int remotePort) {
+		OACKPacket oackPacket = new OACKPacket();
+
+		byte[] optionsBytes = optionsToBytes(options);
+
+		// create a properly sized bytes array
+		byte[] packetBytes = new byte[2 + optionsBytes.length];
+
+		// convert opCode to bytes
+		byte[] opCodeBytes = ByteConversions.shortToBytes(OP_CODE);
+
+		packetBytes[0] = opCodeBytes[0];
+		packetBytes[1] = opCodeBytes[1];
+
+		System.arraycopy(optionsBytes, 0, packetBytes, 2, optionsBytes.length);
+
+		// initialize packet attributes
+		oackPacket.opCode = OP_CODE;
+		oackPacket.options = new LinkedHashMap<String, String>(options);
+		oackPacket.packetBytes = packetBytes;
+		oackPacket.packetLength = packetBytes.length;
+		oackPacket.remoteAddress = remoteAddress;
+		oackPacket.remotePort = remotePort;
+
+		return oackPacket;
+	}
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps the byte arrays that datagrams are received into, so that they can be reused
+ * by every TFTPSocket of the process instead of allocating an array for every packet.
+ *
+ * A buffer is taken with acquire and given back with release once nothing reads the packet anymore.
+ * Buffers come in two sizes: small buffers fit a packet of the default block size or of a block
+ * size that fits an Ethernet frame, large buffers fit the largest block size that can be negotiated.
+ *
+ * The pool is split in shards and a thread always uses the same shard, so transfers running on
+ * different threads rarely wait for each other. A buffer that is not released is garbage collected
+ * like any other array. When a shard has no free buffer a new one is allocated (the pool is exhausted),
+ * when a shard is full a released buffer is dropped.
+ *
+ * @author Group 8
+ */
+public class PacketBufferPool {
+	private static final PacketBufferPool instance = new PacketBufferPool(NetworkConfig.PACKET_BUFFER_POOL_SHARDS,
+			NetworkConfig.PACKET_BUFFER_POOL_SHARD_CAPACITY);
+
+	/**
+	 * This class holds the free buffers of one shard
+	 */
+	private class Shard {
+		ArrayDeque<byte[]> smallBuffers = new ArrayDeque<byte[]>();
+		ArrayDeque<byte[]> largeBuffers = new ArrayDeque<byte[]>();
+	}
+
+	private Shard[] shards;
+	private int shardMask;
+	private int shardCapacity;
+
+	private LongAdder acquireCount;
+	private LongAdder releaseCount;
+	private LongAdder exhaustedCount;
+	private LongAdder dropCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param numberOfShards number of shards, rounded up to a power of two
+	 * @param shardCapacity  number of free buffers of each size a shard keeps
+	 */
+	public PacketBufferPool(int numberOfShards, int shardCapacity) {
+		int shardCount = 1;
+		while (shardCount < numberOfShards)
+			shardCount <<= 1;
+
+		shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++)
+			shards[i] = new Shard();
+
+		this.shardMask = shardCount - 1;
+		this.shardCapacity = shardCapacity;
+
+		acquireCount = new LongAdder();
+		releaseCount = new LongAdder();
+		exhaustedCount = new LongAdder();
+		dropCount = new LongAdder();
+	}
+
+	/**
+	 * @return pool shared by every socket of the process
+	 */
+	public static PacketBufferPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Takes a free buffer from the pool or allocates one if the pool has none
+	 *
+	 * @param minLength length of the largest packet the buffer has to hold
+	 * @return buffer of at least minLength bytes
+	 */
+	public byte[] acquire(int minLength) {
+		boolean small = minLength <= NetworkConfig.SMALL_PACKET_BUFFER_LEN;
+		Shard shard = getShard();
+		byte[] buffer;
+
+		synchronized (shard) {
+			buffer = small ? shard.smallBuffers.pollLast() : shard.largeBuffers.pollLast();
+		}
+
+		acquireCount.increment();
+
+		if (buffer == null) {
+			exhaustedCount.increment();
+			buffer = new byte[small ? NetworkConfig.SMALL_PACKET_BUFFER_LEN : NetworkConfig.MAX_DATAGRAM_PACKET_LEN];
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back to the pool, it must not be used by the caller anymore
+	 *
+	 * @param buffer buffer returned by acquire
+	 */
+	public void release(byte[] buffer) {
+		ArrayDeque<byte[]> freeBuffers;
+		Shard shard = getShard();
+
+		if (buffer.length == NetworkConfig.SMALL_PACKET_BUFFER_LEN)
+			freeBuffers = shard.smallBuffers;
+		else if (buffer.length == NetworkConfig.MAX_DATAGRAM_PACKET_LEN)
+			freeBuffers = shard.largeBuffers;
+		else
+			return;
+
+		releaseCount.increment();
+
+		synchronized (shard) {
+			if (freeBuffers.size() < shardCapacity) {
+				freeBuffers.addLast(buffer);
+				return;
+			}
+		}
+
+		dropCount.increment();
+	}
+
+	private Shard getShard() {
+		return shards[(int) Thread.currentThread().getId() & shardMask];
+	}
+
+	/**
+	 * @return number of free buffers held by the pool
+	 */
+	public int getPooledCount() {
+		int pooledCount = 0;
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				pooledCount += shard.smallBuffers.size() + shard.largeBuffers.size();
+			}
+		}
+
+		return pooledCount;
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	public long getAcquireCount() {
+		return acquireCount.sum();
+	}
+
+	public long getReleaseCount() {
+		return releaseCount.sum();
+	}
+
+	/**
+	 * @return number of times a buffer had to be allocated because the shard had no free buffer
+	 */
+	public long getExhaustedCount() {
+		return exhaustedCount.sum();
+	}
+
+	/**
+	 * @return number of released buffers dropped because the shard was full
+	 */
+	public long getDropCount() {
+		return dropCount.sum();
+	}
+}
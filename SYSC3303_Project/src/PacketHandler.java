@@ -1,6 +1,7 @@
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
 
 /**
  * This class handles the packet sending and receiving
@@ -12,7 +13,22 @@ public class PacketHandler {
 	public class PacketHandlerReturn {
 		public ACKPacket ackPacket = null;
 		public DATAPacket dataPacket = null;
+		public OACKPacket oackPacket = null;
 		public boolean timeout = false;
+		// the block before the window was acknowledged, the first block of the window was lost
+		public boolean windowLost = false;
+	}
+	
+	/**
+	 * Receives the DATA packets of a transfer in order
+	 */
+	public interface DATAPacketListener {
+		/**
+		 * @param dataPacket next DATA packet of the transfer
+		 * @param blockIndex index of the block in the file starting at 1, unlike the block number it does not roll over
+		 * @return false if the transfer has to be stopped
+		 */
+		public boolean onDATAPacket(DATAPacket dataPacket, long blockIndex);
 	}
 	
 	private TFTPSocket tftpSocket;
@@ -20,11 +36,69 @@ public class PacketHandler {
 	private InetAddress remoteAddress;
 	private int remotePort;
 	
+	// OACK packet sent to the client, it takes the place of ACK 0 in a WRQ
+	private OACKPacket sentOACKPacket;
+	
+	// the socket timeout is computed from the round trip times of the transfer
+	private RetransmissionTimer retransmissionTimer;
+	
+	// DATA packets are queued in the flow and sent by the egress scheduler, null if they are sent right away
+	private EgressScheduler.Flow egressFlow;
+	
+	// progress of the transfer shown to operators, null if it is not tracked
+	private TransferStatus transferStatus;
+	
+	// true until the first packet from the remote address gives the port of its transfer (see acceptNewRemoteTID)
+	private boolean remoteTIDPending;
+	
 	public PacketHandler(TFTPSocket tftpSocket, ErrorHandler errorHandler, InetAddress remoteAddress, int remotePort) {
 		this.tftpSocket = tftpSocket;
 		this.errorHandler = errorHandler;
 		this.remoteAddress = remoteAddress;
 		this.remotePort = remotePort;
+		this.retransmissionTimer = new RetransmissionTimer();
+	}
+	
+	public RetransmissionTimer getRetransmissionTimer() {
+		return retransmissionTimer;
+	}
+	
+	/**
+	 * Takes the remote port from the first packet received from the remote address instead of
+	 * the port given to the constructor. Used by a client that sends its request straight to the
+	 * server port, the server answers from the port of the new transfer (RFC 1350 section 4)
+	 */
+	public void acceptNewRemoteTID() {
+		remoteTIDPending = true;
+	}
+	
+	/**
+	 * Takes the remote port of the transfer from the first packet received from the remote address
+	 * 
+	 * @param receivePacket packet received
+	 */
+	private void checkNewRemoteTID(TFTPPacket receivePacket) {
+		if (remoteTIDPending && receivePacket.getRemoteAddress().equals(remoteAddress)) {
+			remotePort = receivePacket.getRemotePort();
+			remoteTIDPending = false;
+		}
+	}
+	
+	/**
+	 * @param egressFlow flow of the egress scheduler the DATA packets are sent through, null to send them right away
+	 */
+	public void setEgressFlow(EgressScheduler.Flow egressFlow) {
+		this.egressFlow = egressFlow;
+	}
+	
+	/**
+	 * @param transferStatus progress of the transfer updated as blocks are sent and received, null to not track it
+	 */
+	public void setTransferStatus(TransferStatus transferStatus) {
+		this.transferStatus = transferStatus;
+		
+		if (transferStatus != null)
+			transferStatus.setRetransmissionTimer(retransmissionTimer);
 	}
 	
 	/**
@@ -33,11 +107,41 @@ public class PacketHandler {
 	 * @param dataPacket
 	 */
 	public void sendDATAPacket(DATAPacket dataPacket) {		
-		System.out.println(Globals.getVerboseMessage("PacketHandler", 
-				String.format("sending DATA packet %d to client %s:%d", dataPacket.getBlockNumber(), dataPacket.getRemoteAddress(), dataPacket.getRemotePort())));
+		sendDATAPacket(dataPacket, null);
+	}
+	
+	/**
+	 * Sends DATA packet
+	 * 
+	 * @param dataPacket
+	 * @param sentCallback run once the packet was sent, by the egress scheduler if the packet is queued, may be null
+	 */
+	private void sendDATAPacket(DATAPacket dataPacket, Runnable sentCallback) {
+		if (Log.isVerbose())
+			Log.verbose("PacketHandler", "sending DATA packet %d to client %s:%d", BlockNumbers.toUnsigned(dataPacket.getBlockNumber()), dataPacket.getRemoteAddress(), dataPacket.getRemotePort());
+		
+		// send DATA datagram packet, the egress scheduler shares the bandwidth between the transfers
+		if (egressFlow != null) {
+			egressFlow.send(dataPacket, sentCallback);
+			return;
+		}
 		
-		// send DATA datagram packet
 		tftpSocket.send(dataPacket);
+		if (sentCallback != null)
+			sentCallback.run();
+	}
+	
+	/**
+	 * Sends OACK packet
+	 * 
+	 * @param oackPacket
+	 */
+	public void sendOACKPacket(OACKPacket oackPacket) {
+		Log.verbose("PacketHandler", "sending OACK packet %s to client %s:%d", oackPacket.getOptions(), oackPacket.getRemoteAddress(), oackPacket.getRemotePort());
+		
+		// send OACK datagram packet
+		tftpSocket.send(oackPacket);
+		sentOACKPacket = oackPacket;
 	}
 	
 	/**
@@ -48,8 +152,8 @@ public class PacketHandler {
 	public void sendACKPacket(short blockNumber) {
 		ACKPacket ackPacket = TFTPPacketBuilder.getACKDatagram(blockNumber, remoteAddress, remotePort);
 		
-		System.out.println(Globals.getVerboseMessage("PacketHandler", 
-				String.format("sending ACK packet %d to client %s:%d", blockNumber, remoteAddress, remotePort)));
+		if (Log.isVerbose())
+			Log.verbose("PacketHandler", "sending ACK packet %d to client %s:%d", blockNumber, remoteAddress, remotePort);
 		
 		// sends acknowledgement to client
 		tftpSocket.send(ackPacket);
@@ -61,18 +165,33 @@ public class PacketHandler {
 	 * @param expectedBlockNumber
 	 * @return ACK packet or null if error occurred
 	 */
-	private PacketHandlerReturn recACKPacket(short expectedBlockNumber) {	
+	private PacketHandlerReturn recACKPacket(short expectedBlockNumber) {
+		return recACKPacket(expectedBlockNumber, expectedBlockNumber, false);
+	}
+	
+	/**
+	 * Receives ACK packet for any block of a window and handles error situations
+	 * 
+	 * @param expectedBlockNumber first block number of the window
+	 * @param lastBlockNumber     last block number of the window
+	 * @param detectWindowLost    true if an ACK packet of the block before the window is returned
+	 *                            with windowLost set instead of being ignored as a duplicate
+	 * @return ACK packet or null if error occurred
+	 */
+	private PacketHandlerReturn recACKPacket(short expectedBlockNumber, short lastBlockNumber, boolean detectWindowLost) {	
 		PacketHandlerReturn res = new PacketHandlerReturn();
 		
 		ACKPacket ackPacket = null;
 		
+		tftpSocket.setTimeout(retransmissionTimer.getTimeout());
+		
 		TFTPPacket receivePacket = null;
 		while (receivePacket == null) {
 			try {
 				receivePacket = tftpSocket.receive();
 			} catch (SocketTimeoutException e) {
 				String errorMessage = "Socket timed out. Cannot receive ACK packet";
-				System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));	
+				Log.error("PacketHandler", errorMessage);	
 				res.timeout = true;
 				return res;
 			} catch (IOException e) {
@@ -81,6 +200,8 @@ public class PacketHandler {
 				System.exit(-1);
 			}
 			
+			checkNewRemoteTID(receivePacket);
+			
 			// if the packet was received from another source
 			// then send error packet with error code 5
 			// then keep on listening for a packet from the correct source
@@ -89,10 +210,11 @@ public class PacketHandler {
 				String errorMessage = String.format("Received packet from unknown source. Expected: %s:%d, Received: %s:%d", 
 						remoteAddress, remotePort, receivePacket.getRemoteAddress(), receivePacket.getRemotePort());
 				
-				System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));	
+				Log.error("PacketHandler", errorMessage);	
 				
 				// send error packet to the wrong source
 				errorHandler.sendUnknownTrasnferIDErrorPacket(errorMessage, receivePacket.getRemoteAddress(), receivePacket.getRemotePort());
+				tftpSocket.release(receivePacket);
 				receivePacket = null;
 				continue;
 			}
@@ -105,31 +227,47 @@ public class PacketHandler {
 					
 					// if different block number is received then send error packet with error code 4
 					// reset the received tftp packet to null and listen for new packets again
-					if (ackPacket.getBlockNumber() < expectedBlockNumber) {
-						String errorMessage = String.format("duplicate ACK packet block number received. Expected: %d, Received: %d", expectedBlockNumber, ackPacket.getBlockNumber());
-						System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+					// the receiver acknowledges the last block it received in order when the first block
+					// of the window is lost, the window is sent again without waiting for the timeout (RFC 7440)
+					if (detectWindowLost && ackPacket.getBlockNumber() == (short) (expectedBlockNumber - 1)) {
+						Log.verbose("PacketHandler", "received ACK packet %d before the window from client %s:%d", BlockNumbers.toUnsigned(ackPacket.getBlockNumber()), remoteAddress, remotePort);
+						tftpSocket.release(ackPacket);
+						res.windowLost = true;
+						return res;
+					}
+					
+					if (BlockNumbers.compare(ackPacket.getBlockNumber(), expectedBlockNumber) < 0) {
+						String errorMessage = String.format("duplicate ACK packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(ackPacket.getBlockNumber()));
+						Log.error("PacketHandler", errorMessage);
 						//errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
+						tftpSocket.release(ackPacket);
 						receivePacket = null;
 						continue;
 					}
-					else if (ackPacket.getBlockNumber() > expectedBlockNumber) {
-						String errorMessage = String.format("incorrect ACK packet block number received. Expected: %d, Received: %d", expectedBlockNumber, ackPacket.getBlockNumber());
-						System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+					else if (BlockNumbers.compare(ackPacket.getBlockNumber(), lastBlockNumber) > 0) {
+						String errorMessage = String.format("incorrect ACK packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(ackPacket.getBlockNumber()));
+						Log.error("PacketHandler", errorMessage);
 						errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
 					}
 					
 				} catch(TFTPPacketParsingError e) {
 					// send error packet with error code 4
 					String errorMessage = String.format("cannot parse ACK packet %d", expectedBlockNumber);
-					System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+					Log.error("PacketHandler", errorMessage);
 					errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
 				}
 				
-				System.out.println(Globals.getVerboseMessage("PacketHandler", 
-						String.format("received ACK packet %d from client %s%d", ackPacket.getBlockNumber(), remoteAddress, remotePort)));
+				if (Log.isVerbose())
+					Log.verbose("PacketHandler", "received ACK packet %d from client %s:%d", BlockNumbers.toUnsigned(ackPacket.getBlockNumber()), remoteAddress, remotePort);
 				
+				// only the block number is used, the receive buffer can be reused
+				tftpSocket.release(ackPacket);
 				res.ackPacket = ackPacket;
 			}
+			else if (receivePacket.getPacketType() == TFTPPacketType.OACK && expectedBlockNumber == 0) {
+				// the server answered a WRQ with options
+				res.oackPacket = parseOACKPacket(receivePacket);
+			}
 			else if (receivePacket.getPacketType() == TFTPPacketType.ERROR) {
 				// parse ERROR packet
 				ERRORPacket errorPacket = null;
@@ -139,21 +277,22 @@ public class PacketHandler {
 				} catch (TFTPPacketParsingError e) {
 					// send error packet with error code 4
 					String errorMessage = "cannot parse ERROR packet";
-					System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+					Log.error("PacketHandler", errorMessage);
 					errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
 				}
 				
-				System.out.println(Globals.getVerboseMessage("PacketHandler", 
-						String.format("received ERROR packet from client %s%d, errorCode: %d, errorMessage: %s", remoteAddress, 
-								remotePort, errorPacket.getErrorCode(), errorPacket.getErrorMessage())));
+				Log.verbose("PacketHandler", "received ERROR packet from client %s:%d, errorCode: %d, errorMessage: %s", remoteAddress, remotePort, errorPacket.getErrorCode(), errorPacket.getErrorMessage());
+				MetricsRegistry.getInstance().errorPacketReceived(errorPacket.getErrorCode());
+				tftpSocket.release(errorPacket);
 			}
 			else {
-				System.out.println(receivePacket.getOPCode());
+				Log.verbose("PacketHandler", "received packet with opcode %d from client %s:%d", receivePacket.getOPCode(), remoteAddress, remotePort);
 				
 				// ssend error packet with error code 4
 				String errorMessage = "invalid TFTP packet";
-				System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+				Log.error("PacketHandler", errorMessage);
 				errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
+				tftpSocket.release(receivePacket);
 			}
 		}
 		
@@ -169,16 +308,30 @@ public class PacketHandler {
 	 * @return DATA packet or null if error occurred
 	 */
 	private PacketHandlerReturn recDATAPacket(short expectedBlockNumber) {
+		return recDATAPacket(expectedBlockNumber, false);
+	}
+	
+	/**
+	 * Receives DATA packet and handles error situations
+	 * 
+	 * @param expectedBlockNumber
+	 * @param windowed            true if DATA packets are sent in windows, a DATA packet
+	 *                            with a larger block number then means a packet was lost
+	 * @return DATA packet or null if error occurred
+	 */
+	private PacketHandlerReturn recDATAPacket(short expectedBlockNumber, boolean windowed) {
 		PacketHandlerReturn res = new PacketHandlerReturn();
 		DATAPacket dataPacket = null;
 		
+		tftpSocket.setTimeout(retransmissionTimer.getTimeout());
+		
 		TFTPPacket receivePacket = null;
 		while (receivePacket == null) {
 			try {
 				receivePacket = tftpSocket.receive();
 			} catch (SocketTimeoutException e) {
 				String errorMessage = "Socket timed out. Cannot receive DATA packet";
-				System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));	
+				Log.error("PacketHandler", errorMessage);	
 				res.timeout = true;
 				return res;
 			} catch (IOException e) {
@@ -187,6 +340,8 @@ public class PacketHandler {
 				System.exit(-1);			
 			}
 			
+			checkNewRemoteTID(receivePacket);
+			
 			// if the packet was received from another source
 			// then send error packet with error code 5
 			// then keep on listening for a packet from the correct source
@@ -196,8 +351,9 @@ public class PacketHandler {
 						remoteAddress, remotePort, receivePacket.getRemoteAddress(), receivePacket.getRemotePort());
 				
 				// send error packet to the wrong source
-				System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));	
+				Log.error("PacketHandler", errorMessage);	
 				errorHandler.sendUnknownTrasnferIDErrorPacket(errorMessage, receivePacket.getRemoteAddress(), receivePacket.getRemotePort());
+				tftpSocket.release(receivePacket);
 				receivePacket = null;
 				continue;
 			}
@@ -209,29 +365,38 @@ public class PacketHandler {
 					dataPacket = new DATAPacket(receivePacket);
 				} catch(TFTPPacketParsingError e) {
 					String errorMessage = String.format("cannot parse DATA packet %d", expectedBlockNumber);
-					System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+					Log.error("PacketHandler", errorMessage);
 					errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
 				}
 				
 				// if different block number is received then send error packet with error code 4
-				if (dataPacket.getBlockNumber() < expectedBlockNumber) {
-					String errorMessage = String.format("duplicate DATA packet block number received. Expected: %d, Received: %d", expectedBlockNumber, dataPacket.getBlockNumber());
-					System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+				if (BlockNumbers.compare(dataPacket.getBlockNumber(), expectedBlockNumber) < 0) {
+					String errorMessage = String.format("duplicate DATA packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(dataPacket.getBlockNumber()));
+					Log.error("PacketHandler", errorMessage);
 					//errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
+					tftpSocket.release(dataPacket);
 					receivePacket = null;
 					continue;
 				}
-				else if (dataPacket.getBlockNumber() > expectedBlockNumber) {
-					String errorMessage = String.format("incorrect ACK packet block number received. Expected: %d, Received: %d", expectedBlockNumber, dataPacket.getBlockNumber());
-					System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+				else if (BlockNumbers.compare(dataPacket.getBlockNumber(), expectedBlockNumber) > 0 && windowed) {
+					// the DATA packet is returned so that the last block received in order can be acknowledged again
+					Log.error("PacketHandler", "out of order DATA packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(dataPacket.getBlockNumber()));
+				}
+				else if (BlockNumbers.compare(dataPacket.getBlockNumber(), expectedBlockNumber) > 0) {
+					String errorMessage = String.format("incorrect ACK packet block number received. Expected: %d, Received: %d", BlockNumbers.toUnsigned(expectedBlockNumber), BlockNumbers.toUnsigned(dataPacket.getBlockNumber()));
+					Log.error("PacketHandler", errorMessage);
 					errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
 				}
 				
-				System.out.println(Globals.getVerboseMessage("PacketHandler", 
-						String.format("received DATA packet %d from client %s%d", dataPacket.getBlockNumber(), remoteAddress, remotePort)));
+				if (Log.isVerbose())
+					Log.verbose("PacketHandler", "received DATA packet %d from client %s:%d", BlockNumbers.toUnsigned(dataPacket.getBlockNumber()), remoteAddress, remotePort);
 				
 				res.dataPacket = dataPacket;
 			}
+			else if (receivePacket.getPacketType() == TFTPPacketType.OACK && expectedBlockNumber == 1) {
+				// the server answered a RRQ with options
+				res.oackPacket = parseOACKPacket(receivePacket);
+			}
 			else if (receivePacket.getPacketType() == TFTPPacketType.ERROR) {
 				// parse ERROR packet
 				ERRORPacket errorPacket = null;
@@ -241,27 +406,53 @@ public class PacketHandler {
 				} catch (TFTPPacketParsingError e) {
 					// send error packet with error code 4
 					String errorMessage = "cannot parse ERROR packet";
-					System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+					Log.error("PacketHandler", errorMessage);
 					errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
 				}
 				
-				System.out.println(Globals.getVerboseMessage("PacketHandler", 
-						String.format("received ERROR packet from client %s%d, errorCode: %d, errorMessage: %s", remoteAddress, 
-								remotePort, errorPacket.getErrorCode(), errorPacket.getErrorMessage())));
+				Log.verbose("PacketHandler", "received ERROR packet from client %s:%d, errorCode: %d, errorMessage: %s", remoteAddress, remotePort, errorPacket.getErrorCode(), errorPacket.getErrorMessage());
+				MetricsRegistry.getInstance().errorPacketReceived(errorPacket.getErrorCode());
+				tftpSocket.release(errorPacket);
 			}
 			else {
-				System.out.println(receivePacket.getOPCode());
+				Log.verbose("PacketHandler", "received packet with opcode %d from client %s:%d", receivePacket.getOPCode(), remoteAddress, remotePort);
 				
 				// send error packet with error code 4
 				String errorMessage = "invalid DATA sent";
-				System.err.println(Globals.getErrorMessage("PacketHandler", errorMessage));
+				Log.error("PacketHandler", errorMessage);
 				errorHandler.sendIllegalOperationErrorPacket(errorMessage, remoteAddress, remotePort);
+				tftpSocket.release(receivePacket);
 			}
 		}
 		
 		return res	;
 	}
 	
+	/**
+	 * Parses OACK packet, an ERROR packet with error code 8 is sent if it cannot be parsed
+	 * 
+	 * @param receivePacket
+	 * @return OACK packet or null if it cannot be parsed
+	 */
+	private OACKPacket parseOACKPacket(TFTPPacket receivePacket) {
+		OACKPacket oackPacket = null;
+		
+		try {
+			oackPacket = new OACKPacket(receivePacket);
+			
+			Log.verbose("PacketHandler", "received OACK packet %s from %s:%d", oackPacket.getOptions(), remoteAddress, remotePort);
+			
+			// the options are parsed, the receive buffer can be reused
+			tftpSocket.release(oackPacket);
+		} catch (TFTPPacketParsingError e) {
+			String errorMessage = "cannot parse OACK packet";
+			Log.error("PacketHandler", errorMessage);
+			errorHandler.sendOptionNegotiationErrorPacket(errorMessage, remoteAddress, remotePort);
+		}
+		
+		return oackPacket;
+	}
+	
 	public DATAPacket receiveDATAPacket(short blockNumber) {
 		PacketHandlerReturn phRes = null;
 		
@@ -272,10 +463,12 @@ public class PacketHandler {
     		
     		if (!phRes.timeout)
     			break;
+    		
+    		retransmissionTimer.backOff();
     	}
     	
     	if (numberOfTries == NetworkConfig.MAX_TRIES) {
-    		System.err.println(Globals.getErrorMessage("Client", "max tries reached. Exitting connection"));
+    		Log.error("Client", "max tries reached. Exitting connection");
     	}
     	
     	return phRes.dataPacket;
@@ -291,33 +484,374 @@ public class PacketHandler {
 			
 			if (!phRes.timeout)
 				break;
+			
+			retransmissionTimer.backOff();
 		}
 		
 		if (numberOfTries == NetworkConfig.MAX_TRIES) {
-        	System.err.println(Globals.getErrorMessage("Client", "max tries reached. Exitting connection"));
+        	Log.error("Client", "max tries reached. Exitting connection");
         }
 		
 		return phRes.ackPacket;
 	}
 	
 	public ACKPacket receiveACKPacket(DATAPacket sentDataPacket) {
+		return receiveACKPacket(sentDataPacket, sentDataPacket.getBlockNumber());
+	}
+	
+	/**
+	 * Receives ACK packet, the sent packet is sent again every time the socket times out
+	 * 
+	 * @param sentPacket          packet that is being acknowledged
+	 * @param expectedBlockNumber
+	 * @return ACK packet or null if error occurred
+	 */
+	public ACKPacket receiveACKPacket(TFTPPacket sentPacket, short expectedBlockNumber) {
 		PacketHandlerReturn phRes = null;
 		
+		// the packet was just sent
+		retransmissionTimer.startMeasurement();
+		
 		int numberOfTries = 1;
 		while (numberOfTries < NetworkConfig.MAX_TRIES) {
-			phRes = recACKPacket(sentDataPacket.getBlockNumber());
+			phRes = recACKPacket(expectedBlockNumber);
 			numberOfTries++;
 			
-			if (!phRes.timeout)
+			if (!phRes.timeout) {
+				retransmissionTimer.stopMeasurement();
 				break;
-			else
-				sendDATAPacket(sentDataPacket);
+			}
+			
+			retransmissionTimer.backOff();
+			tftpSocket.send(sentPacket);
 		}
 		
 		if (numberOfTries == NetworkConfig.MAX_TRIES) {
-        	System.err.println(Globals.getErrorMessage("Client", "max tries reached. Exitting connection"));
+        	Log.error("Client", "max tries reached. Exitting connection");
         }
 		
 		return phRes.ackPacket;
 	}
+	
+	/**
+	 * Receives the response to a WRQ, which is either ACK 0 or an OACK packet
+	 * 
+	 * @return ACK packet, OACK packet or null if error occurred
+	 */
+	public TFTPPacket receiveACKOrOACKPacket() {
+		return receiveACKOrOACKPacket(null);
+	}
+	
+	/**
+	 * Receives the response to a WRQ, which is either ACK 0 or an OACK packet
+	 * 
+	 * @param requestPacket WRQ packet sent again when the socket times out, null to only wait
+	 * @return ACK packet, OACK packet or null if error occurred
+	 */
+	public TFTPPacket receiveACKOrOACKPacket(TFTPPacket requestPacket) {
+		PacketHandlerReturn phRes = null;
+		
+		// the request was just sent
+		retransmissionTimer.startMeasurement();
+		
+		int numberOfTries = 1;
+		while (numberOfTries < NetworkConfig.MAX_TRIES) {
+			phRes = recACKPacket((short) 0);
+			numberOfTries++;
+			
+			if (!phRes.timeout) {
+				retransmissionTimer.stopMeasurement();
+				break;
+			}
+			
+			retransmissionTimer.backOff();
+			
+			// the request or its answer was lost, the server ignores a request of a transfer it already started
+			if (requestPacket != null)
+				tftpSocket.send(requestPacket);
+		}
+		
+		if (numberOfTries == NetworkConfig.MAX_TRIES) {
+        	Log.error("Client", "max tries reached. Exitting connection");
+        }
+		
+		if (phRes.oackPacket != null)
+			return phRes.oackPacket;
+		
+		return phRes.ackPacket;
+	}
+	
+	/**
+	 * Receives the response to a RRQ, which is either DATA 1 or an OACK packet
+	 * 
+	 * @return DATA packet, OACK packet or null if error occurred
+	 */
+	public TFTPPacket receiveDATAOrOACKPacket() {
+		return receiveDATAOrOACKPacket(null);
+	}
+	
+	/**
+	 * Receives the response to a RRQ, which is either DATA 1 or an OACK packet
+	 * 
+	 * @param requestPacket RRQ packet sent again when the socket times out, null to only wait
+	 * @return DATA packet, OACK packet or null if error occurred
+	 */
+	public TFTPPacket receiveDATAOrOACKPacket(TFTPPacket requestPacket) {
+		PacketHandlerReturn phRes = null;
+		
+		// the request was just sent
+		retransmissionTimer.startMeasurement();
+		
+		int numberOfTries = 1; 
+    	while (numberOfTries < NetworkConfig.MAX_TRIES) {
+    		phRes = recDATAPacket((short) 1);
+    		numberOfTries++;
+    		
+    		if (!phRes.timeout) {
+    			retransmissionTimer.stopMeasurement();
+    			break;
+    		}
+    		
+    		retransmissionTimer.backOff();
+    		
+    		// the request or its answer was lost, the server ignores a request of a transfer it already started
+    		if (requestPacket != null)
+    			tftpSocket.send(requestPacket);
+    	}
+    	
+    	if (numberOfTries == NetworkConfig.MAX_TRIES) {
+    		Log.error("Client", "max tries reached. Exitting connection");
+    	}
+    	
+    	if (phRes.oackPacket != null)
+			return phRes.oackPacket;
+    	
+    	return phRes.dataPacket;
+	}
+	
+	/**
+	 * Sends DATA packets windowSize at a time (RFC 7440) and waits for the ACK packets
+	 * 
+	 * The receiver acknowledges the last block of each window. If an ACK packet acknowledges
+	 * a block in the middle of the window the next window starts after that block.
+	 * If the socket times out the window is sent again starting from the first block that
+	 * was not acknowledged. An ACK packet of the block before the window means its first block
+	 * was lost, the window is then sent again right away, once per window. A window size of 1
+	 * is the lock-step transfer of RFC 1350, where a duplicate ACK packet is ignored so that
+	 * DATA packets are not doubled (Sorcerer's Apprentice Syndrome)
+	 * 
+	 * Blocks are read from the block source only when they enter the window, so at most
+	 * windowSize DATA packets are held in memory
+	 * 
+	 * @param blockSource file data of the transfer
+	 * @param windowSize  number of DATA packets sent before waiting for an ACK packet
+	 * @return true if every DATA packet was acknowledged
+	 */
+	public boolean sendDATAPackets(BlockSource blockSource, int windowSize) {
+		ArrayDeque<DATAPacket> window = new ArrayDeque<DATAPacket>(windowSize);
+		// blocks are counted with indexes that do not roll over like the block numbers
+		long nextBlockIndex = 1;
+		// last block sent at least once, a window starting after it is sent for the first time
+		long lastBlockSent = 0;
+		int numberOfTries = 1;
+		// the current window was sent again because the block before it was acknowledged
+		boolean windowResent = false;
+		
+		while (true) {
+			// read the blocks that moved into the window
+			while (window.size() < windowSize && nextBlockIndex <= blockSource.getNumberOfBlocks()) {
+				byte[] blockBytes;
+				try {
+					blockBytes = blockSource.readBlock(nextBlockIndex);
+				} catch (IOException | InternalError e) {
+					// InternalError: a memory-mapped file was truncated on disk
+					System.err.println(Globals.getErrorMessage("PacketHandler", "cannot read file"));
+					e.printStackTrace();
+					errorHandler.sendNotDefinedErrorPacket("cannot read file", remoteAddress, remotePort);
+					return false;
+				}
+				
+				window.add(TFTPPacketBuilder.getDATADatagram(BlockNumbers.fromBlockIndex(nextBlockIndex), blockBytes, remoteAddress, remotePort));
+				nextBlockIndex++;
+			}
+			
+			if (window.isEmpty())
+				return true;
+			
+			// send each DATA packet of the window in order
+			short firstBlockNumber = window.peek().getBlockNumber();
+			short lastBlockNumber = firstBlockNumber;
+			
+			// copies of blocks still queued in the egress scheduler are acknowledged or sent again in this
+			// window, they would only take the bandwidth of the transfer when it is scarce
+			if (egressFlow != null)
+				egressFlow.discard();
+			
+			// only the ACK of a window sent for the first time gives a round trip time (Karn's algorithm),
+			// the measurement starts when its last packet leaves, after any wait in the egress scheduler
+			retransmissionTimer.cancelMeasurement();
+			DATAPacket lastDataPacket = nextBlockIndex - window.size() > lastBlockSent ? window.peekLast() : null;
+			
+			long windowBlockIndex = nextBlockIndex - window.size();
+			for (DATAPacket dataPacket : window) {
+				sendDATAPacket(dataPacket, dataPacket == lastDataPacket ? retransmissionTimer::startMeasurement : null);
+				lastBlockNumber = dataPacket.getBlockNumber();
+				
+				MetricsRegistry.getInstance().dataBlockSent(dataPacket.getPacketLength() - DATAPacket.HEADER_LENGTH, windowBlockIndex <= lastBlockSent);
+				if (transferStatus != null)
+					transferStatus.blockSent(windowBlockIndex, dataPacket.getPacketLength() - DATAPacket.HEADER_LENGTH, windowBlockIndex <= lastBlockSent);
+				windowBlockIndex++;
+			}
+			lastBlockSent = nextBlockIndex - 1;
+			
+			PacketHandlerReturn phRes = recACKPacket(firstBlockNumber, lastBlockNumber, windowSize > 1 && !windowResent);
+			
+			if (phRes.windowLost) {
+				windowResent = true;
+				continue;
+			}
+			
+			if (phRes.timeout) {
+				retransmissionTimer.backOff();
+				numberOfTries++;
+				
+				if (numberOfTries == NetworkConfig.MAX_TRIES) {
+					Log.error("PacketHandler", "max tries reached. Exitting connection");
+					return false;
+				}
+				
+				continue;
+			}
+			
+			if (phRes.ackPacket == null) {
+				return false;
+			}
+			
+			retransmissionTimer.stopMeasurement();
+			numberOfTries = 1;
+			windowResent = false;
+			
+			// remove every DATA packet up to the acknowledged one
+			while (!window.isEmpty() && BlockNumbers.compare(window.peek().getBlockNumber(), phRes.ackPacket.getBlockNumber()) <= 0) {
+				window.poll();
+			}
+		}
+	}
+	
+	/**
+	 * Receives the DATA packets of a transfer and acknowledges the last block of each window (RFC 7440)
+	 * 
+	 * If a block is missing the last block received in order is acknowledged so that the sender
+	 * starts the next window from there. If the socket times out the last block received in order
+	 * is acknowledged again in case the ACK packet was lost.
+	 * 
+	 * @param firstDataPacket  DATA packet 1 if it was already received, otherwise null
+	 * @param maxPacketLength  length of a full DATA packet, a shorter packet ends the transfer
+	 * @param windowSize       number of DATA packets sent before waiting for an ACK packet
+	 * @param listener         receives each DATA packet in order, the packet is released
+	 *                         (see TFTPSocket.release) once the listener returns
+	 * @return true if the last DATA packet was received
+	 */
+	public boolean receiveDATAPackets(DATAPacket firstDataPacket, int maxPacketLength, int windowSize, DATAPacketListener listener) {
+		// index of the last block received in order, the block number rolls over but the index does not
+		long lastBlockIndex = 0;
+		short lastBlockNumber = 0;
+		int blocksInWindow = 0;
+		boolean gapAcknowledged = false;
+		int numberOfTries = 1;
+		
+		DATAPacket dataPacket = firstDataPacket;
+		while (true) {
+			if (dataPacket == null) {
+				Log.verbose("PacketHandler", "waiting for DATA packet from %s:%d", remoteAddress, remotePort);
+				
+				PacketHandlerReturn phRes = recDATAPacket(BlockNumbers.next(lastBlockNumber), windowSize > 1);
+				
+				if (phRes.timeout) {
+					retransmissionTimer.backOff();
+					numberOfTries++;
+					
+					if (numberOfTries == NetworkConfig.MAX_TRIES) {
+						Log.error("PacketHandler", "max tries reached. Exitting connection");
+						return false;
+					}
+					
+					// the last ACK packet might have been lost
+					if (lastBlockIndex == 0 && sentOACKPacket != null)
+						sendOACKPacket(sentOACKPacket);
+					else
+						sendACKPacket(lastBlockNumber);
+					
+					if (transferStatus != null)
+						transferStatus.acknowledgementResent();
+					blocksInWindow = 0;
+					continue;
+				}
+				
+				dataPacket = phRes.dataPacket;
+				
+				if (dataPacket == null) {
+					return false;
+				}
+			}
+			
+			numberOfTries = 1;
+			
+			if (dataPacket.getBlockNumber() != BlockNumbers.next(lastBlockNumber)) {
+				tftpSocket.release(dataPacket);
+				
+				if (windowSize == 1) {
+					return false;
+				}
+				
+				// a block of the window was lost, the sender restarts after the last block received in order
+				if (!gapAcknowledged) {
+					sendACKPacket(lastBlockNumber);
+					gapAcknowledged = true;
+				}
+				
+				// the next block in order is an answer to a retransmission
+				retransmissionTimer.cancelMeasurement();
+				
+				blocksInWindow = 0;
+				dataPacket = null;
+				continue;
+			}
+			
+			retransmissionTimer.stopMeasurement();
+			
+			MetricsRegistry.getInstance().dataBlockReceived(dataPacket.getPacketLength() - DATAPacket.HEADER_LENGTH);
+			if (transferStatus != null)
+				transferStatus.blockReceived(lastBlockIndex + 1, dataPacket.getPacketLength() - DATAPacket.HEADER_LENGTH);
+			
+			boolean written = listener.onDATAPacket(dataPacket, lastBlockIndex + 1);
+			
+			// the listener is done with the data, the receive buffer can be reused
+			tftpSocket.release(dataPacket);
+			
+			if (!written) {
+				return false;
+			}
+			
+			lastBlockIndex++;
+			lastBlockNumber = dataPacket.getBlockNumber();
+			blocksInWindow++;
+			gapAcknowledged = false;
+			
+			// once the data length is less than the block size the transfer is finished
+			boolean lastDataPacket = dataPacket.getPacketLength() < maxPacketLength;
+			
+			if (lastDataPacket || blocksInWindow == windowSize) {
+				retransmissionTimer.startMeasurement();
+				sendACKPacket(lastBlockNumber);
+				blocksInWindow = 0;
+			}
+			
+			if (lastDataPacket) {
+				return true;
+			}
+			
+			dataPacket = null;
+		}
+	}
 }
@@ -1,10 +1,12 @@
+import java.io.IOException;
 import java.net.InetAddress;
-import java.util.Queue;
 
 /**
  * This class is used to communicate further with a client that made a WQR request
+ * 
+ * The server decides what kind of thread it runs on (see ServerMode)
  */
-public class RRQServerThread extends Thread {
+public class RRQServerThread implements Runnable {
 	private TFTPSocket tftpSocket;
 	private TFTPPacket requestPacket;
 	
@@ -15,7 +17,22 @@ public class RRQServerThread extends Thread {
 	private InetAddress remoteAddress;
 	private int remotePort;
 	
-	private Queue<DATAPacket> dataPacketStack;
+	private BlockSource blockSource;
+	// null if the egress scheduler is disabled
+	private EgressScheduler.Flow egressFlow;
+	// progress of the transfer shown to operators, null if it is not tracked
+	private TransferStatus transferStatus;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param requestPacket  request datagram packet received from client
+	 * @param transferStatus progress of the transfer shown to operators, may be null
+	 */
+	public RRQServerThread(TFTPPacket requestPacket, TransferStatus transferStatus) {
+		this(requestPacket);
+		this.transferStatus = transferStatus;
+	}
 	
 	/**
 	 * Constructor
@@ -48,6 +65,7 @@ public class RRQServerThread extends Thread {
 	 * Handles sending DATA datagram packets to client
 	 */
 	private void handleRRQConnection() {
+		long startTime = System.nanoTime();
 		RRQWRQPacket rrqPacket = null;
 		
 		// parse read request packet
@@ -60,24 +78,21 @@ public class RRQServerThread extends Thread {
 			 * 
 			 * The current read request thread will be terminated
 			 */
-			System.err.println(Globals.getErrorMessage("RRQServerThread", "cannot parse RRQ TFTP packet"));
+			Log.error("RRQServerThread", "cannot parse RRQ TFTP packet");
 			errorHandler.sendIllegalOperationErrorPacket("invalid RRQ TFTP packet", remoteAddress, remotePort);
 			return;
 		}
 		
 		packetHandler = new PacketHandler(tftpSocket, errorHandler, remoteAddress, remotePort);
+		packetHandler.setTransferStatus(transferStatus);
 		
 		// get the file name requested by the client
 		String fileName = rrqPacket.getFileName();
 		
-		// read the whole file requested by the client
-		FileManager.FileManagerResult res = fileManager.readFile(fileName);
-		byte[] fileData = null;
+		// open the file requested by the client, its data is read one window at a time
+		FileManager.FileManagerResult res = fileManager.openFile(fileName);
 		
-		if (!res.error) {
-			fileData = res.fileBytes;
-		}
-		else {
+		if (res.error) {
 			// access violation error will send an error packet with error code 2 and the connection
 			if (res.accessViolation) 
 				errorHandler.sendAccessViolationErrorPacket(String.format("read access denied to file: %s", fileName), remoteAddress, remotePort);
@@ -88,35 +103,61 @@ public class RRQServerThread extends Thread {
 			return;
 		}
 		
-		// create list of DATA datagram packets that contain up to 512 bytes of file data
-		dataPacketStack = TFTPPacketBuilder.getStackOfDATADatagramPackets(fileData, remoteAddress, remotePort);
+		TransferOptions transferOptions = TransferOptions.negotiate(rrqPacket);
 		
-		DATAPacket dataPacket = null;
-		ACKPacket ackPacket = null;
-		while (!dataPacketStack.isEmpty()) {
-			// send each datagram packet in order and wait for acknowledgement packet from the client
-			
-			dataPacket = dataPacketStack.peek();
+		// files that are read often are served from memory
+		try {
+			blockSource = FileContentCache.getInstance().getBlockSource(fileName, res.fileChannel, transferOptions.getBlockSize(), false);
+		} catch (IOException e) {
+			Log.error("RRQServerThread", "cannot read file");
+			errorHandler.sendNotDefinedErrorPacket(String.format("cannot read file: %s", fileName), remoteAddress, remotePort);
+			fileManager.closeFile(res.fileChannel);
+			return;
+		}
+		
+		// the client can check that it has room for the file with the size sent in the tsize option
+		transferOptions.setTransferSize(blockSource.getFileSize());
 		
-			packetHandler.sendDATAPacket(dataPacket);
-		 
-			ackPacket = packetHandler.receiveACKPacket(dataPacket); 
+		if (transferOptions.getTimeout() > 0)
+			packetHandler.getRetransmissionTimer().setNegotiatedTimeout(transferOptions.getTimeout());
+		
+		// acknowledge the options the server accepted, the client answers with ACK 0
+		if (transferOptions.hasAcceptedOptions()) {
+			OACKPacket oackPacket = TFTPPacketBuilder.getOACKDatagram(transferOptions.getAcceptedOptions(), remoteAddress, remotePort);
+			packetHandler.sendOACKPacket(oackPacket);
 			
-			if (ackPacket == null) {
-				break;
+			if (packetHandler.receiveACKPacket(oackPacket, (short) 0) == null) {
+				return;
 			}
-			
-			dataPacketStack.poll();
 		}
 		
-		System.out.println(Globals.getVerboseMessage("RRQServerThread", "connection finished"));
+		// the DATA packets get a fair share of the upload bandwidth of the server,
+		// operators can change the weight of the transfer over JMX (see TransferSessionsMXBean)
+		int egressWeight = transferStatus != null ? transferStatus.getEgressWeight() : NetworkConfig.EGRESS_DEFAULT_WEIGHT;
+		egressFlow = EgressScheduler.getInstance().newFlow(tftpSocket, egressWeight);
+		if (egressFlow != null && transferStatus != null)
+			transferStatus.setEgressFlow(egressFlow);
+		packetHandler.setEgressFlow(egressFlow);
+		
+		// send the DATA packets in windows and wait for acknowledgement packets from the client
+		if (packetHandler.sendDATAPackets(blockSource, transferOptions.getWindowSize()))
+			MetricsRegistry.getInstance().transferCompleted(TFTPPacketType.RRQ, startTime, blockSource.getFileSize());
+		
+		Log.verbose("RRQServerThread", "connection finished");
 	}
 	
 	/**
-	 * Closes datagram socket once the connection is finished
+	 * Closes datagram socket and the file once the connection is finished
 	 */
 	private void cleanUp() {
-		System.out.println(Globals.getVerboseMessage("RRQServerThread", "socket closed"));
+		if (blockSource != null)
+			blockSource.close();
+		
+		// packets still queued must not be sent once the socket is closed
+		if (egressFlow != null)
+			egressFlow.close();
+		
+		Log.verbose("RRQServerThread", "socket closed");
 		tftpSocket.close();
 	}
 }
@@ -1,5 +1,8 @@
 import java.net.InetAddress;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class represents the RRQWRQ TFTP packet
@@ -11,6 +14,8 @@ public class RRQWRQPacket extends TFTPPacket {
 	
 	private String fileName;
 	private String mode;
+	// options requested after the mode (RFC 2347), option names are in lower case
+	private Map<String, String> options;
 	
 	/**
 	 * Constructor used in the static buildPacket method
@@ -29,6 +34,7 @@ public class RRQWRQPacket extends TFTPPacket {
 		super(tftpPackett);
 		parseFileName();
 		parseMode();
+		parseOptions();
 	}
 	
 	/**
@@ -38,7 +44,7 @@ public class RRQWRQPacket extends TFTPPacket {
 	 */
 	private void parseFileName() throws TFTPPacketParsingError {
 		int fileNameBytesLength =  0;
-		for(int i = 2; i < super.packetBytes.length; i++) {
+		for(int i = 2; i < super.packetLength; i++) {
 			if (super.packetBytes[i] == 0) {
 				break;
 			}
@@ -62,7 +68,7 @@ public class RRQWRQPacket extends TFTPPacket {
 	 */
 	private void parseMode() throws TFTPPacketParsingError {
 		int fileNameBytesLength =  0;
-		for(int i = 2; i < super.packetBytes.length; i++) {
+		for(int i = 2; i < super.packetLength; i++) {
 			if (super.packetBytes[i] == 0)
 				break;
 			
@@ -70,7 +76,7 @@ public class RRQWRQPacket extends TFTPPacket {
 		}
 		
 		int modeBytesLength = 0;
-		for(int i = 3 + fileNameBytesLength; i < super.packetBytes.length; i++) {
+		for(int i = 3 + fileNameBytesLength; i < super.packetLength; i++) {
 			if (super.packetBytes[i] == 0) {
 				break;
 			}
@@ -88,6 +94,46 @@ public class RRQWRQPacket extends TFTPPacket {
 		mode =  ByteConversions.bytesToString(modeBytes);
 	}
 	
+	/**
+	 * Reads the option name and value pairs that follow the mode
+	 * 
+	 * @throws TFTPPacketParsingError
+	 */
+	private void parseOptions() throws TFTPPacketParsingError {
+		options = new LinkedHashMap<String, String>();
+		
+		// skip the file name and the mode
+		int i = 2;
+		while (i < super.packetLength && super.packetBytes[i] != 0)
+			i++;
+		i++;
+		while (i < super.packetLength && super.packetBytes[i] != 0)
+			i++;
+		i++;
+		
+		String optionName = null;
+		while (i < super.packetLength) {
+			int stringLength = 0;
+			while (i + stringLength < super.packetLength && super.packetBytes[i + stringLength] != 0)
+				stringLength++;
+			
+			String str = ByteConversions.bytesToString(Arrays.copyOfRange(super.packetBytes, i, i + stringLength));
+			i += stringLength + 1;
+			
+			if (optionName == null) {
+				optionName = str.toLowerCase();
+			}
+			else {
+				options.put(optionName, str);
+				optionName = null;
+			}
+		}
+		
+		if (optionName != null && !optionName.isEmpty()) {
+			throw new TFTPPacketParsingError(String.format("missing value for option %s", optionName));
+		}
+	}
+	
 	/**
 	 * Getter function for returning file name
 	 * 
@@ -106,6 +152,15 @@ public class RRQWRQPacket extends TFTPPacket {
 		return mode;
 	}
 	
+	/**
+	 * Getter function for returning the requested options
+	 * 
+	 * @return map of option names to option values
+	 */
+	public Map<String, String> getOptions() {
+		return options;
+	}
+	
 	/**
 	 * Returns an RRQ/WRQ packet given the attributes
 	 * 
@@ -117,12 +172,29 @@ public class RRQWRQPacket extends TFTPPacket {
 	 * 		   initialized attributes
 	 */
 	public static RRQWRQPacket buildPacket(TFTPPacketType type, String fileName, String mode, InetAddress remoteAddress, int remotePort) {
+		Map<String, String> noOptions = Collections.emptyMap();
+		return buildPacket(type, fileName, mode, noOptions, remoteAddress, remotePort);
+	}
+	
+	/**
+	 * Returns an RRQ/WRQ packet with options given the attributes
+	 * 
+	 * @param type     packet type - RRQ or WWRQ
+	 * @param fileName name of the file that is being requested
+	 * @param mode     mode that is being requested
+	 * @param options  options that are being requested
+	 * 
+	 * @return RRQ/WRQ packet containing the array of bytes that form the packet and the
+	 * 		   initialized attributes
+	 */
+	public static RRQWRQPacket buildPacket(TFTPPacketType type, String fileName, String mode, Map<String, String> options, InetAddress remoteAddress, int remotePort) {
 		RRQWRQPacket requestPacket = new RRQWRQPacket();
 		
 		byte[] fileNameBytes = ByteConversions.stringToBytes(fileName);
 		byte[] modeBytes = ByteConversions.stringToBytes(mode);
+		byte[] optionsBytes = OACKPacket.optionsToBytes(options);
 		
-		byte[] packetBytes = new byte[4 + fileNameBytes.length + modeBytes.length];
+		byte[] packetBytes = new byte[4 + fileNameBytes.length + modeBytes.length + optionsBytes.length];
 		
 		// assign opCode depending on package type
 		// opCode is 1 if RRQ
@@ -160,10 +232,15 @@ public class RRQWRQPacket extends TFTPPacket {
 		packetBytes[c] = 0;
 		c++;
 		
+		// append options bytes to data bytes
+		System.arraycopy(optionsBytes, 0, packetBytes, c, optionsBytes.length);
+		
 		requestPacket.opCode = opCode;
 		requestPacket.fileName = fileName;
 		requestPacket.mode = mode;
+		requestPacket.options = new LinkedHashMap<String, String>(options);
 		requestPacket.packetBytes = packetBytes;
+		requestPacket.packetLength = packetBytes.length;
 		requestPacket.remoteAddress = remoteAddress;
 		requestPacket.remotePort = remotePort;
 		
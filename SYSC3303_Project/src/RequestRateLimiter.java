@@ -0,0 +1,208 @@
+import java.net.InetAddress;
+
+/**
+ * This class limits the rate at which each client address can send requests to the server.
+ *
+ * Every source address gets a token bucket that holds up to NetworkConfig.RATE_LIMIT_BURST tokens
+ * and is refilled with NetworkConfig.RATE_LIMIT_REQUESTS_PER_SECOND tokens per second. A request
+ * takes a token, a request that finds the bucket empty is refused. A client that sends the same
+ * request in a loop can then no longer keep the server busy for everyone else.
+ *
+ * The buckets are kept in a fixed table so the memory used does not grow with the number of
+ * clients. The table is divided in sets of RATE_LIMIT_TABLE_WAYS buckets, an address always uses
+ * the same set and a new address takes the place of the bucket of the set that was used the least
+ * recently. The table is made of arrays of primitives allocated once, checking a request allocates
+ * nothing. The limiter is only used by the listening thread of the server and is not thread safe.
+ *
+ * @author Group 8
+ */
+public class RequestRateLimiter {
+	private static final int RATE_LIMIT_TABLE_WAYS = 4;
+
+	private int setMask;
+
+	private InetAddress[] addresses;
+	private double[] tokens;
+	// time in nanoseconds the bucket was last refilled, which is also the last time it was used
+	private long[] lastRefillTimes;
+	// time in nanoseconds an ERROR packet was last sent to the address, 0 if none was sent
+	private long[] lastErrorTimes;
+
+	// changed at runtime by operators (see ServerTuning), read by the listening thread
+	private volatile double requestsPerNano;
+	private volatile double burst;
+	private long errorInterval;
+
+	private int trackedAddressCount;
+	private long allowedCount;
+	private long limitedCount;
+	private long evictedCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param numberOfBuckets    number of addresses tracked at once, rounded up to a power of two
+	 * @param requestsPerSecond  rate at which the bucket of an address is refilled
+	 * @param burst              largest number of requests an address can send at once
+	 * @param errorInterval      shortest time in milliseconds between two ERROR packets sent to an address
+	 */
+	public RequestRateLimiter(int numberOfBuckets, double requestsPerSecond, int burst, long errorInterval) {
+		int setCount = 1;
+		while (setCount * RATE_LIMIT_TABLE_WAYS < numberOfBuckets)
+			setCount <<= 1;
+
+		setMask = setCount - 1;
+
+		int bucketCount = setCount * RATE_LIMIT_TABLE_WAYS;
+		addresses = new InetAddress[bucketCount];
+		tokens = new double[bucketCount];
+		lastRefillTimes = new long[bucketCount];
+		lastErrorTimes = new long[bucketCount];
+
+		this.requestsPerNano = requestsPerSecond / 1000000000.0;
+		this.burst = burst;
+		this.errorInterval = errorInterval * 1000000;
+	}
+
+	/**
+	 * Takes a token from the bucket of an address
+	 *
+	 * @param remoteAddress address the request came from
+	 * @param now           current time in nanoseconds (System.nanoTime)
+	 * @return true if the request can be handled, false if the address sent too many requests
+	 */
+	public boolean tryAcquire(InetAddress remoteAddress, long now) {
+		int bucket = findBucket(remoteAddress, now);
+
+		double availableTokens = Math.min(burst, tokens[bucket] + (now - lastRefillTimes[bucket]) * requestsPerNano);
+		lastRefillTimes[bucket] = now;
+
+		if (availableTokens < 1) {
+			tokens[bucket] = availableTokens;
+			limitedCount++;
+			return false;
+		}
+
+		tokens[bucket] = availableTokens - 1;
+		allowedCount++;
+		return true;
+	}
+
+	/**
+	 * Tells whether an address that was refused should be sent an ERROR packet, at most one
+	 * ERROR packet is sent per interval so that the server cannot be used to flood another host
+	 *
+	 * @param remoteAddress address that was refused by tryAcquire
+	 * @param now           current time in nanoseconds (System.nanoTime)
+	 * @return true if an ERROR packet should be sent
+	 */
+	public boolean shouldSendError(InetAddress remoteAddress, long now) {
+		int bucket = findBucket(remoteAddress, now);
+
+		if (lastErrorTimes[bucket] != 0 && now - lastErrorTimes[bucket] < errorInterval)
+			return false;
+
+		// 0 means no ERROR packet was sent
+		lastErrorTimes[bucket] = now == 0 ? 1 : now;
+		return true;
+	}
+
+	/**
+	 * Returns the bucket of an address, taking the least recently used bucket of its set
+	 * if the address is not tracked
+	 */
+	private int findBucket(InetAddress remoteAddress, long now) {
+		int hash = remoteAddress.hashCode();
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+
+		int first = (hash & setMask) * RATE_LIMIT_TABLE_WAYS;
+		int victim = first;
+
+		for (int bucket = first; bucket < first + RATE_LIMIT_TABLE_WAYS; bucket++) {
+			if (addresses[bucket] == null) {
+				victim = bucket;
+				break;
+			}
+
+			if (addresses[bucket].equals(remoteAddress))
+				return bucket;
+
+			if (lastRefillTimes[bucket] - lastRefillTimes[victim] < 0)
+				victim = bucket;
+		}
+
+		if (addresses[victim] == null)
+			trackedAddressCount++;
+		else
+			evictedCount++;
+
+		// a new address starts with a full bucket
+		addresses[victim] = remoteAddress;
+		tokens[victim] = burst;
+		lastRefillTimes[victim] = now;
+		lastErrorTimes[victim] = 0;
+
+		return victim;
+	}
+
+	/**
+	 * @return rate at which the bucket of an address is refilled
+	 */
+	public double getRequestsPerSecond() {
+		return requestsPerNano * 1000000000.0;
+	}
+
+	/**
+	 * Changes the rate of every address, the tokens already in the buckets are kept
+	 *
+	 * @param requestsPerSecond rate at which the bucket of an address is refilled, above 0
+	 */
+	public void setRequestsPerSecond(double requestsPerSecond) {
+		if (requestsPerSecond > 0)
+			requestsPerNano = requestsPerSecond / 1000000000.0;
+	}
+
+	/**
+	 * @return largest number of requests an address can send at once
+	 */
+	public int getBurst() {
+		return (int) burst;
+	}
+
+	/**
+	 * @param burst largest number of requests an address can send at once, at least 1
+	 */
+	public void setBurst(int burst) {
+		this.burst = Math.max(1, burst);
+	}
+
+	/**
+	 * @return number of addresses that have a bucket
+	 */
+	public int getTrackedAddressCount() {
+		return trackedAddressCount;
+	}
+
+	/**
+	 * @return number of requests let through
+	 */
+	public long getAllowedCount() {
+		return allowedCount;
+	}
+
+	/**
+	 * @return number of requests refused because their address sent too many requests
+	 */
+	public long getLimitedCount() {
+		return limitedCount;
+	}
+
+	/**
+	 * @return number of buckets given to another address because the table was full
+	 */
+	public long getEvictedCount() {
+		return evictedCount;
+	}
+}
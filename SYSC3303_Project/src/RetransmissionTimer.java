@@ -0,0 +1,156 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class computes the retransmission timeout of a transfer from the round trip times measured
+ * during the transfer (Jacobson's algorithm as specified by RFC 6298).
+ *
+ * The timer keeps a smoothed round trip time and its variance, the timeout is the smoothed round
+ * trip time plus four times the variance. A round trip time is only measured for packets that were
+ * sent once (Karn's algorithm), an answer to a retransmitted packet could be the answer to any of
+ * the copies that were sent. Every time the timeout expires it is doubled until a new round trip
+ * time is measured. A random part of up to NetworkConfig.RETRANSMIT_TIMEOUT_JITTER of the timeout
+ * is added so that transfers that lost packets at the same moment do not retransmit together.
+ *
+ * The timeout is kept between NetworkConfig.MIN_RETRANSMIT_TIMEOUT and the longest retransmission
+ * timeout of ServerSettings (NetworkConfig.TIMEOUT_TIME unless it was changed), it starts at the
+ * initial retransmission timeout of ServerSettings until the first round trip time is measured.
+ * A timeout negotiated with the timeout option (RFC 2349) replaces the initial timeout and raises
+ * the ceiling when it is longer, see setNegotiatedTimeout().
+ *
+ * @author Group 8
+ */
+public class RetransmissionTimer {
+	// times are in microseconds
+	private long smoothedRTT;
+	private long rttVariance;
+	private long retransmitTimeout;
+	private long maxRetransmitTimeout;
+	private boolean measured;
+
+	// number of times the timeout expired since the last round trip time was measured
+	private int backoff;
+
+	// RTT measurement of the packet that is waiting for an answer, 0 if none is running,
+	// started by the egress scheduler thread when the packet is queued there
+	private volatile long sendTime;
+
+	public RetransmissionTimer() {
+		retransmitTimeout = ServerSettings.getInitialRetransmitTimeout() * 1000L;
+		maxRetransmitTimeout = ServerSettings.getMaxRetransmitTimeout() * 1000L;
+	}
+
+	/**
+	 * Uses the timeout requested by the client with the timeout option until a round trip time
+	 * is measured. The peer waits that long before it retransmits, so the ceiling is raised to it
+	 *
+	 * @param timeout negotiated timeout in seconds
+	 */
+	public void setNegotiatedTimeout(int timeout) {
+		long negotiatedTimeout = timeout * 1000000L;
+
+		maxRetransmitTimeout = Math.max(ServerSettings.getMaxRetransmitTimeout() * 1000L, negotiatedTimeout);
+
+		if (!measured)
+			retransmitTimeout = negotiatedTimeout;
+	}
+
+	/**
+	 * Starts measuring the round trip time of a packet that is sent for the first time
+	 */
+	public void startMeasurement() {
+		sendTime = System.nanoTime();
+	}
+
+	/**
+	 * Cancels the measurement, called when the packet is sent again (Karn's algorithm)
+	 */
+	public void cancelMeasurement() {
+		sendTime = 0;
+	}
+
+	/**
+	 * Ends the measurement when the answer to the packet is received and updates the timeout
+	 * with the round trip time. Does nothing if the packet was retransmitted
+	 */
+	public void stopMeasurement() {
+		if (sendTime == 0)
+			return;
+
+		addSample((System.nanoTime() - sendTime) / 1000);
+		sendTime = 0;
+	}
+
+	/**
+	 * Updates the smoothed round trip time, its variance and the timeout (RFC 6298 section 2)
+	 *
+	 * @param rtt round trip time in microseconds
+	 */
+	public void addSample(long rtt) {
+		if (!measured) {
+			smoothedRTT = rtt;
+			rttVariance = rtt / 2;
+			measured = true;
+		}
+		else {
+			// RTTVAR <- 3/4 RTTVAR + 1/4 |SRTT - R|, SRTT <- 7/8 SRTT + 1/8 R
+			rttVariance = rttVariance - rttVariance / 4 + Math.abs(smoothedRTT - rtt) / 4;
+			smoothedRTT = smoothedRTT - smoothedRTT / 8 + rtt / 8;
+		}
+
+		retransmitTimeout = clamp(smoothedRTT + 4 * rttVariance);
+		backoff = 0;
+	}
+
+	/**
+	 * Doubles the timeout after it expired, the timeout stays doubled until a round trip time is measured
+	 */
+	public void backOff() {
+		cancelMeasurement();
+		// the timeout is backed off every time it expires
+		MetricsRegistry.getInstance().timeout();
+
+		if ((retransmitTimeout << backoff) < maxRetransmitTimeout)
+			backoff++;
+	}
+
+	/**
+	 * Returns the time to wait for an answer before sending a packet again
+	 *
+	 * @return timeout in milliseconds, with jitter
+	 */
+	public int getTimeout() {
+		long timeout = clamp(retransmitTimeout << backoff);
+		timeout += (long) (timeout * NetworkConfig.RETRANSMIT_TIMEOUT_JITTER * ThreadLocalRandom.current().nextDouble());
+
+		return (int) Math.max(1, timeout / 1000);
+	}
+
+	private long clamp(long timeout) {
+		return Math.max(NetworkConfig.MIN_RETRANSMIT_TIMEOUT * 1000L, Math.min(maxRetransmitTimeout, timeout));
+	}
+
+	/**
+	 * @return smoothed round trip time in microseconds, 0 if no round trip time was measured
+	 */
+	public long getSmoothedRTT() {
+		return smoothedRTT;
+	}
+
+	/**
+	 * @return round trip time variance in microseconds
+	 */
+	public long getRTTVariance() {
+		return rttVariance;
+	}
+
+	/**
+	 * @return retransmission timeout in microseconds before backoff and jitter
+	 */
+	public long getRetransmitTimeout() {
+		return retransmitTimeout;
+	}
+
+	public int getBackoff() {
+		return backoff;
+	}
+}
@@ -1,10 +1,20 @@
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * This class represents a server.
@@ -14,9 +24,196 @@ public class Server implements Runnable {
 	private TFTPSocket tftpSocket;
 	private ErrorHandler errorHandler;
 	
+	private ServerMode serverMode;
+	private NIOServerEngine nioServerEngine;
+	private ExecutorService virtualThreadExecutor;
+	
+	// running transfers, used to drop requests that are sent again while their transfer runs
+	private ActiveSessionTable activeSessionTable;
+	// limits the number of transfers running at once and queues the requests above it
+	private TransferWorkerPool transferWorkerPool;
+	// limits the rate of requests of each client address
+	private RequestRateLimiter requestRateLimiter;
+	// serves the metrics in the Prometheus text format, null if it is disabled
+	private MetricsHttpServer metricsHttpServer;
+	// names the MBeans of the server were registered with, unregistered at shutdown
+	private List<ObjectName> mbeanNames = new ArrayList<ObjectName>();
+	
 	public Server() {
+		this(ServerMode.THREAD_PER_TRANSFER);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param serverMode how the transfers are going to be run
+	 */
+	public Server(ServerMode serverMode) {
+		this.serverMode = serverMode;
+		
 		tftpSocket = new TFTPSocket(0, NetworkConfig.SERVER_PORT);
 		errorHandler = new ErrorHandler(tftpSocket);
+		activeSessionTable = new ActiveSessionTable();
+		transferWorkerPool = new TransferWorkerPool(NetworkConfig.MAX_CONCURRENT_TRANSFERS, NetworkConfig.MAX_PENDING_TRANSFERS);
+		requestRateLimiter = new RequestRateLimiter(NetworkConfig.RATE_LIMIT_TABLE_SIZE, NetworkConfig.RATE_LIMIT_REQUESTS_PER_SECOND,
+				NetworkConfig.RATE_LIMIT_BURST, NetworkConfig.RATE_LIMIT_ERROR_INTERVAL);
+		
+		registerMetrics();
+		registerMBeans();
+		if (NetworkConfig.METRICS_PORT > 0) {
+			try {
+				metricsHttpServer = new MetricsHttpServer(NetworkConfig.METRICS_PORT);
+			} catch (IOException e) {
+				Log.error("Server", "cannot serve the metrics on port %d", NetworkConfig.METRICS_PORT);
+			}
+		}
+		
+		if (serverMode == ServerMode.NIO || serverMode == ServerMode.NIO_ZERO_COPY) {
+			nioServerEngine = new NIOServerEngine(NetworkConfig.NIO_EVENT_LOOP_THREADS, serverMode == ServerMode.NIO_ZERO_COPY);
+			nioServerEngine.start();
+		}
+		else if (serverMode == ServerMode.VIRTUAL_THREAD) {
+			virtualThreadExecutor = newVirtualThreadExecutor();
+			
+			if (virtualThreadExecutor == null) {
+				Log.error("Server", "virtual threads are not supported by this JVM, using platform threads");
+				this.serverMode = ServerMode.THREAD_PER_TRANSFER;
+			}
+		}
+	}
+	
+	/**
+	 * Registers the counts kept by the parts of the server with the metrics registry
+	 */
+	private void registerMetrics() {
+		MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+		
+		metricsRegistry.registerCollector("tftp_transfer_pool_running", "Transfers admitted and running", "gauge", transferWorkerPool::getRunningCount);
+		metricsRegistry.registerCollector("tftp_transfer_pool_pending", "Requests waiting for a running transfer to end", "gauge", transferWorkerPool::getPendingCount);
+		metricsRegistry.registerCollector("tftp_transfer_pool_rejected_total", "Requests rejected because the queue was full", "counter", transferWorkerPool::getRejectedCount);
+		metricsRegistry.registerCollector("tftp_transfer_pool_wait_seconds_max", "Longest time a request waited in the queue", "gauge", () -> transferWorkerPool.getMaxWaitTime() / 1000);
+		metricsRegistry.registerCollector("tftp_packet_buffer_pool_pooled", "Free receive buffers held by the packet buffer pool", "gauge", () -> PacketBufferPool.getInstance().getPooledCount());
+		metricsRegistry.registerCollector("tftp_packet_buffer_pool_exhausted_total", "Receive buffers allocated because the pool had no free buffer", "counter", () -> PacketBufferPool.getInstance().getExhaustedCount());
+		metricsRegistry.registerCollector("tftp_packet_buffer_pool_dropped_total", "Released receive buffers dropped because the pool was full", "counter", () -> PacketBufferPool.getInstance().getDropCount());
+		metricsRegistry.registerCollector("tftp_file_write_buffers_direct", "Direct write buffers allocated for WRQ transfers", "gauge", () -> FileWriteBufferPool.getInstance().getDirectBufferCount());
+		metricsRegistry.registerCollector("tftp_file_write_buffer_pool_exhausted_total", "WRQ transfers given a heap write buffer because every direct buffer was taken", "counter", () -> FileWriteBufferPool.getInstance().getExhaustedCount());
+		metricsRegistry.registerCollector("tftp_disk_reserved_bytes", "Disk space reserved for the files being written that they have not written yet", "gauge", FileManager::getReservedBytes);
+		metricsRegistry.registerCollector("tftp_rate_limited_requests_total", "Requests dropped because their address sent too many", "counter", requestRateLimiter::getLimitedCount);
+		metricsRegistry.registerCollector("tftp_duplicate_requests_total", "Requests dropped because their transfer was running", "counter", activeSessionTable::getSuppressedCount);
+		metricsRegistry.registerCollector("tftp_file_cache_hits_total", "Files read from the file content cache", "counter", () -> FileContentCache.getInstance().getHitCount());
+		metricsRegistry.registerCollector("tftp_file_cache_misses_total", "Files read from disk", "counter", () -> FileContentCache.getInstance().getMissCount());
+		metricsRegistry.registerCollector("tftp_egress_throttled_seconds_total", "Time the egress scheduler waited for the bandwidth budget", "counter", () -> EgressScheduler.getInstance().getThrottledTime() / 1000.0);
+		metricsRegistry.registerCollector("tftp_log_dropped_messages_total", "Log messages dropped because the log buffer was full", "counter", Log::getDroppedCount);
+	}
+	
+	/**
+	 * Registers the MBeans that list the running transfers and change the settings of the server
+	 * with the platform MBean server, so that they can be used from JConsole or any JMX client
+	 */
+	private void registerMBeans() {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		
+		try {
+			ObjectName sessionsName = new ObjectName("SYSC3303.TFTP:type=TransferSessions");
+			ObjectName tuningName = new ObjectName("SYSC3303.TFTP:type=ServerTuning");
+			
+			// a server started again in the same JVM replaces the MBeans of the previous one
+			for (ObjectName name : new ObjectName[] { sessionsName, tuningName }) {
+				if (mbeanServer.isRegistered(name))
+					mbeanServer.unregisterMBean(name);
+			}
+			
+			mbeanServer.registerMBean(new TransferSessions(activeSessionTable), sessionsName);
+			mbeanNames.add(sessionsName);
+			mbeanServer.registerMBean(new ServerTuning(transferWorkerPool, requestRateLimiter), tuningName);
+			mbeanNames.add(tuningName);
+		} catch (JMException e) {
+			Log.error("Server", "cannot register the MBeans: %s", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns an executor that starts a new virtual thread for each task.
+	 * Virtual threads were added in Java 21 so the executor is looked up at runtime
+	 * 
+	 * @return executor or null if the JVM does not support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Runs a transfer on a platform or a virtual thread depending on the server mode
+	 * 
+	 * @param transfer RRQServerThread or WRQServerThread
+	 * @param session  entry of the transfer in the active session table, removed when the transfer ends
+	 * @param endCallback tells the transfer worker pool the transfer ended
+	 */
+	private void startTransferThread(Runnable transfer, ActiveSessionTable.Session session, Runnable endCallback) {
+		Runnable sessionTransfer = () -> {
+			try {
+				transfer.run();
+			} finally {
+				endSession(session);
+				endCallback.run();
+			}
+		};
+		
+		if (serverMode == ServerMode.VIRTUAL_THREAD)
+			virtualThreadExecutor.execute(sessionTransfer);
+		else
+			new Thread(sessionTransfer).start();
+	}
+	
+	/**
+	 * Removes a finished transfer from the active session table
+	 * 
+	 * @param session entry of the transfer, null if the request could not be parsed
+	 */
+	private void endSession(ActiveSessionTable.Session session) {
+		if (session != null)
+			activeSessionTable.remove(session);
+	}
+	
+	/**
+	 * Starts a transfer admitted by the transfer worker pool
+	 * 
+	 * @param requestPacket RRQ or WRQ packet
+	 * @param session       entry of the transfer in the active session table
+	 * @param endCallback   tells the transfer worker pool the transfer ended
+	 */
+	private void startTransfer(TFTPPacket requestPacket, ActiveSessionTable.Session session, Runnable endCallback) {
+		TFTPPacketType transferType = requestPacket.getPacketType();
+		TransferStatus transferStatus = session != null ? session.getStatus() : null;
+		MetricsRegistry.getInstance().transferStarted(transferType);
+		
+		Runnable transferEnd = () -> {
+			MetricsRegistry.getInstance().transferEnded(transferType);
+			endCallback.run();
+		};
+		
+		if (nioServerEngine != null) {
+			// hand the request over to one of the event loops
+			nioServerEngine.startTransfer(requestPacket, transferStatus, () -> {
+				endSession(session);
+				transferEnd.run();
+			});
+		}
+		else if (transferType == TFTPPacketType.RRQ) {
+			// create a server thread for handling read requests
+			RRQServerThread rrqServerThread = new RRQServerThread(requestPacket, transferStatus);
+			startTransferThread(rrqServerThread, session, transferEnd);
+		}
+		else {
+			// create a server thread for handling write requests
+			WRQServerThread wrqServerThread = new WRQServerThread(requestPacket, transferStatus);
+			startTransferThread(wrqServerThread, session, transferEnd);
+		}
 	}
 	
 	@Override
@@ -26,14 +223,14 @@ public class Server implements Runnable {
 	
 	private void listen() {
 		while (!tftpSocket.isClosed()) {
-			System.out.println(Globals.getVerboseMessage("Server", "waiting for packet..."));
+			Log.verbose("Server", "waiting for packet...");
 			
 			TFTPPacket requestPacket = null;
 			try {
 				requestPacket = tftpSocket.receive();
 			} catch (SocketTimeoutException e) {
 				String errorMessage = "Socket timed out. Cannot receive TFTP packet";
-				System.err.println(Globals.getErrorMessage("Server", errorMessage));	
+				Log.error("Server", errorMessage);	
 				continue;
 			} catch (IOException e) {
 				System.err.println(Globals.getErrorMessage("Server", "oops... the connection broke"));
@@ -50,24 +247,63 @@ public class Server implements Runnable {
 				continue;
 			}
 			
+			// a client sending requests in a loop is dropped before its requests are parsed,
+			// it is told at most once per interval so that the server cannot be used to flood another host
+			long now = System.nanoTime();
+			if (!requestRateLimiter.tryAcquire(requestPacket.getRemoteAddress(), now)) {
+				if (requestRateLimiter.shouldSendError(requestPacket.getRemoteAddress(), now)) {
+					Log.error("Server", "too many requests from %s", requestPacket.getRemoteAddress());
+					errorHandler.sendNotDefinedErrorPacket("too many requests, slow down", requestPacket.getRemoteAddress(), requestPacket.getRemotePort());
+				}
+				
+				requestPacket.release();
+				continue;
+			}
+			
 			TFTPPacketType packetType = requestPacket.getPacketType();
+			ActiveSessionTable.Session session = null;
 			
-			if (packetType == TFTPPacketType.RRQ) {
-				System.out.println(Globals.getVerboseMessage("Server", "RRQ request recevied."));
-				
-				// create a server thread for handling read requests
-				RRQServerThread rrqServerThread = new RRQServerThread(requestPacket);
-				rrqServerThread.start();
+			if (packetType == TFTPPacketType.RRQ || packetType == TFTPPacketType.WRQ) {
+				try {
+					RRQWRQPacket rrqwrqPacket = new RRQWRQPacket(requestPacket);
+					requestPacket = rrqwrqPacket;
+					
+					// the client sent the request again or the network duplicated it,
+					// the running transfer answers the client
+					session = activeSessionTable.add(rrqwrqPacket);
+					if (session == null) {
+						requestPacket.release();
+						continue;
+					}
+				} catch (TFTPPacketParsingError e) {
+					// the transfer answers an invalid request with an ERROR packet
+				}
 			}
-			else if (packetType == TFTPPacketType.WRQ) {
-				System.out.println(Globals.getVerboseMessage("Server", "WRQ request received."));
+			
+			// removed from the table by the transfer once it ends
+			ActiveSessionTable.Session transferSession = session;
+			TFTPPacket transferRequestPacket = requestPacket;
+			
+			if (packetType == TFTPPacketType.RRQ || packetType == TFTPPacketType.WRQ) {
+				if (packetType == TFTPPacketType.RRQ)
+					Log.verbose("Server", "RRQ request recevied.");
+				else
+					Log.verbose("Server", "WRQ request received.");
+				
+				// the transfer starts now or once a running transfer ends
+				boolean admitted = transferWorkerPool.submit(endCallback -> startTransfer(transferRequestPacket, transferSession, endCallback));
 				
-				// create a server thread for handling write requests
-				WRQServerThread wrqServerThread = new WRQServerThread(requestPacket);
-				wrqServerThread.start();
+				if (!admitted) {
+					// every transfer is taken and the queue is full, the client is told right away
+					// instead of waiting for its request to time out
+					Log.error("Server", "too many transfers, rejecting request");
+					endSession(transferSession);
+					errorHandler.sendNotDefinedErrorPacket("server is busy, try again later", requestPacket.getRemoteAddress(), requestPacket.getRemotePort());
+					requestPacket.release();
+				}
 			}
 			else {
-				System.err.println(Globals.getErrorMessage("Server", "invalid request packet"));
+				Log.error("Server", "invalid request packet");
 				errorHandler.sendIllegalOperationErrorPacket("cannot parse TFTP packet", requestPacket.getRemoteAddress(), requestPacket.getRemotePort());
 			}
 		}
@@ -75,8 +311,44 @@ public class Server implements Runnable {
 		tftpSocket.close();
 	}
 	
+	/**
+	 * @return table of the running transfers and the number of duplicate requests dropped
+	 */
+	public ActiveSessionTable getActiveSessionTable() {
+		return activeSessionTable;
+	}
+	
+	/**
+	 * @return pool that admits the transfers, with the queue depth, rejections and wait times
+	 */
+	public TransferWorkerPool getTransferWorkerPool() {
+		return transferWorkerPool;
+	}
+	
+	/**
+	 * @return how the transfers are run, THREAD_PER_TRANSFER if VIRTUAL_THREAD was asked for
+	 *         but the JVM does not support virtual threads
+	 */
+	public ServerMode getServerMode() {
+		return serverMode;
+	}
+	
+	/**
+	 * @return rate limiter of the client addresses, with the number of requests refused
+	 */
+	public RequestRateLimiter getRequestRateLimiter() {
+		return requestRateLimiter;
+	}
+	
+	/**
+	 * @return HTTP server of the metrics, null if it is disabled or could not be started
+	 */
+	public MetricsHttpServer getMetricsHttpServer() {
+		return metricsHttpServer;
+	}
+	
 	public void shutdown() {
-		System.out.println(Globals.getVerboseMessage("Server", "shutting down..."));
+		Log.verbose("Server", "shutting down...");
 				
 		// wait for any connections that are to be classified
 		try {
@@ -105,7 +377,29 @@ public class Server implements Runnable {
 			}
 		}
 		
-		System.out.println(Globals.getVerboseMessage("Server", "goodbye!"));
+		if (nioServerEngine != null) {
+			nioServerEngine.shutdown();
+		}
+		
+		if (metricsHttpServer != null) {
+			metricsHttpServer.stop();
+		}
+		
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName mbeanName : mbeanNames) {
+			try {
+				mbeanServer.unregisterMBean(mbeanName);
+			} catch (JMException e) {
+				Log.error("Server", "cannot unregister %s", mbeanName);
+			}
+		}
+		
+		if (virtualThreadExecutor != null) {
+			// running transfers are allowed to finish
+			virtualThreadExecutor.shutdown();
+		}
+		
+		Log.verbose("Server", "goodbye!");
 	}
 	
 	public static void main(String[] args) {
@@ -113,17 +407,22 @@ public class Server implements Runnable {
 		Thread serverThread = null;
 		
 		System.out.println("\nSYSC 3033 TFTP Server");
-		System.out.println("1. Start");
-		System.out.println("2. Exit");
+		System.out.println("1. Start (thread per transfer)");
+		System.out.println("2. Start (NIO event loops)");
+		System.out.println("3. Start (virtual thread per transfer)");
+		System.out.println("4. Start (NIO event loops, memory-mapped zero-copy reads)");
+		System.out.println("5. Exit");
 		System.out.println("Selection: ");
 		
 		int selection = 0;
 		Scanner sc = new Scanner(System.in);
 		selection = sc.nextInt();
 		
-		if (selection == 1) {
+		if (selection >= 1 && selection <= 4) {
+			ServerMode[] serverModes = {ServerMode.THREAD_PER_TRANSFER, ServerMode.NIO, ServerMode.VIRTUAL_THREAD, ServerMode.NIO_ZERO_COPY};
+			
 			// create server a thread for it listen on
-			server = new Server();
+			server = new Server(serverModes[selection - 1]);
 			serverThread = new Thread(server);
 			serverThread.start();
 		}
@@ -137,9 +436,16 @@ public class Server implements Runnable {
 		while (!shutdownCommand.equals("quit")) {
 			System.out.println("\nSYSC 3033 TFTP Server");
 			System.out.println("Type quit to shutdown");
+			System.out.println("Type verbose, error or off to change what is logged (currently " + Log.getLevel().name().toLowerCase() + ")");
 			System.out.println("Selection: ");
 			
 			shutdownCommand = sc.nextLine();
+			
+			// the log level can be changed while the server runs
+			for (LogLevel logLevel : LogLevel.values()) {
+				if (shutdownCommand.equalsIgnoreCase(logLevel.name()))
+					Log.setLevel(logLevel);
+			}
 		}
 		
 		if (shutdownCommand.equals("quit")) {
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a load test that compares the server's platform thread mode
+ * with its virtual thread mode.
+ *
+ * For each mode a server is started in this JVM and a number of concurrent clients
+ * read the same file from it. The peak number of platform threads started by the server,
+ * the peak heap usage, the time taken and the throughput are printed for each mode. The server
+ * runs with its request rate limit and its transfer pool limits raised so that every client is
+ * served at once. The test fails (exit code 1) if a transfer of either mode failed or was
+ * refused by the server.
+ *
+ * Virtual threads need Java 21 or later. On an older JVM the virtual thread run is skipped,
+ * the server would fall back to platform threads and run the same mode twice.
+ *
+ * Usage: ServerLoadTest [number of clients] [file name]
+ *
+ * @author Group 8
+ */
+public class ServerLoadTest {
+	private int numberOfClients;
+	private String fileName;
+
+	private InetAddress serverAddress;
+
+	/**
+	 * This class holds the measurements of a single run
+	 */
+	private class LoadTestResult {
+		ServerMode serverMode;
+		int completedTransfers;
+		int failedTransfers;
+		long bytesReceived;
+		long durationMillis;
+		int peakPlatformThreads;
+		long peakHeapUsedBytes;
+	}
+
+	public ServerLoadTest(int numberOfClients, String fileName) {
+		this.numberOfClients = numberOfClients;
+		this.fileName = fileName;
+
+		try {
+			serverAddress = InetAddress.getLocalHost();
+		} catch (UnknownHostException e) {
+			System.err.println(Globals.getErrorMessage("ServerLoadTest", "cannot get localhost address"));
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Starts a server in the given mode, runs all clients against it and shuts it down
+	 *
+	 * @param serverMode server mode to test
+	 * @return measurements of the run
+	 */
+	private LoadTestResult run(ServerMode serverMode) throws InterruptedException {
+		LoadTestResult result = new LoadTestResult();
+
+		// the server and the transfers print a message per packet
+		// which would measure the console instead of the server
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		PrintStream nullStream = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {}
+		});
+		System.setOut(nullStream);
+		System.setErr(nullStream);
+
+		System.gc();
+		// the threads of the server are the ones started from now on, except the threads of the clients
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		int baseThreadCount = threadMXBean.getThreadCount();
+		threadMXBean.resetPeakThreadCount();
+
+		Server server = new Server(serverMode);
+		result.serverMode = server.getServerMode();
+		// every client sends from this host, the per address rate limit would refuse most of them
+		server.getRequestRateLimiter().setRequestsPerSecond(numberOfClients * 1000.0);
+		server.getRequestRateLimiter().setBurst(numberOfClients * 2);
+		// every client is served at once instead of waiting in the queue of the transfer pool
+		server.getTransferWorkerPool().setMaxRunningTransfers(numberOfClients);
+		server.getTransferWorkerPool().setMaxPendingTransfers(numberOfClients);
+		Thread serverThread = new Thread(server);
+		serverThread.start();
+
+		AtomicInteger completedTransfers = new AtomicInteger();
+		AtomicInteger failedTransfers = new AtomicInteger();
+		AtomicLong bytesReceived = new AtomicLong();
+		AtomicLong peakHeapUsed = new AtomicLong();
+		CountDownLatch finished = new CountDownLatch(numberOfClients);
+
+		// samples heap usage while the clients are running
+		Thread memorySampler = new Thread(() -> {
+			Runtime runtime = Runtime.getRuntime();
+			while (finished.getCount() > 0) {
+				long used = runtime.totalMemory() - runtime.freeMemory();
+				if (used > peakHeapUsed.get())
+					peakHeapUsed.set(used);
+
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		memorySampler.start();
+
+		// clients run on virtual threads when available so that the client side
+		// does not limit how many transfers the server sees at once
+		AtomicInteger clientThreads = new AtomicInteger();
+		ExecutorService clientExecutor = Server.newVirtualThreadExecutor();
+		if (clientExecutor == null) {
+			clientExecutor = Executors.newFixedThreadPool(Math.min(numberOfClients, 1000), runnable -> {
+				clientThreads.incrementAndGet();
+				return new Thread(runnable);
+			});
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfClients; i++) {
+			clientExecutor.execute(() -> {
+				long received = readFile();
+
+				if (received >= 0) {
+					completedTransfers.incrementAndGet();
+					bytesReceived.addAndGet(received);
+				}
+				else {
+					failedTransfers.incrementAndGet();
+				}
+
+				finished.countDown();
+			});
+		}
+
+		finished.await();
+		result.durationMillis = (System.nanoTime() - start) / 1000000;
+
+		clientExecutor.shutdown();
+		memorySampler.join();
+
+		result.completedTransfers = completedTransfers.get();
+		result.failedTransfers = failedTransfers.get();
+		result.bytesReceived = bytesReceived.get();
+		// the threads of the clients live until every transfer ended, the memory sampler is not counted either
+		result.peakPlatformThreads = threadMXBean.getPeakThreadCount() - baseThreadCount - clientThreads.get() - 1;
+		result.peakHeapUsedBytes = peakHeapUsed.get();
+
+		server.shutdown();
+		serverThread.join(1000);
+
+		System.setOut(stdout);
+		System.setErr(stderr);
+
+		return result;
+	}
+
+	/**
+	 * Reads the test file from the server, the data received is discarded.
+	 * The RRQ or the last ACK packet is sent again when the socket times out,
+	 * up to NetworkConfig.MAX_TRIES times in a row
+	 *
+	 * @return number of bytes received or -1 if the transfer failed
+	 */
+	private long readFile() {
+		TFTPSocket tftpSocket = new TFTPSocket(NetworkConfig.TIMEOUT_TIME);
+
+		try {
+			TFTPPacket sentPacket = TFTPPacketBuilder.getRRQWRQDatagramPacket(TFTPPacketType.RRQ, fileName, "octet", serverAddress, NetworkConfig.SERVER_PORT);
+			tftpSocket.send(sentPacket);
+
+			long bytesReceived = 0;
+			short expectedBlockNumber = 1;
+			int packetLength = NetworkConfig.DATAGRAM_PACKET_MAX_LEN;
+			int numberOfTries = 1;
+
+			while (packetLength == NetworkConfig.DATAGRAM_PACKET_MAX_LEN) {
+				TFTPPacket receivePacket;
+				try {
+					receivePacket = tftpSocket.receive();
+				} catch (SocketTimeoutException e) {
+					if (numberOfTries++ == NetworkConfig.MAX_TRIES)
+						return -1;
+
+					tftpSocket.send(sentPacket);
+					continue;
+				}
+
+				if (receivePacket == null || receivePacket.getPacketType() != TFTPPacketType.DATA)
+					return -1;
+
+				DATAPacket dataPacket = new DATAPacket(receivePacket);
+
+				// the ACK for a duplicate DATA packet is sent again
+				if (dataPacket.getBlockNumber() == expectedBlockNumber) {
+					bytesReceived += dataPacket.getDataBytes().length;
+					packetLength = dataPacket.getPacketLength();
+					expectedBlockNumber++;
+				}
+
+				numberOfTries = 1;
+				sentPacket = TFTPPacketBuilder.getACKDatagram(dataPacket.getBlockNumber(),
+						dataPacket.getRemoteAddress(), dataPacket.getRemotePort());
+				tftpSocket.send(sentPacket);
+			}
+
+			return bytesReceived;
+		} catch (IOException | TFTPPacketParsingError e) {
+			return -1;
+		} finally {
+			tftpSocket.close();
+		}
+	}
+
+	private static void printResult(LoadTestResult result) {
+		double seconds = Math.max(result.durationMillis, 1) / 1000.0;
+
+		System.out.println(String.format("%-20s %10d %8d %10d %14d %16.1f %12.1f %12.2f",
+				result.serverMode, result.completedTransfers, result.failedTransfers, result.durationMillis,
+				result.peakPlatformThreads, result.peakHeapUsedBytes / (1024.0 * 1024.0),
+				result.completedTransfers / seconds, result.bytesReceived / (1024.0 * 1024.0) / seconds));
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int numberOfClients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		String fileName = args.length > 1 ? args[1] : "pic.jpeg";
+
+		ServerLoadTest loadTest = new ServerLoadTest(numberOfClients, fileName);
+
+		System.out.println(String.format("\nSYSC 3033 TFTP Server Load Test - %d concurrent RRQ of %s", numberOfClients, fileName));
+
+		LoadTestResult platformResult = loadTest.run(ServerMode.THREAD_PER_TRANSFER);
+		LoadTestResult virtualResult = null;
+		if (Server.newVirtualThreadExecutor() != null)
+			virtualResult = loadTest.run(ServerMode.VIRTUAL_THREAD);
+
+		System.out.println(String.format("%-20s %10s %8s %10s %14s %16s %12s %12s",
+				"mode", "completed", "failed", "time(ms)", "peak threads", "peak heap(MB)", "transfers/s", "MB/s"));
+		printResult(platformResult);
+		if (virtualResult != null)
+			printResult(virtualResult);
+		else
+			System.out.println("VIRTUAL_THREAD       skipped, virtual threads are not supported by this JVM (Java 21 or later is needed)");
+
+		if (platformResult.failedTransfers > 0 || (virtualResult != null && virtualResult.failedTransfers > 0)) {
+			System.err.println(Globals.getErrorMessage("ServerLoadTest", "transfers failed or were refused by the server"));
+			System.exit(1);
+		}
+	}
+}
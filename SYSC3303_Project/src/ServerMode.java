@@ -0,0 +1,17 @@
+/**
+ * Modes the server can use to run file transfers
+ *
+ * @author Group 8
+ *
+ */
+public enum ServerMode {
+	// a new RRQServerThread or WRQServerThread is started for every request
+	THREAD_PER_TRANSFER,
+	// every transfer is driven by a small number of selector event loops
+	NIO,
+	// like NIO, but RRQ files are memory-mapped and every DATA packet is sent with a gathering
+	// write of its header and a slice of the mapped file (see NIOTransferSession)
+	NIO_ZERO_COPY,
+	// RRQServerThread and WRQServerThread are run on a virtual thread each
+	VIRTUAL_THREAD
+}
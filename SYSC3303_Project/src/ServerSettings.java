@@ -0,0 +1,52 @@
+/**
+ * This class holds the settings that can be changed while the server runs (see ServerTuningMXBean).
+ *
+ * They start at the values of NetworkConfig. A new value is used by the transfers that start
+ * after it is set, a running transfer keeps the values it started with.
+ *
+ * @author Group 8
+ */
+public class ServerSettings {
+	// retransmission timeout (in ms) used until a round trip time is measured
+	private static volatile int initialRetransmitTimeout = NetworkConfig.INITIAL_RETRANSMIT_TIMEOUT;
+	// longest retransmission timeout (in ms)
+	private static volatile int maxRetransmitTimeout = NetworkConfig.TIMEOUT_TIME;
+	// longest time (in ms) a NIO transfer may go without the client moving it forward
+	private static volatile int sessionIdleTimeout = NetworkConfig.SESSION_IDLE_TIMEOUT;
+
+	public static int getInitialRetransmitTimeout() {
+		return initialRetransmitTimeout;
+	}
+
+	/**
+	 * @param timeout retransmission timeout in milliseconds used until a round trip time is measured,
+	 *                kept between NetworkConfig.MIN_RETRANSMIT_TIMEOUT and the longest retransmission timeout
+	 */
+	public static void setInitialRetransmitTimeout(int timeout) {
+		initialRetransmitTimeout = Math.max(NetworkConfig.MIN_RETRANSMIT_TIMEOUT, Math.min(maxRetransmitTimeout, timeout));
+	}
+
+	public static int getMaxRetransmitTimeout() {
+		return maxRetransmitTimeout;
+	}
+
+	/**
+	 * @param timeout longest retransmission timeout in milliseconds, at least NetworkConfig.MIN_RETRANSMIT_TIMEOUT
+	 */
+	public static void setMaxRetransmitTimeout(int timeout) {
+		maxRetransmitTimeout = Math.max(NetworkConfig.MIN_RETRANSMIT_TIMEOUT, timeout);
+		initialRetransmitTimeout = Math.min(initialRetransmitTimeout, maxRetransmitTimeout);
+	}
+
+	public static int getSessionIdleTimeout() {
+		return sessionIdleTimeout;
+	}
+
+	/**
+	 * @param timeout longest time in milliseconds a NIO transfer may go without progress, at least
+	 *                the longest retransmission timeout so that a transfer is not closed while it retransmits
+	 */
+	public static void setSessionIdleTimeout(int timeout) {
+		sessionIdleTimeout = Math.max(maxRetransmitTimeout, timeout);
+	}
+}
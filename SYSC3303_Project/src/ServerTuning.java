@@ -0,0 +1,120 @@
+/**
+ * This class changes the settings of the server while it runs (see ServerTuningMXBean)
+ *
+ * @author Group 8
+ */
+public class ServerTuning implements ServerTuningMXBean {
+	private TransferWorkerPool transferWorkerPool;
+	private RequestRateLimiter requestRateLimiter;
+
+	public ServerTuning(TransferWorkerPool transferWorkerPool, RequestRateLimiter requestRateLimiter) {
+		this.transferWorkerPool = transferWorkerPool;
+		this.requestRateLimiter = requestRateLimiter;
+	}
+
+	@Override
+	public int getMaxConcurrentTransfers() {
+		return transferWorkerPool.getMaxRunningTransfers();
+	}
+
+	@Override
+	public void setMaxConcurrentTransfers(int maxConcurrentTransfers) {
+		transferWorkerPool.setMaxRunningTransfers(maxConcurrentTransfers);
+		Log.verbose("ServerTuning", "max concurrent transfers set to %d", transferWorkerPool.getMaxRunningTransfers());
+	}
+
+	@Override
+	public int getMaxPendingTransfers() {
+		return transferWorkerPool.getMaxPendingTransfers();
+	}
+
+	@Override
+	public void setMaxPendingTransfers(int maxPendingTransfers) {
+		transferWorkerPool.setMaxPendingTransfers(maxPendingTransfers);
+		Log.verbose("ServerTuning", "max pending transfers set to %d", transferWorkerPool.getMaxPendingTransfers());
+	}
+
+	@Override
+	public double getRateLimitRequestsPerSecond() {
+		return requestRateLimiter.getRequestsPerSecond();
+	}
+
+	@Override
+	public void setRateLimitRequestsPerSecond(double requestsPerSecond) {
+		requestRateLimiter.setRequestsPerSecond(requestsPerSecond);
+		Log.verbose("ServerTuning", "rate limit set to %.1f requests per second", requestRateLimiter.getRequestsPerSecond());
+	}
+
+	@Override
+	public int getRateLimitBurst() {
+		return requestRateLimiter.getBurst();
+	}
+
+	@Override
+	public void setRateLimitBurst(int burst) {
+		requestRateLimiter.setBurst(burst);
+		Log.verbose("ServerTuning", "rate limit burst set to %d requests", requestRateLimiter.getBurst());
+	}
+
+	@Override
+	public int getInitialRetransmitTimeout() {
+		return ServerSettings.getInitialRetransmitTimeout();
+	}
+
+	@Override
+	public void setInitialRetransmitTimeout(int timeout) {
+		ServerSettings.setInitialRetransmitTimeout(timeout);
+		Log.verbose("ServerTuning", "initial retransmit timeout set to %d ms", ServerSettings.getInitialRetransmitTimeout());
+	}
+
+	@Override
+	public int getMaxRetransmitTimeout() {
+		return ServerSettings.getMaxRetransmitTimeout();
+	}
+
+	@Override
+	public void setMaxRetransmitTimeout(int timeout) {
+		ServerSettings.setMaxRetransmitTimeout(timeout);
+		Log.verbose("ServerTuning", "max retransmit timeout set to %d ms", ServerSettings.getMaxRetransmitTimeout());
+	}
+
+	@Override
+	public int getSessionIdleTimeout() {
+		return ServerSettings.getSessionIdleTimeout();
+	}
+
+	@Override
+	public void setSessionIdleTimeout(int timeout) {
+		ServerSettings.setSessionIdleTimeout(timeout);
+		Log.verbose("ServerTuning", "session idle timeout set to %d ms", ServerSettings.getSessionIdleTimeout());
+	}
+
+	@Override
+	public long getFileCacheCapacity() {
+		return FileContentCache.getInstance().getCapacity();
+	}
+
+	@Override
+	public void setFileCacheCapacity(long capacityBytes) {
+		FileContentCache.getInstance().setCapacity(capacityBytes);
+		Log.verbose("ServerTuning", "file cache capacity set to %d bytes", FileContentCache.getInstance().getCapacity());
+	}
+
+	@Override
+	public long getFileCacheUsedBytes() {
+		return FileContentCache.getInstance().getUsedBytes();
+	}
+
+	@Override
+	public String getLogLevel() {
+		return Log.getLevel().name();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the level is not OFF, ERROR or VERBOSE
+	 */
+	@Override
+	public void setLogLevel(String logLevel) {
+		Log.setLevel(LogLevel.valueOf(logLevel.trim().toUpperCase()));
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * This interface changes the settings of the server while it runs over JMX,
+ * registered as SYSC3303.TFTP:type=ServerTuning
+ *
+ * The settings start at the values of NetworkConfig and are not saved, the server starts
+ * with the values of NetworkConfig again after a restart.
+ *
+ * @author Group 8
+ */
+public interface ServerTuningMXBean {
+	/**
+	 * @return largest number of transfers running at once
+	 */
+	public int getMaxConcurrentTransfers();
+
+	public void setMaxConcurrentTransfers(int maxConcurrentTransfers);
+
+	/**
+	 * @return largest number of requests waiting for a running transfer to end
+	 */
+	public int getMaxPendingTransfers();
+
+	public void setMaxPendingTransfers(int maxPendingTransfers);
+
+	/**
+	 * @return number of requests per second each client address can send
+	 */
+	public double getRateLimitRequestsPerSecond();
+
+	public void setRateLimitRequestsPerSecond(double requestsPerSecond);
+
+	/**
+	 * @return largest number of requests a client address can send at once
+	 */
+	public int getRateLimitBurst();
+
+	public void setRateLimitBurst(int burst);
+
+	/**
+	 * @return retransmission timeout in milliseconds used until a round trip time is measured
+	 */
+	public int getInitialRetransmitTimeout();
+
+	public void setInitialRetransmitTimeout(int timeout);
+
+	/**
+	 * @return longest retransmission timeout in milliseconds
+	 */
+	public int getMaxRetransmitTimeout();
+
+	public void setMaxRetransmitTimeout(int timeout);
+
+	/**
+	 * @return longest time in milliseconds a NIO transfer may go without progress
+	 */
+	public int getSessionIdleTimeout();
+
+	public void setSessionIdleTimeout(int timeout);
+
+	/**
+	 * @return byte budget of the file content cache
+	 */
+	public long getFileCacheCapacity();
+
+	public void setFileCacheCapacity(long capacityBytes);
+
+	/**
+	 * @return bytes of file data held by the file content cache
+	 */
+	public long getFileCacheUsedBytes();
+
+	/**
+	 * @return OFF, ERROR or VERBOSE
+	 */
+	public String getLogLevel();
+
+	public void setLogLevel(String logLevel);
+}
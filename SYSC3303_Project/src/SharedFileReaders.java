@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class lets concurrent RRQ transfers of the same file read from a single copy of it.
+ *
+ * Every transfer of a file is counted as a reader of it. A transfer that is the only reader
+ * of its file streams it from its own file channel (FileBlockSource, or MappedBlockSource in
+ * zero copy mode). When a second transfer requests the same file (same path, size and
+ * modification time) while the first one is reading it, the file is mapped into memory and that
+ * transfer, and every following one, reads from the mapping and closes its own file channel.
+ * The mapping is dropped when the last transfer reading it closes its block source. So many
+ * clients booting from the same file at once open, map and read it from disk once, and a
+ * file read by a single client is never mapped.
+ *
+ * Files larger than NetworkConfig.MAPPED_REGION_SIZE are not mapped, every transfer streams them.
+ *
+ * @author Group 8
+ */
+public class SharedFileReaders {
+	private static final SharedFileReaders instance = new SharedFileReaders();
+
+	/**
+	 * This class is a file being read, the number of transfers reading it and the
+	 * mapping shared by the transfers that joined it
+	 */
+	private class SharedFile {
+		Path path;
+		long fileSize;
+		long lastModified;
+		int referenceCount;
+
+		// null until a second transfer reads the file, and once no transfer reads the mapping
+		ByteBuffer fileContent;
+		int mappedReferenceCount;
+	}
+
+	/**
+	 * This class streams the blocks of a file to a transfer that does not read the mapping
+	 * and releases its reference when the transfer is finished
+	 */
+	private class ReaderBlockSource implements BlockSource {
+		private SharedFile sharedFile;
+		private BlockSource blockSource;
+
+		ReaderBlockSource(SharedFile sharedFile, BlockSource blockSource) {
+			this.sharedFile = sharedFile;
+			this.blockSource = blockSource;
+		}
+
+		@Override
+		public int getBlockSize() {
+			return blockSource.getBlockSize();
+		}
+
+		@Override
+		public long getNumberOfBlocks() {
+			return blockSource.getNumberOfBlocks();
+		}
+
+		@Override
+		public long getFileSize() {
+			return blockSource.getFileSize();
+		}
+
+		@Override
+		public byte[] readBlock(long blockIndex) throws IOException {
+			return blockSource.readBlock(blockIndex);
+		}
+
+		@Override
+		public ByteBuffer getBlockBuffer(long blockIndex) throws IOException {
+			return blockSource.getBlockBuffer(blockIndex);
+		}
+
+		@Override
+		public void close() {
+			blockSource.close();
+
+			// a block source may be closed more than once
+			if (sharedFile == null)
+				return;
+
+			release(sharedFile, false);
+			sharedFile = null;
+		}
+	}
+
+	/**
+	 * This class provides the blocks of the mapping of a file to a single transfer
+	 * and releases its reference when the transfer is finished
+	 */
+	private class SharedBlockSource extends CachedBlockSource {
+		private SharedFile sharedFile;
+
+		SharedBlockSource(SharedFile sharedFile, ByteBuffer fileContent, int blockSize) {
+			super(fileContent, blockSize);
+			this.sharedFile = sharedFile;
+		}
+
+		@Override
+		public void close() {
+			// a block source may be closed more than once
+			if (sharedFile == null)
+				return;
+
+			release(sharedFile, true);
+			sharedFile = null;
+		}
+	}
+
+	// files that are read by at least one transfer
+	private Map<Path, SharedFile> sharedFiles = new HashMap<Path, SharedFile>();
+
+	private long openCount;
+	private long joinCount;
+
+	public static SharedFileReaders getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns a block source of a file opened for a RRQ. The file is streamed from the file channel
+	 * if no other transfer is reading it, otherwise it is read from the mapping shared with the others
+	 *
+	 * @param path         absolute path of the file
+	 * @param fileChannel  file opened with FileManager.openFile, closed if the mapping is read
+	 * @param fileSize     size of the file on disk
+	 * @param lastModified modification time of the file on disk
+	 * @param blockSize    negotiated block size
+	 * @param memoryMapped true if a file that is streamed should be memory-mapped by its transfer
+	 * @return block source of the file
+	 * @throws IOException if the file cannot be read or mapped
+	 */
+	public BlockSource getBlockSource(Path path, FileChannel fileChannel, long fileSize, long lastModified, int blockSize, boolean memoryMapped) throws IOException {
+		SharedFile sharedFile = acquire(path, fileSize, lastModified);
+		ByteBuffer fileContent = null;
+
+		try {
+			if (fileSize <= NetworkConfig.MAPPED_REGION_SIZE)
+				fileContent = acquireMapping(sharedFile, fileChannel);
+
+			if (fileContent == null)
+				return new ReaderBlockSource(sharedFile, openBlockSource(fileChannel, blockSize, memoryMapped));
+		} catch (IOException e) {
+			release(sharedFile, false);
+			throw e;
+		}
+
+		// the mapping stays valid once the channel is closed
+		fileChannel.close();
+		return new SharedBlockSource(sharedFile, fileContent, blockSize);
+	}
+
+	private static BlockSource openBlockSource(FileChannel fileChannel, int blockSize, boolean memoryMapped) throws IOException {
+		if (memoryMapped)
+			return new MappedBlockSource(fileChannel, blockSize);
+
+		return new FileBlockSource(fileChannel, blockSize);
+	}
+
+	/**
+	 * Takes a reference to the file being read if it matches the file on disk,
+	 * otherwise the transfer becomes the first reader of the file
+	 *
+	 * @return file the caller holds a reference to
+	 */
+	private synchronized SharedFile acquire(Path path, long fileSize, long lastModified) {
+		SharedFile sharedFile = sharedFiles.get(path);
+
+		// transfers that started before the file changed keep reading the old copy
+		if (sharedFile == null || sharedFile.fileSize != fileSize || sharedFile.lastModified != lastModified) {
+			sharedFile = new SharedFile();
+			sharedFile.path = path;
+			sharedFile.fileSize = fileSize;
+			sharedFile.lastModified = lastModified;
+			sharedFiles.put(path, sharedFile);
+		}
+
+		sharedFile.referenceCount++;
+		return sharedFile;
+	}
+
+	/**
+	 * Takes a reference to the mapping of a file read by more than one transfer,
+	 * the file is mapped by the first transfer that needs it
+	 *
+	 * @param sharedFile  file the caller holds a reference to
+	 * @param fileChannel file channel of the caller
+	 * @return mapping of the file or null if the caller is the only reader
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private ByteBuffer acquireMapping(SharedFile sharedFile, FileChannel fileChannel) throws IOException {
+		synchronized (this) {
+			if (sharedFile.referenceCount < 2)
+				return null;
+
+			if (sharedFile.fileContent != null) {
+				sharedFile.mappedReferenceCount++;
+				joinCount++;
+				return sharedFile.fileContent;
+			}
+		}
+
+		ByteBuffer fileContent = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, sharedFile.fileSize);
+
+		synchronized (this) {
+			// another transfer of the file may have mapped it in the meantime
+			if (sharedFile.fileContent != null) {
+				joinCount++;
+			}
+			else {
+				sharedFile.fileContent = fileContent;
+				openCount++;
+			}
+
+			sharedFile.mappedReferenceCount++;
+			return sharedFile.fileContent;
+		}
+	}
+
+	/**
+	 * Releases the reference of a finished transfer. The mapping is dropped with the last transfer
+	 * reading it and the file with the last transfer reading it in any way
+	 *
+	 * @param mapped true if the transfer read the mapping
+	 */
+	private synchronized void release(SharedFile sharedFile, boolean mapped) {
+		// the mapping is unmapped by the garbage collector once no transfer uses it
+		if (mapped && --sharedFile.mappedReferenceCount == 0)
+			sharedFile.fileContent = null;
+
+		if (--sharedFile.referenceCount > 0)
+			return;
+
+		sharedFiles.remove(sharedFile.path, sharedFile);
+	}
+
+	/**
+	 * @return number of files currently read by at least one transfer
+	 */
+	public synchronized int getSharedFileCount() {
+		return sharedFiles.size();
+	}
+
+	/**
+	 * @return number of times a file was mapped because a second transfer read it
+	 */
+	public synchronized long getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * @return number of transfers that read a file mapped for another transfer
+	 */
+	public synchronized long getJoinCount() {
+		return joinCount;
+	}
+}
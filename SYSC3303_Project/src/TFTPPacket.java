@@ -12,6 +12,9 @@ public class TFTPPacket {
 	
 	protected int packetLength;
 	
+	// true if packetBytes is a receive buffer of the PacketBufferPool owned by this packet
+	protected boolean pooled;
+	
 	protected InetAddress remoteAddress;
 	protected int remotePort;
 	
@@ -39,12 +42,40 @@ public class TFTPPacket {
 		parseOPCode();
 	}
 	
+	/**
+	 * Constructor used by TFTPSocket, the packet is parsed in place in a pooled receive buffer
+	 * and owns the buffer until it is released
+	 * 
+	 * @param pooledBytes  receive buffer taken from the PacketBufferPool
+	 * @param packetLength number of bytes of the buffer that form the packet
+	 * @throws TFTPPacketParsingError
+	 */
+	protected TFTPPacket(byte[] pooledBytes, int packetLength, InetAddress remoteAddress, int remotePort) throws TFTPPacketParsingError {
+		this.packetBytes = pooledBytes;
+		this.packetLength = packetLength;
+		this.pooled = true;
+		
+		this.remoteAddress = remoteAddress;
+		this.remotePort = remotePort;
+		
+		parseOPCode();
+	}
+	
+	/**
+	 * Constructor used by the subclasses to parse a received packet.
+	 * A pooled receive buffer moves to the new packet, which is the one to release
+	 * 
+	 * @param tftpPacket received packet
+	 */
 	protected TFTPPacket(TFTPPacket tftpPacket) {
 		this.packetBytes = tftpPacket.packetBytes;
 		this.packetLength = tftpPacket.packetLength;
 		this.opCode = tftpPacket.opCode;
 		this.remoteAddress = tftpPacket.remoteAddress;
 		this.remotePort = tftpPacket.remotePort;
+		
+		this.pooled = tftpPacket.pooled;
+		tftpPacket.pooled = false;
 	}
 	
 	/**
@@ -53,15 +84,15 @@ public class TFTPPacket {
 	 * @throws TFTPPacketParsingError
 	 */
 	private void parseOPCode() throws TFTPPacketParsingError {
-		if (packetBytes.length < 2)
+		if (packetLength < 2)
 			throw new TFTPPacketParsingError("error parsing OPCode");
 		
-		byte[] opCodeBytes = {packetBytes[0], packetBytes[1]};
-		opCode = ByteConversions.bytesToShort(opCodeBytes);
+		opCode = ByteConversions.getShort(packetBytes, 0);
 	}
 	
 	/**
-	 * Getter function for returning packet bytes array
+	 * Getter function for returning packet bytes array.
+	 * Only the first getPacketLength() bytes belong to the packet
 	 * 
 	 * @return block number
 	 */
@@ -73,6 +104,19 @@ public class TFTPPacket {
 		return packetLength;
 	}
 	
+	/**
+	 * Gives the pooled receive buffer of the packet back to the PacketBufferPool.
+	 * The packet bytes must not be read afterwards. Does nothing if the packet does
+	 * not own a pooled buffer, so a packet can be released more than once
+	 */
+	public void release() {
+		if (!pooled)
+			return;
+		
+		pooled = false;
+		PacketBufferPool.getInstance().release(packetBytes);
+	}
+	
 	/**
 	 * Getter function for returning OP code
 	 * 
@@ -106,6 +150,8 @@ public class TFTPPacket {
 			return TFTPPacketType.ACK;
 		else if (opCode == 5)
 			return TFTPPacketType.ERROR;
+		else if (opCode == 6)
+			return TFTPPacketType.OACK;
 		else
 			return TFTPPacketType.INVALID;
 	}
@@ -1,6 +1,7 @@
 import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
 
 /**
@@ -26,6 +27,22 @@ public class TFTPPacketBuilder {
 		return RRQWRQPacket.buildPacket(packetType, fileName, mode, ipAddress, port);	
 	}
 	
+	/**
+	* Returns a datagram packet RRQ/WRQ format with options
+	* 
+	* @param packetType  packet type
+	* @param fileName    name of the file to request from the server
+	* @param mode        mode used to write or read file on the server
+	* @param options     options to request from the server (RFC 2347)
+	* @param ipAddress   IP address where the datagram packet will be sent to
+	* @param port        port where the datagram packet will bent to 
+	*
+	* @return datagram packet in RRQ/WRQ format
+	*/
+	public static RRQWRQPacket getRRQWRQDatagramPacket(TFTPPacketType packetType, String fileName, String mode, Map<String, String> options, InetAddress ipAddress, int port) {
+		return RRQWRQPacket.buildPacket(packetType, fileName, mode, options, ipAddress, port);	
+	}
+	
 	/**
 	* Returns a datagram packet in DATA format
 	* 
@@ -65,6 +82,18 @@ public class TFTPPacketBuilder {
 		return ERRORPacket.buildPacket(errorCode, errorMessage, ipAddress, port);
 	}
 	
+	/**
+	 * Returns a datagram packet in OACK format
+	 * 
+	 * @param options       options accepted by the server
+	 * @param returnAddress return socket address where the datagram packet will be sent to
+	 * 
+	 * @return datagram packet in OACK format
+	 */
+	public static OACKPacket getOACKDatagram(Map<String, String> options, InetAddress ipAddress, int port) {
+		return OACKPacket.buildPacket(options, ipAddress, port);
+	}
+	
 	/**
 	 * Return a stack of DATA datagram packets each containing maximum of 512 bytes of the file
 	 * @param fileData       bytes from the whole file
@@ -73,15 +102,27 @@ public class TFTPPacketBuilder {
 	 * @return stack of datagram packets
 	 */
 	public static Queue<DATAPacket> getStackOfDATADatagramPackets(byte[] fileData, InetAddress ipAddress, int port) {
+		return getStackOfDATADatagramPackets(fileData, DATAPacket.MAX_DATA_SIZE_BYTES, ipAddress, port);
+	}
+	
+	/**
+	 * Return a stack of DATA datagram packets each containing maximum of blockSize bytes of the file
+	 * @param fileData       bytes from the whole file
+	 * @param blockSize      negotiated block size
+	 * @param returnAddress  address where the datagram packets will be sent to 
+	 * 
+	 * @return stack of datagram packets
+	 */
+	public static Queue<DATAPacket> getStackOfDATADatagramPackets(byte[] fileData, int blockSize, InetAddress ipAddress, int port) {
 		Queue<DATAPacket> dataPacketStack = new LinkedList<DATAPacket>();
 		
 		// calculate the number of packets will be required to transfer the whole file
-		int numOfPackets = (fileData.length / DATAPacket.MAX_DATA_SIZE_BYTES) + 1;
+		int numOfPackets = (fileData.length / blockSize) + 1;
 		for (int i = 0; i < numOfPackets; i++) {
 			short blockNumber = (short) (i + 1);
 			
-			int start = i * DATAPacket.MAX_DATA_SIZE_BYTES;
-			int end = (i + 1) * DATAPacket.MAX_DATA_SIZE_BYTES;
+			int start = i * blockSize;
+			int end = (i + 1) * blockSize;
 			
 			if (end > fileData.length)
 				end = fileData.length;
@@ -0,0 +1,166 @@
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * This class reads and writes TFTP packets directly in a ByteBuffer (flyweight).
+ *
+ * Unlike TFTPPacket and its subclasses, a view does not copy the packet bytes and does not
+ * create an object per packet. The same view is pointed at every datagram received into a
+ * buffer, the fields are read from the buffer when they are asked for. Used on the hot path
+ * of the NIO server engine, where DATA and ACK packets are handled without allocating.
+ *
+ * The packet occupies the bytes from 0 to the limit of the buffer.
+ *
+ * @author Group 8
+ */
+public class TFTPPacketView {
+	private ByteBuffer packetBuffer;
+
+	// view of the file data of a DATA packet, reused for every packet
+	private ByteBuffer dataBuffer;
+
+	/**
+	 * Points the view at a packet
+	 *
+	 * @param packetBuffer buffer that holds the packet from index 0 to its limit
+	 * @return this view
+	 */
+	public TFTPPacketView wrap(ByteBuffer packetBuffer) {
+		if (this.packetBuffer != packetBuffer) {
+			this.packetBuffer = packetBuffer;
+			this.dataBuffer = packetBuffer.duplicate();
+		}
+
+		return this;
+	}
+
+	public int getPacketLength() {
+		return packetBuffer.limit();
+	}
+
+	/**
+	 * @return OP code or 0 if the packet is too short to have one
+	 */
+	public short getOPCode() {
+		if (packetBuffer.limit() < 2)
+			return 0;
+
+		return packetBuffer.getShort(0);
+	}
+
+	/**
+	 * Returns TFTP packet type depending the OP code
+	 *
+	 * @return packet type
+	 */
+	public TFTPPacketType getPacketType() {
+		switch (getOPCode()) {
+			case 1: return TFTPPacketType.RRQ;
+			case 2: return TFTPPacketType.WRQ;
+			case DATAPacket.OP_CODE: return TFTPPacketType.DATA;
+			case ACKPacket.OP_CODE: return TFTPPacketType.ACK;
+			case ERRORPacket.OP_CODE: return TFTPPacketType.ERROR;
+			case OACKPacket.OP_CODE: return TFTPPacketType.OACK;
+			default: return TFTPPacketType.INVALID;
+		}
+	}
+
+	/**
+	 * @return true if the packet is long enough to hold a block number or an error code
+	 */
+	public boolean hasBlockNumber() {
+		return packetBuffer.limit() >= 4;
+	}
+
+	/**
+	 * @return block number of a DATA or ACK packet
+	 */
+	public short getBlockNumber() {
+		return packetBuffer.getShort(2);
+	}
+
+	/**
+	 * @return error code of an ERROR packet
+	 */
+	public short getErrorCode() {
+		return packetBuffer.getShort(2);
+	}
+
+	/**
+	 * Reads the error message of an ERROR packet, only used when a transfer ends
+	 *
+	 * @return error message
+	 */
+	public String getErrorMessage() {
+		int end = 4;
+		while (end < packetBuffer.limit() && packetBuffer.get(end) != 0)
+			end++;
+
+		byte[] errorMessageBytes = new byte[Math.max(0, end - 4)];
+		for (int i = 0; i < errorMessageBytes.length; i++)
+			errorMessageBytes[i] = packetBuffer.get(4 + i);
+
+		return ByteConversions.bytesToString(errorMessageBytes);
+	}
+
+	/**
+	 * @return number of file data bytes in a DATA packet
+	 */
+	public int getDataLength() {
+		return Math.max(0, packetBuffer.limit() - DATAPacket.HEADER_LENGTH);
+	}
+
+	/**
+	 * Returns the file data of a DATA packet without copying it.
+	 * The returned buffer is reused, it is only valid until the view is pointed at the next packet
+	 *
+	 * @return buffer positioned at the first byte of file data
+	 */
+	public ByteBuffer getDataBuffer() {
+		dataBuffer.limit(packetBuffer.limit());
+		dataBuffer.position(Math.min(DATAPacket.HEADER_LENGTH, packetBuffer.limit()));
+		return dataBuffer;
+	}
+
+	/**
+	 * Copies the packet into a TFTPPacket, for the packets that are not on the hot path
+	 *
+	 * @param remoteAddress address the packet was received from
+	 * @param remotePort    port the packet was received from
+	 * @return TFTP packet
+	 * @throws TFTPPacketParsingError
+	 */
+	public TFTPPacket toTFTPPacket(InetAddress remoteAddress, int remotePort) throws TFTPPacketParsingError {
+		byte[] packetBytes = new byte[packetBuffer.limit()];
+		for (int i = 0; i < packetBytes.length; i++)
+			packetBytes[i] = packetBuffer.get(i);
+
+		return new TFTPPacket(packetBytes, 0, packetBytes.length, remoteAddress, remotePort);
+	}
+
+	/**
+	 * Writes an ACK packet into a buffer and flips it so that it can be sent
+	 *
+	 * @param buffer      buffer with at least 4 bytes of capacity
+	 * @param blockNumber block number to acknowledge
+	 */
+	public static void putACKPacket(ByteBuffer buffer, short blockNumber) {
+		buffer.clear();
+		buffer.putShort(ACKPacket.OP_CODE);
+		buffer.putShort(blockNumber);
+		buffer.flip();
+	}
+
+	/**
+	 * Writes the header of a DATA packet into a buffer and flips it so that it can be sent
+	 * in front of the file data with a gathering write
+	 *
+	 * @param buffer      buffer with at least 4 bytes of capacity
+	 * @param blockNumber block number of the DATA packet
+	 */
+	public static void putDATAHeader(ByteBuffer buffer, short blockNumber) {
+		buffer.clear();
+		DATAPacket.putHeader(buffer, blockNumber);
+		buffer.flip();
+	}
+}
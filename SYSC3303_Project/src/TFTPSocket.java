@@ -8,11 +8,23 @@ public class TFTPSocket {
 	private DatagramSocket datagramSocket;
 	private ErrorHandler errorHandler;
 	
+	// received packets are parsed in place in buffers of the shared pool, see release
+	private PacketBufferPool bufferPool = PacketBufferPool.getInstance();
+	// datagram packets are reused, only their buffer and address change
+	private DatagramPacket receiveDatagramPacket = new DatagramPacket(new byte[0], 0);
+	private DatagramPacket sendDatagramPacket = new DatagramPacket(new byte[0], 0);
+	
+	// length of the largest packet that can be received, it grows when a larger block size is negotiated
+	private int maxPacketLength = NetworkConfig.DATAGRAM_PACKET_MAX_LEN;
+	// receive timeout in milliseconds, 0 waits forever
+	private int timeout;
+	
 	public TFTPSocket(int timeout) {
 		try {
 			datagramSocket = new DatagramSocket();
 			if (timeout > 0) {
 				datagramSocket.setSoTimeout(timeout);
+				this.timeout = timeout;
 			}
 		} catch (SocketException e) {
 			System.err.println(Globals.getErrorMessage("TFTPSocket", "cannot create datagram socket on unspecified port"));
@@ -28,6 +40,7 @@ public class TFTPSocket {
 			datagramSocket = new DatagramSocket(port);
 			if (timeout > 0) {
 				datagramSocket.setSoTimeout(timeout);
+				this.timeout = timeout;
 			}
 		} catch (SocketException e) {
 			System.err.println(Globals.getErrorMessage("TFTPSocket", String.format("cannot create datagram socket on port %d", port)));
@@ -37,42 +50,66 @@ public class TFTPSocket {
 	}
 	
 	public void send(TFTPPacket tftpPacket) {
-		byte[] tftpPacketBytes = tftpPacket.getPacketBytes();
-		DatagramPacket sendDatagramPacket = new DatagramPacket(tftpPacketBytes, tftpPacketBytes.length, tftpPacket.getRemoteAddress(), tftpPacket.getRemotePort());
-		
 		try {
-			datagramSocket.send(sendDatagramPacket);
+			synchronized (sendDatagramPacket) {
+				sendDatagramPacket.setData(tftpPacket.getPacketBytes(), 0, tftpPacket.getPacketLength());
+				sendDatagramPacket.setAddress(tftpPacket.getRemoteAddress());
+				sendDatagramPacket.setPort(tftpPacket.getRemotePort());
+				datagramSocket.send(sendDatagramPacket);
+			}
 		} catch (IOException e) {
+			// another thread closed the socket, the packet is not needed anymore
+			if (datagramSocket.isClosed()) {
+				Log.verbose("TFTPSocket", "packet dropped, the socket was closed");
+				return;
+			}
+			
 			System.err.println(Globals.getErrorMessage("TFTPSocket", "oops... the connection broke"));
 			e.printStackTrace();
 			System.exit(-1);
 		}
 	}
 	
+	/**
+	 * Receives a packet into a buffer acquired from the shared PacketBufferPool.
+	 * The packet owns the buffer, it should be given back with release once it is no longer read.
+	 * A packet that is never released is garbage collected
+	 * 
+	 * @return received packet or null if the socket was shut down or the packet cannot be parsed
+	 * @throws SocketTimeoutException
+	 * @throws IOException
+	 */
 	public TFTPPacket receive() throws SocketTimeoutException, IOException {
 		TFTPPacket tftpPacket = null;
 		
-		byte[] receiveBytes = new byte[NetworkConfig.DATAGRAM_PACKET_MAX_LEN];
-		DatagramPacket receiveDatagramPacket = new DatagramPacket(receiveBytes, receiveBytes.length);
-		
-		if (receiveDatagramPacket.getLength() == 0) {
+		if (maxPacketLength == 0) {
 			close();
 			return null;
 		}
-					
-		datagramSocket.receive(receiveDatagramPacket);
+		
+		byte[] receiveBytes = bufferPool.acquire(maxPacketLength);
+		receiveDatagramPacket.setData(receiveBytes, 0, maxPacketLength);
+		
+		try {
+			datagramSocket.receive(receiveDatagramPacket);
+		} catch (IOException e) {
+			bufferPool.release(receiveBytes);
+			throw e;
+		}
 
 		// shutdown signal
 		// if data packet is empty that means it should shutdown
 		if (receiveDatagramPacket.getLength() == 0) {
+			bufferPool.release(receiveBytes);
 			datagramSocket.close();
 			return null;
 		}
 		
 		try {
-			tftpPacket =  new TFTPPacket(receiveDatagramPacket.getData(), receiveDatagramPacket.getOffset(), 
-				receiveDatagramPacket.getLength(), receiveDatagramPacket.getAddress(), receiveDatagramPacket.getPort());
+			tftpPacket =  new TFTPPacket(receiveBytes, receiveDatagramPacket.getLength(), 
+				receiveDatagramPacket.getAddress(), receiveDatagramPacket.getPort());
 		} catch (TFTPPacketParsingError e) {
+			bufferPool.release(receiveBytes);
 			System.err.println(Globals.getErrorMessage("TFTPSocket", "cannot parse TFTP packet"));
 			errorHandler.sendIllegalOperationErrorPacket("cannot parse TFTP packet", receiveDatagramPacket.getAddress(), datagramSocket.getPort());
 		}
@@ -80,6 +117,44 @@ public class TFTPSocket {
 		return tftpPacket;
 	}
 	
+	/**
+	 * Gives the receive buffer of a packet back to the shared PacketBufferPool so that it
+	 * can be reused by the next receive of any socket. The packet must not be read afterwards
+	 * 
+	 * @param tftpPacket packet returned by receive or, once it was parsed, the DATA/ACK/... packet
+	 *                   parsed from it which takes over the buffer, may be null
+	 */
+	public void release(TFTPPacket tftpPacket) {
+		if (tftpPacket != null)
+			tftpPacket.release();
+	}
+	
+	/**
+	 * Sets how long receive waits for a packet before it throws SocketTimeoutException
+	 * 
+	 * @param timeout timeout in milliseconds, 0 waits forever
+	 */
+	public void setTimeout(int timeout) {
+		if (timeout == this.timeout)
+			return;
+		
+		try {
+			datagramSocket.setSoTimeout(timeout);
+			this.timeout = timeout;
+		} catch (SocketException e) {
+			System.err.println(Globals.getErrorMessage("TFTPSocket", "cannot set socket timeout"));
+		}
+	}
+	
+	/**
+	 * Sets the length of the largest packet that can be received
+	 * 
+	 * @param maxPacketLength block size + 4 bytes of header
+	 */
+	public void setMaxPacketLength(int maxPacketLength) {
+		this.maxPacketLength = maxPacketLength;
+	}
+	
 	public boolean isClosed() {
 		return datagramSocket.isClosed();
 	}
@@ -0,0 +1,224 @@
+/**
+ * This class is a hashed timing wheel, the timer facility of a NIO event loop.
+ *
+ * Time is divided in ticks (NetworkConfig.TIMING_WHEEL_TICK). The wheel is an array of buckets,
+ * a timeout that expires in a given tick is kept in the bucket of that tick modulo the number of
+ * buckets, with the number of times the wheel has to go around before it expires. Each bucket is
+ * a doubly linked list of timeouts, so scheduling and cancelling a timeout take constant time
+ * whatever the number of timeouts. Every tick the event loop advances the wheel to the current time
+ * and the timeouts of the buckets it passed that have no rounds left are fired.
+ *
+ * A timeout belongs to its owner (a transfer session) and is rescheduled every time it is reset,
+ * the wheel allocates nothing after it is created. The wheel is not thread safe, it is only used by
+ * the thread of the event loop that owns it.
+ *
+ * @author Group 8
+ */
+public class TimingWheel {
+	/**
+	 * This interface is called when a timeout expires
+	 */
+	public interface TimeoutListener {
+		/**
+		 * @param now current time in milliseconds
+		 */
+		public void onTimeout(long now);
+	}
+
+	/**
+	 * This class is a timeout that can be scheduled on a wheel any number of times
+	 */
+	public static class Timeout {
+		private TimeoutListener listener;
+
+		// bucket the timeout is linked in, null if it is not scheduled
+		private Bucket bucket;
+		private Timeout previous;
+		private Timeout next;
+		private long remainingRounds;
+		private long deadline;
+
+		public Timeout(TimeoutListener listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * @return true if the timeout is scheduled and did not expire yet
+		 */
+		public boolean isScheduled() {
+			return bucket != null;
+		}
+
+		/**
+		 * @return time in milliseconds the timeout expires at
+		 */
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+
+	/**
+	 * This class is the list of timeouts of a tick
+	 */
+	private static class Bucket {
+		Timeout head;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.previous = null;
+			timeout.next = head;
+
+			if (head != null)
+				head.previous = timeout;
+			head = timeout;
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.previous != null)
+				timeout.previous.next = timeout.next;
+			else
+				head = timeout.next;
+
+			if (timeout.next != null)
+				timeout.next.previous = timeout.previous;
+
+			timeout.bucket = null;
+			timeout.previous = null;
+			timeout.next = null;
+		}
+	}
+
+	private Bucket[] buckets;
+	private int mask;
+	private long tickDuration;
+
+	private long startTime;
+	// last tick whose bucket was processed
+	private long currentTick;
+
+	// timeouts that expired during the tick being processed, they are fired one at a time
+	// so that a listener can cancel or reschedule any other timeout
+	private Bucket expiredTimeouts;
+
+	private int scheduledCount;
+	private long expiredCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tickDuration    duration of a tick in milliseconds
+	 * @param numberOfBuckets number of buckets, rounded up to a power of two
+	 * @param now             current time in milliseconds
+	 */
+	public TimingWheel(long tickDuration, int numberOfBuckets, long now) {
+		int bucketCount = 1;
+		while (bucketCount < numberOfBuckets)
+			bucketCount <<= 1;
+
+		buckets = new Bucket[bucketCount];
+		for (int i = 0; i < bucketCount; i++)
+			buckets[i] = new Bucket();
+
+		this.mask = bucketCount - 1;
+		this.tickDuration = tickDuration;
+		this.startTime = now;
+
+		expiredTimeouts = new Bucket();
+	}
+
+	/**
+	 * Schedules a timeout, a timeout that is already scheduled is moved to the new deadline.
+	 * A deadline that already passed expires on the next tick
+	 *
+	 * @param timeout  timeout to schedule
+	 * @param deadline time in milliseconds the timeout expires at
+	 */
+	public void schedule(Timeout timeout, long deadline) {
+		cancel(timeout);
+
+		// a timeout never expires before its deadline, it may expire up to a tick after it
+		long expirationTick = Math.max(currentTick + 1, (deadline - startTime + tickDuration - 1) / tickDuration);
+
+		timeout.deadline = deadline;
+		timeout.remainingRounds = (expirationTick - currentTick - 1) / buckets.length;
+		buckets[(int) (expirationTick & mask)].add(timeout);
+		scheduledCount++;
+	}
+
+	/**
+	 * Cancels a timeout, does nothing if it is not scheduled
+	 *
+	 * @param timeout timeout to cancel
+	 */
+	public void cancel(Timeout timeout) {
+		if (timeout.bucket == null)
+			return;
+
+		timeout.bucket.remove(timeout);
+		scheduledCount--;
+	}
+
+	/**
+	 * Processes the ticks up to the current time and fires the timeouts that expired
+	 *
+	 * @param now current time in milliseconds
+	 */
+	public void advance(long now) {
+		long nowTick = (now - startTime) / tickDuration;
+
+		while (currentTick < nowTick) {
+			// nothing can expire, skip the empty ticks
+			if (scheduledCount == 0) {
+				currentTick = nowTick;
+				break;
+			}
+
+			currentTick++;
+
+			Timeout timeout = buckets[(int) (currentTick & mask)].head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+
+				if (timeout.remainingRounds > 0) {
+					timeout.remainingRounds--;
+				}
+				else {
+					timeout.bucket.remove(timeout);
+					expiredTimeouts.add(timeout);
+				}
+
+				timeout = next;
+			}
+
+			while ((timeout = expiredTimeouts.head) != null) {
+				expiredTimeouts.remove(timeout);
+				scheduledCount--;
+				expiredCount++;
+
+				timeout.listener.onTimeout(now);
+			}
+		}
+	}
+
+	/**
+	 * @param now current time in milliseconds
+	 * @return time in milliseconds until the next tick, used as the select timeout of the event loop
+	 */
+	public long getTimeUntilNextTick(long now) {
+		return Math.max(1, startTime + (currentTick + 1) * tickDuration - now);
+	}
+
+	/**
+	 * @return number of timeouts scheduled
+	 */
+	public int getScheduledCount() {
+		return scheduledCount;
+	}
+
+	/**
+	 * @return number of timeouts that expired
+	 */
+	public long getExpiredCount() {
+		return expiredCount;
+	}
+}
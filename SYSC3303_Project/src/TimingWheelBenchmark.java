@@ -0,0 +1,184 @@
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a benchmark that compares the TimingWheel of the NIO event loops
+ * with a ScheduledThreadPoolExecutor.
+ *
+ * For each number of timers it measures the three operations a transfer does on its timers:
+ * scheduling a timer, moving it to a new deadline when a packet arrives and cancelling it when
+ * the transfer ends. It then schedules the timers over one second and measures how late they fire.
+ * Deadlines are spread like retransmission timeouts, between NetworkConfig.MIN_RETRANSMIT_TIMEOUT
+ * and NetworkConfig.TIMEOUT_TIME. Every run is done twice and the second run is printed so that
+ * the code is compiled by the JIT.
+ *
+ * Usage: TimingWheelBenchmark [number of timers...]
+ *
+ * @author Group 8
+ */
+public class TimingWheelBenchmark {
+	private int numberOfTimers;
+	private long[] delays;
+
+	/**
+	 * This class holds the measurements of a single run
+	 */
+	private class BenchmarkResult {
+		String timerFacility;
+		double scheduleNanos;
+		double rescheduleNanos;
+		double cancelNanos;
+		long fireMillis;
+		double meanLatenessMillis;
+	}
+
+	public TimingWheelBenchmark(int numberOfTimers) {
+		this.numberOfTimers = numberOfTimers;
+
+		Random random = new Random(42);
+		delays = new long[numberOfTimers];
+		for (int i = 0; i < numberOfTimers; i++)
+			delays[i] = NetworkConfig.MIN_RETRANSMIT_TIMEOUT + random.nextInt(NetworkConfig.TIMEOUT_TIME - NetworkConfig.MIN_RETRANSMIT_TIMEOUT);
+	}
+
+	/**
+	 * Runs the operations on a timing wheel, the wheel is advanced by the benchmark thread
+	 * like an event loop does
+	 */
+	private BenchmarkResult runTimingWheel() throws InterruptedException {
+		BenchmarkResult result = new BenchmarkResult();
+		result.timerFacility = "TimingWheel";
+
+		long now = System.currentTimeMillis();
+		TimingWheel timingWheel = new TimingWheel(NetworkConfig.TIMING_WHEEL_TICK, NetworkConfig.TIMING_WHEEL_SIZE, now);
+
+		long[] expiredCount = new long[1];
+		AtomicLong totalLateness = new AtomicLong();
+		TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[numberOfTimers];
+		for (int i = 0; i < numberOfTimers; i++) {
+			TimingWheel.Timeout[] timeout = new TimingWheel.Timeout[1];
+			timeout[0] = new TimingWheel.Timeout(firedAt -> {
+				expiredCount[0]++;
+				totalLateness.addAndGet(System.currentTimeMillis() - timeout[0].getDeadline());
+			});
+			timeouts[i] = timeout[0];
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++)
+			timingWheel.schedule(timeouts[i], now + delays[i]);
+		result.scheduleNanos = (System.nanoTime() - start) / (double) numberOfTimers;
+
+		start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++)
+			timingWheel.schedule(timeouts[i], now + delays[numberOfTimers - 1 - i]);
+		result.rescheduleNanos = (System.nanoTime() - start) / (double) numberOfTimers;
+
+		start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++)
+			timingWheel.cancel(timeouts[i]);
+		result.cancelNanos = (System.nanoTime() - start) / (double) numberOfTimers;
+
+		// timers fire over one second
+		now = System.currentTimeMillis();
+		for (int i = 0; i < numberOfTimers; i++)
+			timingWheel.schedule(timeouts[i], now + delays[i] % 1000);
+
+		start = System.nanoTime();
+		while (expiredCount[0] < numberOfTimers) {
+			Thread.sleep(timingWheel.getTimeUntilNextTick(System.currentTimeMillis()));
+			timingWheel.advance(System.currentTimeMillis());
+		}
+		result.fireMillis = (System.nanoTime() - start) / 1000000;
+		result.meanLatenessMillis = totalLateness.get() / (double) numberOfTimers;
+
+		return result;
+	}
+
+	/**
+	 * Runs the operations on a ScheduledThreadPoolExecutor with one thread,
+	 * cancelled tasks are removed from its queue like cancelled timeouts are removed from the wheel
+	 */
+	private BenchmarkResult runScheduledThreadPoolExecutor() throws InterruptedException {
+		BenchmarkResult result = new BenchmarkResult();
+		result.timerFacility = "ScheduledThreadPool";
+
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+		executor.setRemoveOnCancelPolicy(true);
+
+		Runnable task = () -> {};
+		ScheduledFuture<?>[] futures = new ScheduledFuture<?>[numberOfTimers];
+
+		long start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++)
+			futures[i] = executor.schedule(task, delays[i], TimeUnit.MILLISECONDS);
+		result.scheduleNanos = (System.nanoTime() - start) / (double) numberOfTimers;
+
+		// a task cannot be moved, it is cancelled and scheduled again
+		start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++) {
+			futures[i].cancel(false);
+			futures[i] = executor.schedule(task, delays[numberOfTimers - 1 - i], TimeUnit.MILLISECONDS);
+		}
+		result.rescheduleNanos = (System.nanoTime() - start) / (double) numberOfTimers;
+
+		start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++)
+			futures[i].cancel(false);
+		result.cancelNanos = (System.nanoTime() - start) / (double) numberOfTimers;
+
+		// timers fire over one second
+		CountDownLatch fired = new CountDownLatch(numberOfTimers);
+		AtomicLong totalLateness = new AtomicLong();
+		long now = System.currentTimeMillis();
+
+		start = System.nanoTime();
+		for (int i = 0; i < numberOfTimers; i++) {
+			long deadline = now + delays[i] % 1000;
+			executor.schedule(() -> {
+				totalLateness.addAndGet(System.currentTimeMillis() - deadline);
+				fired.countDown();
+			}, deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+		fired.await();
+		result.fireMillis = (System.nanoTime() - start) / 1000000;
+		result.meanLatenessMillis = totalLateness.get() / (double) numberOfTimers;
+
+		executor.shutdown();
+		return result;
+	}
+
+	private void printResult(BenchmarkResult result) {
+		System.out.println(String.format("%-20s %10d %14.1f %16.1f %12.1f %10d %14.2f",
+				result.timerFacility, numberOfTimers, result.scheduleNanos, result.rescheduleNanos,
+				result.cancelNanos, result.fireMillis, result.meanLatenessMillis));
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] timerCounts = { 10000, 100000 };
+		if (args.length > 0) {
+			timerCounts = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				timerCounts[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("\nSYSC 3033 TFTP Server Timer Benchmark - TimingWheel vs ScheduledThreadPoolExecutor");
+		System.out.println(String.format("%-20s %10s %14s %16s %12s %10s %14s",
+				"timers", "count", "schedule(ns)", "reschedule(ns)", "cancel(ns)", "fire(ms)", "late(ms)"));
+
+		for (int numberOfTimers : timerCounts) {
+			TimingWheelBenchmark benchmark = new TimingWheelBenchmark(numberOfTimers);
+
+			// the first run warms up the JIT
+			benchmark.runTimingWheel();
+			benchmark.printResult(benchmark.runTimingWheel());
+
+			benchmark.runScheduledThreadPoolExecutor();
+			benchmark.printResult(benchmark.runScheduledThreadPoolExecutor());
+		}
+	}
+}
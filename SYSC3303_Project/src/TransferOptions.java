@@ -0,0 +1,238 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class holds the options negotiated for a single transfer.
+ *
+ * The server uses negotiate() to decide which of the requested options it accepts,
+ * the accepted options are sent back to the client in an OACK packet.
+ * The client uses fromOACKPacket() to read the options the server accepted.
+ *
+ * Supported options:
+ * 		- blksize (RFC 2348)
+ * 		- windowsize (RFC 7440)
+ * 		- tsize and timeout (RFC 2349)
+ *
+ * @author Group 8
+ */
+public class TransferOptions {
+	public static final String BLOCK_SIZE_OPTION = "blksize";
+	public static final String WINDOW_SIZE_OPTION = "windowsize";
+	public static final String TRANSFER_SIZE_OPTION = "tsize";
+	public static final String TIMEOUT_OPTION = "timeout";
+
+	private int blockSize = NetworkConfig.DEFAULT_BLOCK_SIZE;
+	private int windowSize = NetworkConfig.DEFAULT_WINDOW_SIZE;
+
+	// size of the file in bytes, -1 if it is unknown
+	private long transferSize = -1;
+	// retransmission timeout in seconds, 0 if it was not negotiated
+	private int timeout;
+
+	// options to be sent in the OACK packet
+	private Map<String, String> acceptedOptions = new LinkedHashMap<String, String>();
+
+	/**
+	 * Returns the options the server accepts from a request.
+	 * Unknown or invalid options are ignored as required by RFC 2347
+	 *
+	 * @param requestPacket RRQ or WRQ packet
+	 * @return negotiated options
+	 */
+	public static TransferOptions negotiate(RRQWRQPacket requestPacket) {
+		TransferOptions transferOptions = new TransferOptions();
+		Map<String, String> requestedOptions = requestPacket.getOptions();
+
+		Integer requestedBlockSize = parseInt(requestedOptions.get(BLOCK_SIZE_OPTION));
+		if (requestedBlockSize != null && requestedBlockSize >= NetworkConfig.MIN_BLOCK_SIZE) {
+			// a block size larger than the server supports is answered with the largest supported size
+			transferOptions.blockSize = Math.min(requestedBlockSize, NetworkConfig.MAX_BLOCK_SIZE);
+			transferOptions.acceptedOptions.put(BLOCK_SIZE_OPTION, Integer.toString(transferOptions.blockSize));
+		}
+
+		Integer requestedWindowSize = parseInt(requestedOptions.get(WINDOW_SIZE_OPTION));
+		if (requestedWindowSize != null && requestedWindowSize >= 1 && requestedWindowSize <= 65535) {
+			// a window size larger than the server allows is answered with the largest allowed size
+			transferOptions.windowSize = Math.min(requestedWindowSize, NetworkConfig.MAX_WINDOW_SIZE);
+			transferOptions.acceptedOptions.put(WINDOW_SIZE_OPTION, Integer.toString(transferOptions.windowSize));
+		}
+
+		// the client sends the file size in a WRQ and 0 in a RRQ, the server answers a RRQ
+		// with the size of the file once it is opened (see setTransferSize)
+		Long requestedTransferSize = parseLong(requestedOptions.get(TRANSFER_SIZE_OPTION));
+		if (requestedTransferSize != null && requestedTransferSize >= 0) {
+			if (requestPacket.getPacketType() == TFTPPacketType.WRQ)
+				transferOptions.transferSize = requestedTransferSize;
+			transferOptions.acceptedOptions.put(TRANSFER_SIZE_OPTION, Long.toString(requestedTransferSize));
+		}
+
+		// the timeout is accepted as requested, the server cannot choose another value
+		Integer requestedTimeout = parseInt(requestedOptions.get(TIMEOUT_OPTION));
+		if (requestedTimeout != null && requestedTimeout >= 1 && requestedTimeout <= 255) {
+			transferOptions.timeout = requestedTimeout;
+			transferOptions.acceptedOptions.put(TIMEOUT_OPTION, Integer.toString(requestedTimeout));
+		}
+
+		return transferOptions;
+	}
+
+	/**
+	 * Returns the options accepted by the server in an OACK packet
+	 *
+	 * @param oackPacket       OACK packet received from the server
+	 * @param requestedOptions options sent in the request
+	 * @return negotiated options
+	 * @throws TFTPPacketParsingError if the server acknowledged an option that was not requested
+	 * 		   or a value that is not allowed
+	 */
+	public static TransferOptions fromOACKPacket(OACKPacket oackPacket, Map<String, String> requestedOptions) throws TFTPPacketParsingError {
+		TransferOptions transferOptions = new TransferOptions();
+
+		for (Map.Entry<String, String> option : oackPacket.getOptions().entrySet()) {
+			String requestedValue = requestedOptions.get(option.getKey());
+
+			if (requestedValue == null)
+				throw new TFTPPacketParsingError(String.format("option %s was not requested", option.getKey()));
+
+			if (option.getKey().equals(BLOCK_SIZE_OPTION)) {
+				Integer blockSize = parseInt(option.getValue());
+
+				// the server may only lower the requested block size
+				if (blockSize == null || blockSize < NetworkConfig.MIN_BLOCK_SIZE || blockSize > Integer.parseInt(requestedValue))
+					throw new TFTPPacketParsingError(String.format("invalid blksize option value %s", option.getValue()));
+
+				transferOptions.blockSize = blockSize;
+			}
+			else if (option.getKey().equals(WINDOW_SIZE_OPTION)) {
+				Integer windowSize = parseInt(option.getValue());
+
+				// the server may only lower the requested window size
+				if (windowSize == null || windowSize < 1 || windowSize > Integer.parseInt(requestedValue))
+					throw new TFTPPacketParsingError(String.format("invalid windowsize option value %s", option.getValue()));
+
+				transferOptions.windowSize = windowSize;
+			}
+			else if (option.getKey().equals(TRANSFER_SIZE_OPTION)) {
+				Long transferSize = parseLong(option.getValue());
+
+				if (transferSize == null || transferSize < 0)
+					throw new TFTPPacketParsingError(String.format("invalid tsize option value %s", option.getValue()));
+
+				transferOptions.transferSize = transferSize;
+			}
+			else if (option.getKey().equals(TIMEOUT_OPTION)) {
+				// the server must acknowledge the requested timeout unchanged
+				if (!option.getValue().equals(requestedValue))
+					throw new TFTPPacketParsingError(String.format("invalid timeout option value %s", option.getValue()));
+
+				transferOptions.timeout = Integer.parseInt(requestedValue);
+			}
+
+			transferOptions.acceptedOptions.put(option.getKey(), option.getValue());
+		}
+
+		return transferOptions;
+	}
+
+	/**
+	 * Returns the options a client should request
+	 *
+	 * @param blockSize  requested block size
+	 * @param windowSize requested window size
+	 * @param transferSize size of the file for a WRQ, 0 for a RRQ to ask the server for the size, -1 to not request it
+	 * @param timeout    requested retransmission timeout in seconds, 0 to not request it
+	 * @return map of option names to option values, empty if the defaults are used
+	 */
+	public static Map<String, String> requestOptions(int blockSize, int windowSize, long transferSize, int timeout) {
+		Map<String, String> options = new LinkedHashMap<String, String>();
+
+		if (blockSize != NetworkConfig.DEFAULT_BLOCK_SIZE)
+			options.put(BLOCK_SIZE_OPTION, Integer.toString(blockSize));
+
+		if (windowSize != NetworkConfig.DEFAULT_WINDOW_SIZE)
+			options.put(WINDOW_SIZE_OPTION, Integer.toString(windowSize));
+
+		if (transferSize >= 0)
+			options.put(TRANSFER_SIZE_OPTION, Long.toString(transferSize));
+
+		if (timeout > 0)
+			options.put(TIMEOUT_OPTION, Integer.toString(timeout));
+
+		return options;
+	}
+
+	private static Integer parseInt(String value) {
+		if (value == null)
+			return null;
+
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Long parseLong(String value) {
+		if (value == null)
+			return null;
+
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the size of the file sent for a RRQ, the size is only sent to the client
+	 * if it requested the tsize option
+	 *
+	 * @param transferSize size of the file in bytes
+	 */
+	public void setTransferSize(long transferSize) {
+		this.transferSize = transferSize;
+
+		if (acceptedOptions.containsKey(TRANSFER_SIZE_OPTION))
+			acceptedOptions.put(TRANSFER_SIZE_OPTION, Long.toString(transferSize));
+	}
+
+	/**
+	 * @return true if an OACK packet has to be sent
+	 */
+	public boolean hasAcceptedOptions() {
+		return !acceptedOptions.isEmpty();
+	}
+
+	public Map<String, String> getAcceptedOptions() {
+		return acceptedOptions;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * @return size of the file in bytes, -1 if it is unknown
+	 */
+	public long getTransferSize() {
+		return transferSize;
+	}
+
+	/**
+	 * @return negotiated retransmission timeout in seconds, 0 if the option was not negotiated
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return length of a full DATA packet, a shorter DATA packet ends the transfer
+	 */
+	public int getMaxPacketLength() {
+		return blockSize + 4;
+	}
+}
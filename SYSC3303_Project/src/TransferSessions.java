@@ -0,0 +1,44 @@
+import java.util.List;
+
+/**
+ * This class lists the transfers of the active session table over JMX (see TransferSessionsMXBean)
+ *
+ * @author Group 8
+ */
+public class TransferSessions implements TransferSessionsMXBean {
+	private ActiveSessionTable activeSessionTable;
+
+	public TransferSessions(ActiveSessionTable activeSessionTable) {
+		this.activeSessionTable = activeSessionTable;
+	}
+
+	@Override
+	public List<TransferStatus> getActiveSessions() {
+		return activeSessionTable.getTransferStatuses();
+	}
+
+	@Override
+	public int getActiveSessionCount() {
+		return activeSessionTable.getActiveSessionCount();
+	}
+
+	@Override
+	public long getSuppressedDuplicateCount() {
+		return activeSessionTable.getSuppressedCount();
+	}
+
+	@Override
+	public boolean setEgressWeight(String remoteTID, int weight) {
+		boolean found = false;
+
+		// a client reads and writes with the same transfer ID at most once at a time
+		for (TransferStatus status : activeSessionTable.getTransferStatuses()) {
+			if (status.getRemoteTID().equals(remoteTID)) {
+				status.setEgressWeight(weight);
+				found = true;
+			}
+		}
+
+		return found;
+	}
+}
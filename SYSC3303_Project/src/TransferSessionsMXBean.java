@@ -0,0 +1,34 @@
+import java.util.List;
+
+/**
+ * This interface lists the transfers the server is running over JMX,
+ * registered as SYSC3303.TFTP:type=TransferSessions
+ *
+ * @author Group 8
+ */
+public interface TransferSessionsMXBean {
+	/**
+	 * @return remote transfer ID, file name, current block, bytes moved, round trip time
+	 *         and number of retransmissions of each running transfer
+	 */
+	public List<TransferStatus> getActiveSessions();
+
+	/**
+	 * @return number of transfers running
+	 */
+	public int getActiveSessionCount();
+
+	/**
+	 * @return number of requests dropped because their transfer was already running
+	 */
+	public long getSuppressedDuplicateCount();
+
+	/**
+	 * Changes the share of the upload bandwidth of a running transfer in the egress scheduler
+	 *
+	 * @param remoteTID address and port of the client as listed by getActiveSessions
+	 * @param weight    share of the bandwidth compared to the other transfers, at least 1
+	 * @return false if no transfer of the client is running
+	 */
+	public boolean setEgressWeight(String remoteTID, int weight);
+}
@@ -0,0 +1,156 @@
+import java.net.InetAddress;
+
+/**
+ * This class is the progress of a running transfer, listed by TransferSessionsMXBean.
+ *
+ * The transfer updates it as it sends and receives blocks and other threads read it, the
+ * values read can be a packet behind. Only the thread running the transfer writes the fields,
+ * except the egress weight that operators can change while the transfer runs.
+ *
+ * @author Group 8
+ */
+public class TransferStatus {
+	private InetAddress remoteAddress;
+	private int remotePort;
+	private TFTPPacketType transferType;
+	private String fileName;
+	private long startTime;
+
+	// RRQ: last block sent, WRQ: last block received in order
+	private volatile long currentBlock;
+	private volatile long bytesTransferred;
+	private volatile long retransmitCount;
+	// round trip times of the transfer, null until the transfer starts
+	private volatile RetransmissionTimer retransmissionTimer;
+	// RRQ: share of the upload bandwidth in the egress scheduler, and the flow it applies to,
+	// null until the DATA packets are sent or if the egress scheduler is disabled
+	private volatile int egressWeight = NetworkConfig.EGRESS_DEFAULT_WEIGHT;
+	private volatile EgressScheduler.Flow egressFlow;
+
+	/**
+	 * Constructor
+	 *
+	 * @param remoteAddress address of the client
+	 * @param remotePort    port of the client (its transfer ID)
+	 * @param transferType  RRQ or WRQ
+	 * @param fileName      file read or written
+	 */
+	public TransferStatus(InetAddress remoteAddress, int remotePort, TFTPPacketType transferType, String fileName) {
+		this.remoteAddress = remoteAddress;
+		this.remotePort = remotePort;
+		this.transferType = transferType;
+		this.fileName = fileName;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * RRQ: records a DATA packet sent
+	 *
+	 * @param blockIndex index of the block in the file starting at 1
+	 * @param dataLength bytes of file data of the block
+	 * @param retransmit true if the block was sent before
+	 */
+	public void blockSent(long blockIndex, int dataLength, boolean retransmit) {
+		if (retransmit) {
+			retransmitCount++;
+			return;
+		}
+
+		currentBlock = blockIndex;
+		bytesTransferred += dataLength;
+	}
+
+	/**
+	 * WRQ: records a DATA packet received in order
+	 *
+	 * @param blockIndex index of the block in the file starting at 1
+	 * @param dataLength bytes of file data of the block
+	 */
+	public void blockReceived(long blockIndex, int dataLength) {
+		currentBlock = blockIndex;
+		bytesTransferred += dataLength;
+	}
+
+	/**
+	 * WRQ: records an ACK packet sent again because the client did not move forward
+	 */
+	public void acknowledgementResent() {
+		retransmitCount++;
+	}
+
+	public void setRetransmissionTimer(RetransmissionTimer retransmissionTimer) {
+		this.retransmissionTimer = retransmissionTimer;
+	}
+
+	/**
+	 * RRQ: the flow gets the egress weight of the transfer, a weight set while the flow was created included
+	 *
+	 * @param egressFlow flow of the egress scheduler the DATA packets are sent through
+	 */
+	public void setEgressFlow(EgressScheduler.Flow egressFlow) {
+		this.egressFlow = egressFlow;
+		egressFlow.setWeight(egressWeight);
+	}
+
+	/**
+	 * Changes the share of the upload bandwidth of the transfer in the egress scheduler
+	 *
+	 * @param egressWeight share of the bandwidth compared to the other transfers, at least 1
+	 */
+	public void setEgressWeight(int egressWeight) {
+		this.egressWeight = Math.max(1, egressWeight);
+
+		EgressScheduler.Flow flow = egressFlow;
+		if (flow != null)
+			flow.setWeight(this.egressWeight);
+	}
+
+	/**
+	 * @return share of the upload bandwidth of the transfer in the egress scheduler
+	 */
+	public int getEgressWeight() {
+		return egressWeight;
+	}
+
+	/**
+	 * @return address and port of the client, the remote transfer ID
+	 */
+	public String getRemoteTID() {
+		return remoteAddress.getHostAddress() + ":" + remotePort;
+	}
+
+	public String getTransferType() {
+		return transferType.name();
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public long getCurrentBlock() {
+		return currentBlock;
+	}
+
+	public long getBytesTransferred() {
+		return bytesTransferred;
+	}
+
+	public long getRetransmitCount() {
+		return retransmitCount;
+	}
+
+	/**
+	 * @return smoothed round trip time in milliseconds, 0 if none was measured
+	 */
+	public double getSmoothedRTT() {
+		RetransmissionTimer timer = retransmissionTimer;
+		return timer == null ? 0 : timer.getSmoothedRTT() / 1000.0;
+	}
+
+	/**
+	 * @return time in milliseconds since the request was received
+	 */
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - startTime;
+	}
+}
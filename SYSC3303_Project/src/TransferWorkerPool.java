@@ -0,0 +1,244 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class limits the number of transfers the server runs at once.
+ *
+ * Up to NetworkConfig.MAX_CONCURRENT_TRANSFERS transfers run at the same time. A request that
+ * arrives while all of them are taken waits in a bounded queue (NetworkConfig.MAX_PENDING_TRANSFERS)
+ * and starts when a running transfer ends. A request that finds the queue full is rejected, the
+ * server answers it right away with an ERROR packet instead of running out of threads, sockets
+ * or memory under a flood of requests.
+ *
+ * The pool does not run the transfers itself, a transfer is started on a thread or on a NIO event
+ * loop depending on the server mode and tells the pool when it ends. The number of running and
+ * queued transfers, the rejections and the time spent in the queue are kept to size the server.
+ *
+ * @author Group 8
+ */
+public class TransferWorkerPool {
+	/**
+	 * This interface starts a transfer that was admitted
+	 */
+	public interface Transfer {
+		/**
+		 * @param endCallback to call once the transfer ended, calling it more than once does nothing
+		 */
+		public void start(Runnable endCallback);
+	}
+
+	/**
+	 * This class is a transfer waiting in the queue
+	 */
+	private class PendingTransfer {
+		Transfer transfer;
+		long queuedAt;
+	}
+
+	private int maxRunningTransfers;
+	private int maxPendingTransfers;
+
+	private int runningCount;
+	private ArrayDeque<PendingTransfer> pendingTransfers;
+
+	private long startedCount;
+	private long queuedCount;
+	private long rejectedCount;
+	private int peakPendingCount;
+	// time spent in the queue by the transfers that left it, in nanoseconds
+	private long totalWaitTime;
+	private long maxWaitTime;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxRunningTransfers largest number of transfers running at once
+	 * @param maxPendingTransfers largest number of transfers waiting to start
+	 */
+	public TransferWorkerPool(int maxRunningTransfers, int maxPendingTransfers) {
+		this.maxRunningTransfers = maxRunningTransfers;
+		this.maxPendingTransfers = maxPendingTransfers;
+
+		pendingTransfers = new ArrayDeque<PendingTransfer>();
+	}
+
+	/**
+	 * Starts a transfer if fewer than the maximum are running, otherwise queues it
+	 *
+	 * @param transfer transfer to start
+	 * @return false if the queue is full and the transfer was rejected
+	 */
+	public boolean submit(Transfer transfer) {
+		synchronized (this) {
+			if (runningCount >= maxRunningTransfers) {
+				if (pendingTransfers.size() >= maxPendingTransfers) {
+					rejectedCount++;
+					return false;
+				}
+
+				PendingTransfer pendingTransfer = new PendingTransfer();
+				pendingTransfer.transfer = transfer;
+				pendingTransfer.queuedAt = System.nanoTime();
+				pendingTransfers.add(pendingTransfer);
+
+				queuedCount++;
+				peakPendingCount = Math.max(peakPendingCount, pendingTransfers.size());
+				return true;
+			}
+
+			runningCount++;
+			startedCount++;
+		}
+
+		start(transfer);
+		return true;
+	}
+
+	/**
+	 * Starts a transfer outside of the lock, the transfer may end before start returns
+	 */
+	private void start(Transfer transfer) {
+		AtomicBoolean ended = new AtomicBoolean();
+
+		transfer.start(() -> {
+			if (ended.compareAndSet(false, true))
+				end();
+		});
+	}
+
+	/**
+	 * Hands the place of a transfer that ended to the transfer that waited the longest,
+	 * unless the limit was lowered below the number of running transfers
+	 */
+	private void end() {
+		PendingTransfer next;
+
+		synchronized (this) {
+			if (runningCount > maxRunningTransfers) {
+				runningCount--;
+				return;
+			}
+
+			next = pendingTransfers.poll();
+
+			if (next == null) {
+				runningCount--;
+				return;
+			}
+
+			long waitTime = System.nanoTime() - next.queuedAt;
+			totalWaitTime += waitTime;
+			maxWaitTime = Math.max(maxWaitTime, waitTime);
+			startedCount++;
+		}
+
+		start(next.transfer);
+	}
+
+	/**
+	 * @return number of transfers running
+	 */
+	public synchronized int getRunningCount() {
+		return runningCount;
+	}
+
+	/**
+	 * @return number of transfers waiting to start (queue depth)
+	 */
+	public synchronized int getPendingCount() {
+		return pendingTransfers.size();
+	}
+
+	/**
+	 * @return largest number of transfers that waited at the same time
+	 */
+	public synchronized int getPeakPendingCount() {
+		return peakPendingCount;
+	}
+
+	/**
+	 * @return number of transfers started
+	 */
+	public synchronized long getStartedCount() {
+		return startedCount;
+	}
+
+	/**
+	 * @return number of transfers that had to wait before they started
+	 */
+	public synchronized long getQueuedCount() {
+		return queuedCount;
+	}
+
+	/**
+	 * @return number of requests rejected because the queue was full
+	 */
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * @return mean time in milliseconds a queued transfer waited before it started
+	 */
+	public synchronized double getMeanWaitTime() {
+		long dequeuedCount = queuedCount - pendingTransfers.size();
+		if (dequeuedCount == 0)
+			return 0;
+
+		return totalWaitTime / 1000000.0 / dequeuedCount;
+	}
+
+	/**
+	 * @return longest time in milliseconds a queued transfer waited before it started
+	 */
+	public synchronized double getMaxWaitTime() {
+		return maxWaitTime / 1000000.0;
+	}
+
+	public synchronized int getMaxRunningTransfers() {
+		return maxRunningTransfers;
+	}
+
+	/**
+	 * Changes the number of transfers running at once, queued transfers start right away if
+	 * the number grows. If it shrinks the running transfers finish and fewer start after them
+	 *
+	 * @param maxRunningTransfers largest number of transfers running at once, at least 1
+	 */
+	public void setMaxRunningTransfers(int maxRunningTransfers) {
+		List<PendingTransfer> startedTransfers = new ArrayList<PendingTransfer>();
+
+		synchronized (this) {
+			this.maxRunningTransfers = Math.max(1, maxRunningTransfers);
+
+			while (runningCount < this.maxRunningTransfers && !pendingTransfers.isEmpty()) {
+				PendingTransfer next = pendingTransfers.poll();
+
+				long waitTime = System.nanoTime() - next.queuedAt;
+				totalWaitTime += waitTime;
+				maxWaitTime = Math.max(maxWaitTime, waitTime);
+				runningCount++;
+				startedCount++;
+				startedTransfers.add(next);
+			}
+		}
+
+		for (PendingTransfer startedTransfer : startedTransfers)
+			start(startedTransfer.transfer);
+	}
+
+	public synchronized int getMaxPendingTransfers() {
+		return maxPendingTransfers;
+	}
+
+	/**
+	 * Changes the size of the queue, transfers already queued stay in it
+	 *
+	 * @param maxPendingTransfers largest number of transfers waiting to start
+	 */
+	public synchronized void setMaxPendingTransfers(int maxPendingTransfers) {
+		this.maxPendingTransfers = Math.max(0, maxPendingTransfers);
+	}
+}
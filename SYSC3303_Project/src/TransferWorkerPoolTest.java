@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a test of the admission limits of the TransferWorkerPool.
+ *
+ * Transfers are submitted until the running places and the queue are full, then the limit of
+ * running transfers is lowered. Every transfer that ends while more transfers run than the new
+ * limit must give up its place instead of starting a queued transfer, so that the number of
+ * running transfers comes down to the limit before queued transfers start again. The test fails
+ * (exit code 1) if more transfers run than the limit or if a queued transfer is never started.
+ *
+ * Usage: TransferWorkerPoolTest
+ *
+ * @author Group 8
+ */
+public class TransferWorkerPoolTest {
+	private static final int MAX_RUNNING_TRANSFERS = 4;
+	private static final int MAX_PENDING_TRANSFERS = 4;
+	private static final int LOWERED_MAX_RUNNING_TRANSFERS = 1;
+
+	/**
+	 * This class is a transfer that runs until the test ends it
+	 */
+	private class TestTransfer implements TransferWorkerPool.Transfer {
+		Runnable endCallback;
+
+		@Override
+		public void start(Runnable endCallback) {
+			this.endCallback = endCallback;
+			runningTransfers.add(this);
+		}
+	}
+
+	private TransferWorkerPool pool = new TransferWorkerPool(MAX_RUNNING_TRANSFERS, MAX_PENDING_TRANSFERS);
+	private List<TestTransfer> runningTransfers = new ArrayList<TestTransfer>();
+	private List<String> failures = new ArrayList<String>();
+
+	private void check(boolean condition, String message) {
+		if (!condition)
+			failures.add(message);
+	}
+
+	/**
+	 * Ends the transfer that started first
+	 */
+	private void endTransfer() {
+		TestTransfer transfer = runningTransfers.remove(0);
+		transfer.endCallback.run();
+	}
+
+	private void run() {
+		for (int i = 0; i < MAX_RUNNING_TRANSFERS + MAX_PENDING_TRANSFERS; i++)
+			check(pool.submit(new TestTransfer()), "transfer " + i + " was rejected before the queue was full");
+		check(!pool.submit(new TestTransfer()), "transfer was accepted with a full queue");
+
+		check(pool.getRunningCount() == MAX_RUNNING_TRANSFERS, "running count is " + pool.getRunningCount() + " with a full pool");
+		check(pool.getPendingCount() == MAX_PENDING_TRANSFERS, "pending count is " + pool.getPendingCount() + " with a full queue");
+
+		pool.setMaxRunningTransfers(LOWERED_MAX_RUNNING_TRANSFERS);
+
+		// the transfers above the new limit end without handing their place to a queued transfer
+		for (int i = LOWERED_MAX_RUNNING_TRANSFERS; i < MAX_RUNNING_TRANSFERS; i++) {
+			endTransfer();
+
+			check(runningTransfers.size() == MAX_RUNNING_TRANSFERS - i, runningTransfers.size() + " transfers run after " + (i + 1 - LOWERED_MAX_RUNNING_TRANSFERS) + " ended above the limit");
+			check(pool.getRunningCount() == runningTransfers.size(), "running count is " + pool.getRunningCount() + " with " + runningTransfers.size() + " transfers running");
+			check(pool.getPendingCount() == MAX_PENDING_TRANSFERS, "a queued transfer started while the pool was above the limit");
+		}
+
+		// from now on every transfer that ends starts a queued transfer
+		for (int i = 0; i < MAX_PENDING_TRANSFERS; i++) {
+			endTransfer();
+
+			check(runningTransfers.size() == LOWERED_MAX_RUNNING_TRANSFERS, runningTransfers.size() + " transfers run with a limit of " + LOWERED_MAX_RUNNING_TRANSFERS);
+			check(pool.getPendingCount() == MAX_PENDING_TRANSFERS - 1 - i, "queued transfer " + i + " did not start at the limit");
+		}
+
+		endTransfer();
+		check(pool.getRunningCount() == 0, "running count is " + pool.getRunningCount() + " once every transfer ended");
+		check(pool.getStartedCount() == MAX_RUNNING_TRANSFERS + MAX_PENDING_TRANSFERS, pool.getStartedCount() + " transfers were started");
+		check(pool.getRejectedCount() == 1, pool.getRejectedCount() + " transfers were rejected");
+	}
+
+	public static void main(String[] args) {
+		TransferWorkerPoolTest test = new TransferWorkerPoolTest();
+		test.run();
+
+		if (!test.failures.isEmpty()) {
+			for (String failure : test.failures)
+				System.err.println(Globals.getErrorMessage("TransferWorkerPoolTest", failure));
+			System.exit(1);
+		}
+
+		System.out.println("TransferWorkerPoolTest passed");
+	}
+}
@@ -1,8 +1,11 @@
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 
-public class WRQServerThread extends Thread {
+public class WRQServerThread implements Runnable {
 	/**
 	 * This class is used to communicate further with a client that made a WQR request
+	 * 
+	 * The server decides what kind of thread it runs on (see ServerMode)
 	 */
 	
 	private TFTPSocket tftpSocket;
@@ -15,6 +18,25 @@ public class WRQServerThread extends Thread {
 	private InetAddress remoteAddress;
 	private int remotePort;
 	
+	private String fileName;
+	private TransferOptions transferOptions;
+	private FileBlockWriter fileWriter;
+	// bytes of file data written, for the transfer metrics
+	private long receivedBytes;
+	// progress of the transfer shown to operators, null if it is not tracked
+	private TransferStatus transferStatus;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param requestPacket  request datagram packet received from client
+	 * @param transferStatus progress of the transfer shown to operators, may be null
+	 */
+	public WRQServerThread(TFTPPacket requestPacket, TransferStatus transferStatus) {
+		this(requestPacket);
+		this.transferStatus = transferStatus;
+	}
+	
 	/**
 	 * Constructor
 	 * 
@@ -46,6 +68,7 @@ public class WRQServerThread extends Thread {
 	 * Handles DATA datagram packets received from client
 	 */
 	private void handleWRQConnection() {
+		long startTime = System.nanoTime();
 		RRQWRQPacket wrqPacket = null;
 		
 		// parse read request packet
@@ -58,85 +81,116 @@ public class WRQServerThread extends Thread {
 			 * 
 			 * The current write request thread will be terminated
 			 */
-			System.err.println(Globals.getErrorMessage("WRQServerThread", "cannot parse WRQ TFTP packet"));
+			Log.error("WRQServerThread", "cannot parse WRQ TFTP packet");
 			errorHandler.sendIllegalOperationErrorPacket("invalid WRQ TFTP packet", remoteAddress, remotePort);
 			return;
 		}
 		
 		packetHandler = new PacketHandler(tftpSocket, errorHandler, remoteAddress, remotePort);
+		packetHandler.setTransferStatus(transferStatus);
 		
 		// creates file if it does not exist
-		String fileName = wrqPacket.getFileName();
+		fileName = wrqPacket.getFileName();
 		FileManager.FileManagerResult res = fileManager.createFile(fileName);
 		
 		if (res.error) {
-			// access violation error will send an error packet with error code 2 and the connection
-			if (res.accessViolation)
-				errorHandler.sendAccessViolationErrorPacket(String.format("write access denied to file: %s", fileName), remoteAddress, remotePort);
-			// disk full error will send an error packet with error code 3 and close the connection
-			else if (res.fileAlreadyExist)
-				errorHandler.sendFileExistsErrorPacket(String.format("file already exists: %s", fileName), remoteAddress, remotePort);
-			else if (res.diskFull)
-			    errorHandler.sendDiskFullErrorPacket(String.format("Not enough disk space for file: %s", fileName), remoteAddress, remotePort);
+			sendFileManagerErrorPacket(res);
 			return;
 		}
 		
-		// send ACK packet to client in response to the write request
-		packetHandler.sendACKPacket((short) 0);
+		transferOptions = TransferOptions.negotiate(wrqPacket);
+		
+		// the file stays open until the last block is written, if the client gave
+		// the size of the file the space is reserved before the transfer starts
+		res = fileManager.openFileWriter(fileName, transferOptions.getBlockSize(), transferOptions.getTransferSize());
+		
+		// the file created for the request is removed so that the client can send it again
+		if (res.error) {
+			fileManager.deleteFile(fileName);
+			sendFileManagerErrorPacket(res);
+			return;
+		}
+		
+		fileWriter = res.fileWriter;
+		
+		if (transferOptions.getTimeout() > 0)
+			packetHandler.getRetransmissionTimer().setNegotiatedTimeout(transferOptions.getTimeout());
+		
+		// send OACK packet if the server accepted any options
+		// otherwise send ACK packet to client in response to the write request
+		if (transferOptions.hasAcceptedOptions()) {
+			tftpSocket.setMaxPacketLength(transferOptions.getMaxPacketLength());
+			packetHandler.sendOACKPacket(TFTPPacketBuilder.getOACKDatagram(transferOptions.getAcceptedOptions(), remoteAddress, remotePort));
+		}
+		else {
+			packetHandler.sendACKPacket((short) 0);
+		}
 		
 		// receive all data packets from client that wants to transfer a file
-		// once the data length is less than 512 bytes then stop listening for
+		// once the data length is less than the block size then stop listening for
 		// data packets from the client
-		int dataLenReceived = NetworkConfig.DATAGRAM_PACKET_MAX_LEN;
-		
-		short blockNumber = 0;
-		DATAPacket dataPacket = null;
-		while (dataLenReceived == NetworkConfig.DATAGRAM_PACKET_MAX_LEN) { 
-			blockNumber++;
-			System.out.println(Globals.getVerboseMessage("WRQServerThread", 
-					String.format("waiting for DATA packet from client %s:%d", remoteAddress, remotePort)));
-			
-			// receives data packet from client
-			dataPacket = packetHandler.receiveDATAPacket(blockNumber);
-        	
-			if (dataPacket == null) {
-				break;
-			}
-			
-			byte[] fileData = dataPacket.getDataBytes();
+		if (packetHandler.receiveDATAPackets(null, transferOptions.getMaxPacketLength(), transferOptions.getWindowSize(), this::writeDATAPacket))
+			MetricsRegistry.getInstance().transferCompleted(TFTPPacketType.WRQ, startTime, receivedBytes);
+		
+		Log.verbose("WRQServerThread", "connection is finsihed");
+	}
+	
+	/**
+	 * Writes the file data of a DATA packet to hard drive
+	 * The file is closed once the last DATA packet is written
+	 * 
+	 * @param dataPacket DATA packet received from client
+	 * @param blockIndex index of the block in the file, block numbers roll over after 65535
+	 * @return false if the file could not be written
+	 */
+	private boolean writeDATAPacket(DATAPacket dataPacket, long blockIndex) {
+		ByteBuffer fileData = dataPacket.getDataBuffer();
+		receivedBytes += fileData.remaining();
 
-			// write file data from DATA packet to hard drive
-			res = fileManager.writeFile(fileName, fileData);
-			
-			// if error occurred end connection
-			if (res.error) {
-				// access violation error will send an error packet with error code 2 and the connection
-				if (res.accessViolation)
-					errorHandler.sendAccessViolationErrorPacket(String.format("write access denied to file: %s", fileName), remoteAddress, remotePort);
-				// disk full error will send an error packet with error code 3 and close the connection
-				else if (res.fileAlreadyExist)
-					errorHandler.sendFileExistsErrorPacket(String.format("file already exists: %s", fileName), remoteAddress, remotePort);
-				else if (res.diskFull)
-				    errorHandler.sendDiskFullErrorPacket(String.format("Not enough disk space for file: %s", fileName), remoteAddress, remotePort);
-				return;
-			}
-			
-			System.out.println(Globals.getVerboseMessage("WRQServerThread", String.format("finsihed writing data to file %s", fileName)));
-			
-			// save the length of file data that was just saved
-			dataLenReceived = dataPacket.getPacketLength();
-		
-			packetHandler.sendACKPacket(blockNumber);
+		// write file data from DATA packet to hard drive
+		FileManager.FileManagerResult res = fileManager.writeBlock(fileWriter, blockIndex, fileData);
+		
+		// the buffered data is written before the last block is acknowledged
+		if (!res.error && dataPacket.getPacketLength() < transferOptions.getMaxPacketLength()) {
+			res = fileManager.closeFileWriter(fileWriter);
+			fileWriter = null;
 		}
 		
-		System.out.println(Globals.getVerboseMessage("WRQServerThread", "connection is finsihed"));
+		// if error occurred end connection
+		if (res.error) {
+			sendFileManagerErrorPacket(res);
+			return false;
+		}
+		
+		Log.verbose("WRQServerThread", "finsihed writing data to file %s", fileName);
+		return true;
+	}
+	
+	/**
+	 * Sends the ERROR packet that matches a failed file operation
+	 * 
+	 * @param res result of the file operation
+	 */
+	private void sendFileManagerErrorPacket(FileManager.FileManagerResult res) {
+		// access violation error will send an error packet with error code 2 and the connection
+		if (res.accessViolation)
+			errorHandler.sendAccessViolationErrorPacket(String.format("write access denied to file: %s", fileName), remoteAddress, remotePort);
+		// disk full error will send an error packet with error code 3 and close the connection
+		else if (res.fileAlreadyExist)
+			errorHandler.sendFileExistsErrorPacket(String.format("file already exists: %s", fileName), remoteAddress, remotePort);
+		else if (res.diskFull)
+		    errorHandler.sendDiskFullErrorPacket(String.format("Not enough disk space for file: %s", fileName), remoteAddress, remotePort);
 	}
 	
 	/**
-	 * Closes datagram socket once the connection is finished
+	 * Closes datagram socket and the file once the connection is finished
 	 */
 	private void cleanUp() {
-		System.out.println(Globals.getVerboseMessage("WRQServerThread", "closing socket"));
+		// the transfer was aborted before the last block, keep the data received so far
+		if (fileWriter != null)
+			fileManager.closeFileWriter(fileWriter);
+		
+		Log.verbose("WRQServerThread", "closing socket");
 		tftpSocket.close();
 	}
 }
@@ -42,7 +42,8 @@ public final class TFTPDatagram implements TFTPPacket {
 	private void setOffsetPayload(int offset, byte[] pld) throws TFTPPacketException {
 		
 		try {
-			body.put(pld, offset, pld.length);		// place the payload into the packet 
+			body.position(offset);
+			body.put(pld);							// place the payload into the packet after its header
 			backing.setLength(body.position());		// set the packet length to the end of the payload
 		} catch (BufferOverflowException be) {
 			throw new TFTPPacketException("Payload too big");
@@ -83,7 +84,8 @@ public final class TFTPDatagram implements TFTPPacket {
 		
 		int plen = backing.getLength() - offset; // length of the payload
 		byte[] pl = new byte[plen];
-		body.get(pl, offset, plen); // fill array with payload data or error message
+		body.position(offset);
+		body.get(pl); // fill array with payload data or error message
 		return pl;
 	}
 	
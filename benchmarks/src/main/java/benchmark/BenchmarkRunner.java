@@ -0,0 +1,81 @@
+package benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.ProfilersFailedException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class runs the benchmarks with the GC profiler so that every benchmark reports the
+ * time per operation (ns/op) and the bytes allocated per operation (gc.alloc.rate.norm, B/op).
+ *
+ * Takes the usual JMH options, for example
+ * 		java -jar benchmarks/target/benchmarks.jar PacketCodec -rf json
+ * -h, -l, -lp, -lprof and -lrf print the same listings as the JMH main class
+ * and run nothing.
+ *
+ * @author Group 8
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws IOException {
+		CommandLineOptions commandLineOptions;
+		try {
+			commandLineOptions = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			System.err.println("error parsing options: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		if (commandLineOptions.shouldHelp()) {
+			commandLineOptions.showHelp();
+			return;
+		}
+
+		if (commandLineOptions.shouldListProfilers()) {
+			commandLineOptions.listProfilers();
+			return;
+		}
+
+		if (commandLineOptions.shouldListResultFormats()) {
+			commandLineOptions.listResultFormats();
+			return;
+		}
+
+		Options options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.addProfiler(GCProfiler.class)
+				.build();
+		Runner runner = new Runner(options);
+
+		if (commandLineOptions.shouldList()) {
+			runner.list();
+			return;
+		}
+
+		if (commandLineOptions.shouldListWithParams()) {
+			runner.listWithParams(commandLineOptions);
+			return;
+		}
+
+		try {
+			runner.run();
+		} catch (NoBenchmarksException e) {
+			System.err.println("no benchmark matches the given patterns");
+			System.exit(1);
+		} catch (ProfilersFailedException e) {
+			System.err.println("profiler failed: " + e.getMessage());
+			System.exit(1);
+		} catch (RunnerException e) {
+			System.err.println("error running the benchmarks: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
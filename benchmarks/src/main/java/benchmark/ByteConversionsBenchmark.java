@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures the conversions of ByteConversions used by every packet
+ *
+ * @author Group 8
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteConversionsBenchmark {
+	private short number;
+	private byte[] numberBytes;
+	private byte[] packetBytes;
+	private String fileName;
+	private byte[] fileNameBytes;
+
+	@Setup
+	public void setUp() {
+		number = 4660;
+		numberBytes = new byte[] { 0x12, 0x34 };
+		packetBytes = new byte[516];
+		fileName = "transfered_files/test.txt";
+		fileNameBytes = fileName.getBytes();
+	}
+
+	@Benchmark
+	public byte[] shortToBytes() throws Throwable {
+		return (byte[]) Codec.SHORT_TO_BYTES.invokeExact(number);
+	}
+
+	@Benchmark
+	public short bytesToShort() throws Throwable {
+		return (short) Codec.BYTES_TO_SHORT.invokeExact(numberBytes);
+	}
+
+	@Benchmark
+	public short getShort() throws Throwable {
+		return (short) Codec.GET_SHORT.invokeExact(packetBytes, 2);
+	}
+
+	@Benchmark
+	public byte[] putShort() throws Throwable {
+		Codec.PUT_SHORT.invokeExact(packetBytes, 2, number);
+		return packetBytes;
+	}
+
+	@Benchmark
+	public byte[] stringToBytes() throws Throwable {
+		return (byte[]) Codec.STRING_TO_BYTES.invokeExact(fileName);
+	}
+
+	@Benchmark
+	public String bytesToString() throws Throwable {
+		return (String) Codec.BYTES_TO_STRING.invokeExact(fileNameBytes);
+	}
+}
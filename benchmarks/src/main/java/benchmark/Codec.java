@@ -0,0 +1,147 @@
+package benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * This class gives the benchmarks access to the packet codec of the server.
+ *
+ * The classes of the server are in the default package, which Java code in a package cannot
+ * name and JMH does not accept benchmarks in. The codec is reached through method handles held
+ * in static final fields instead: the JIT compiler treats them as constants and inlines the
+ * target, so a call through a handle costs the same as a direct call and allocates nothing.
+ * The classes of the server are typed as Object in the handles.
+ *
+ * @author Group 8
+ */
+final class Codec {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+	// new TFTPPacket(byte[] packetBytes, int offset, int packetLength, InetAddress remoteAddress, int remotePort)
+	static final MethodHandle NEW_TFTP_PACKET = constructor("TFTPPacket", byte[].class, int.class, int.class, InetAddress.class, int.class);
+	// TFTPPacket.getPacketBytes()
+	static final MethodHandle GET_PACKET_BYTES = method("TFTPPacket", "getPacketBytes", byte[].class);
+	// TFTPPacket.getPacketLength()
+	static final MethodHandle GET_PACKET_LENGTH = method("TFTPPacket", "getPacketLength", int.class);
+
+	// DATAPacket.buildPacket(short blockNumber, byte[] dataBytes, InetAddress remoteAddress, int remotePort)
+	static final MethodHandle BUILD_DATA_PACKET = staticMethod("DATAPacket", "buildPacket", "DATAPacket", short.class, byte[].class, InetAddress.class, int.class);
+	// new DATAPacket(TFTPPacket tftpPacket)
+	static final MethodHandle PARSE_DATA_PACKET = constructor("DATAPacket", serverClass("TFTPPacket"));
+
+	// ACKPacket.buildPacket(short blockNumber, InetAddress remoteAddress, int remotePort)
+	static final MethodHandle BUILD_ACK_PACKET = staticMethod("ACKPacket", "buildPacket", "ACKPacket", short.class, InetAddress.class, int.class);
+	// new ACKPacket(TFTPPacket tftpPacket)
+	static final MethodHandle PARSE_ACK_PACKET = constructor("ACKPacket", serverClass("TFTPPacket"));
+
+	// ERRORPacket.buildPacket(short errorCode, String errorMessage, InetAddress remoteAddress, int remotePort)
+	static final MethodHandle BUILD_ERROR_PACKET = staticMethod("ERRORPacket", "buildPacket", "ERRORPacket", short.class, String.class, InetAddress.class, int.class);
+	// new ERRORPacket(TFTPPacket tftpPacket)
+	static final MethodHandle PARSE_ERROR_PACKET = constructor("ERRORPacket", serverClass("TFTPPacket"));
+
+	// RRQWRQPacket.buildPacket(TFTPPacketType type, String fileName, String mode, Map<String, String> options, InetAddress remoteAddress, int remotePort)
+	static final MethodHandle BUILD_RRQWRQ_PACKET = staticMethod("RRQWRQPacket", "buildPacket", "RRQWRQPacket", serverClass("TFTPPacketType"), String.class, String.class, Map.class, InetAddress.class, int.class);
+	// new RRQWRQPacket(TFTPPacket tftpPacket)
+	static final MethodHandle PARSE_RRQWRQ_PACKET = constructor("RRQWRQPacket", serverClass("TFTPPacket"));
+
+	// ByteConversions
+	static final MethodHandle SHORT_TO_BYTES = staticMethod("ByteConversions", "shortToBytes", byte[].class, short.class);
+	static final MethodHandle BYTES_TO_SHORT = staticMethod("ByteConversions", "bytesToShort", short.class, byte[].class);
+	static final MethodHandle GET_SHORT = staticMethod("ByteConversions", "getShort", short.class, byte[].class, int.class);
+	static final MethodHandle PUT_SHORT = staticMethod("ByteConversions", "putShort", void.class, byte[].class, int.class, short.class);
+	static final MethodHandle STRING_TO_BYTES = staticMethod("ByteConversions", "stringToBytes", byte[].class, String.class);
+	static final MethodHandle BYTES_TO_STRING = staticMethod("ByteConversions", "bytesToString", String.class, byte[].class);
+
+	// TFTPPacketBuilder.getStackOfDATADatagramPackets(byte[] fileData, int blockSize, InetAddress ipAddress, int port)
+	static final MethodHandle GET_STACK_OF_DATA_PACKETS = staticMethod("TFTPPacketBuilder", "getStackOfDATADatagramPackets", Queue.class, byte[].class, int.class, InetAddress.class, int.class);
+
+	private Codec() {
+	}
+
+	/**
+	 * @param name name of a TFTPPacketType constant (RRQ, WRQ...)
+	 * @return the constant
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object packetType(String name) {
+		return Enum.valueOf((Class<Enum>) serverClass("TFTPPacketType"), name);
+	}
+
+	/**
+	 * Returns a packet as it is handed to the parsers once received
+	 *
+	 * @param builtPacket packet returned by a buildPacket handle
+	 * @return TFTPPacket holding a copy of the bytes of the packet
+	 */
+	static Object receive(Object builtPacket, InetAddress remoteAddress, int remotePort) {
+		try {
+			byte[] packetBytes = (byte[]) GET_PACKET_BYTES.invokeExact(builtPacket);
+			int packetLength = (int) GET_PACKET_LENGTH.invokeExact(builtPacket);
+			return (Object) NEW_TFTP_PACKET.invokeExact(packetBytes, 0, packetLength, remoteAddress, remotePort);
+		} catch (Throwable e) {
+			throw new IllegalStateException("cannot build received packet", e);
+		}
+	}
+
+	private static Class<?> serverClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("server class not on the class path: " + name, e);
+		}
+	}
+
+	private static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+		try {
+			return hideServerTypes(LOOKUP.findConstructor(serverClass(className), MethodType.methodType(void.class, parameterTypes)));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot find constructor of " + className, e);
+		}
+	}
+
+	private static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... parameterTypes) {
+		try {
+			return hideServerTypes(LOOKUP.findVirtual(serverClass(className), name, MethodType.methodType(returnType, parameterTypes)));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot find " + className + "." + name, e);
+		}
+	}
+
+	private static MethodHandle staticMethod(String className, String name, String returnClassName, Class<?>... parameterTypes) {
+		return staticMethod(className, name, serverClass(returnClassName), parameterTypes);
+	}
+
+	private static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameterTypes) {
+		try {
+			return hideServerTypes(LOOKUP.findStatic(serverClass(className), name, MethodType.methodType(returnType, parameterTypes)));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot find " + className + "." + name, e);
+		}
+	}
+
+	/**
+	 * Changes the classes of the server in the type of a handle to Object so that the
+	 * benchmarks can call it with invokeExact. Only casts are added, no boxing
+	 */
+	private static MethodHandle hideServerTypes(MethodHandle handle) {
+		MethodType type = handle.type();
+
+		for (int i = 0; i < type.parameterCount(); i++) {
+			if (isServerClass(type.parameterType(i)))
+				type = type.changeParameterType(i, Object.class);
+		}
+
+		if (isServerClass(type.returnType()))
+			type = type.changeReturnType(Object.class);
+
+		return handle.asType(type);
+	}
+
+	private static boolean isServerClass(Class<?> type) {
+		return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+	}
+}
@@ -0,0 +1,54 @@
+package benchmark;
+
+import java.net.InetAddress;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures TFTPPacketBuilder.getStackOfDATADatagramPackets, which splits a whole
+ * file into DATA packets. The time and the allocation grow with the size of the file,
+ * divide by the number of blocks (fileSize / blockSize + 1) to compare with buildDATAPacket
+ *
+ * @author Group 8
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketBuilderBenchmark {
+	@Param({ "4096", "65536", "1048576" })
+	private int fileSize;
+
+	@Param({ "512", "1428" })
+	private int blockSize;
+
+	private InetAddress remoteAddress;
+	private byte[] fileData;
+
+	@Setup
+	public void setUp() {
+		remoteAddress = InetAddress.getLoopbackAddress();
+		fileData = new byte[fileSize];
+		ThreadLocalRandom.current().nextBytes(fileData);
+	}
+
+	@Benchmark
+	public Queue<?> getStackOfDATADatagramPackets() throws Throwable {
+		return (Queue<?>) Codec.GET_STACK_OF_DATA_PACKETS.invokeExact(fileData, blockSize, remoteAddress, 5000);
+	}
+}
@@ -0,0 +1,124 @@
+package benchmark;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures building and parsing the DATA, ACK, ERROR, RRQ and WRQ packets of the
+ * server (DATAPacket, ACKPacket, ERRORPacket and RRQWRQPacket).
+ *
+ * The parse benchmarks start from a received TFTPPacket, like the transfers do once the
+ * socket has read a datagram, and measure the packet constructor only.
+ *
+ * @author Group 8
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketCodecBenchmark {
+	private static final int REMOTE_PORT = 5000;
+
+	private InetAddress remoteAddress;
+	private byte[] blockData;
+	private short blockNumber;
+	private Object rrqType;
+	private Map<String, String> noOptions;
+	private Map<String, String> options;
+
+	private Object receivedDATAPacket;
+	private Object receivedACKPacket;
+	private Object receivedERRORPacket;
+	private Object receivedRRQPacket;
+	private Object receivedRRQPacketWithOptions;
+
+	@Setup
+	public void setUp() throws Throwable {
+		remoteAddress = InetAddress.getLoopbackAddress();
+		blockData = new byte[512];
+		ThreadLocalRandom.current().nextBytes(blockData);
+		blockNumber = 1234;
+		rrqType = Codec.packetType("RRQ");
+		noOptions = Collections.emptyMap();
+
+		// the options a client sends to negotiate a large transfer (RFC 2348, 2349, 7440)
+		options = new LinkedHashMap<String, String>();
+		options.put("blksize", "1428");
+		options.put("tsize", "0");
+		options.put("timeout", "1");
+		options.put("windowsize", "16");
+
+		receivedDATAPacket = Codec.receive(buildDATAPacket(), remoteAddress, REMOTE_PORT);
+		receivedACKPacket = Codec.receive(buildACKPacket(), remoteAddress, REMOTE_PORT);
+		receivedERRORPacket = Codec.receive(buildERRORPacket(), remoteAddress, REMOTE_PORT);
+		receivedRRQPacket = Codec.receive(buildRRQPacket(), remoteAddress, REMOTE_PORT);
+		receivedRRQPacketWithOptions = Codec.receive(buildRRQPacketWithOptions(), remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public Object buildDATAPacket() throws Throwable {
+		return (Object) Codec.BUILD_DATA_PACKET.invokeExact(blockNumber, blockData, remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public Object parseDATAPacket() throws Throwable {
+		return (Object) Codec.PARSE_DATA_PACKET.invokeExact(receivedDATAPacket);
+	}
+
+	@Benchmark
+	public Object buildACKPacket() throws Throwable {
+		return (Object) Codec.BUILD_ACK_PACKET.invokeExact(blockNumber, remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public Object parseACKPacket() throws Throwable {
+		return (Object) Codec.PARSE_ACK_PACKET.invokeExact(receivedACKPacket);
+	}
+
+	@Benchmark
+	public Object buildERRORPacket() throws Throwable {
+		return (Object) Codec.BUILD_ERROR_PACKET.invokeExact((short) 1, "file not found: test.txt", remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public Object parseERRORPacket() throws Throwable {
+		return (Object) Codec.PARSE_ERROR_PACKET.invokeExact(receivedERRORPacket);
+	}
+
+	@Benchmark
+	public Object buildRRQPacket() throws Throwable {
+		return (Object) Codec.BUILD_RRQWRQ_PACKET.invokeExact(rrqType, "test.txt", "octet", (Map) noOptions, remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public Object parseRRQPacket() throws Throwable {
+		return (Object) Codec.PARSE_RRQWRQ_PACKET.invokeExact(receivedRRQPacket);
+	}
+
+	@Benchmark
+	public Object buildRRQPacketWithOptions() throws Throwable {
+		return (Object) Codec.BUILD_RRQWRQ_PACKET.invokeExact(rrqType, "test.txt", "octet", (Map) options, remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public Object parseRRQPacketWithOptions() throws Throwable {
+		return (Object) Codec.PARSE_RRQWRQ_PACKET.invokeExact(receivedRRQPacketWithOptions);
+	}
+}
@@ -0,0 +1,122 @@
+package tftp;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class measures building and parsing the packets of the tftp package (TFTPDatagram),
+ * the same packets and sizes as PacketCodecBenchmark so the two codecs can be compared.
+ *
+ * The class is in the tftp package because the factory methods of TFTPDatagram are package
+ * methods. A TFTPDatagram is parsed in place, the parse benchmarks read the fields of a
+ * datagram whose backing DatagramPacket holds a received packet.
+ *
+ * @author Group 8
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TFTPDatagramBenchmark {
+	private static final int REMOTE_PORT = 5000;
+
+	private InetAddress remoteAddress;
+	private byte[] blockData;
+	private short blockNumber;
+
+	private TFTPDatagram receivedDATAPacket;
+	private TFTPDatagram receivedACKPacket;
+	private TFTPDatagram receivedERRORPacket;
+	private TFTPDatagram receivedRRQPacket;
+
+	@Setup
+	public void setUp() throws TFTPPacketException {
+		remoteAddress = InetAddress.getLoopbackAddress();
+		blockData = new byte[512];
+		ThreadLocalRandom.current().nextBytes(blockData);
+		blockNumber = 1234;
+
+		receivedDATAPacket = receive(buildDATAPacket());
+		receivedACKPacket = receive(buildACKPacket());
+		receivedERRORPacket = receive(buildERRORPacket());
+		receivedRRQPacket = receive(buildRRQPacket());
+	}
+
+	/**
+	 * @return new datagram holding the bytes of a built datagram, as if it was received
+	 */
+	private TFTPDatagram receive(TFTPDatagram builtPacket) {
+		DatagramPacket built = builtPacket.getBackingDP();
+		TFTPDatagram received = new TFTPDatagram();
+		DatagramPacket backing = received.getBackingDP();
+
+		System.arraycopy(built.getData(), 0, backing.getData(), 0, built.getLength());
+		backing.setLength(built.getLength());
+		backing.setAddress(remoteAddress);
+		backing.setPort(REMOTE_PORT);
+
+		return received;
+	}
+
+	@Benchmark
+	public TFTPDatagram buildDATAPacket() throws TFTPPacketException {
+		return TFTPDatagram.DATA(blockNumber, blockData, remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public void parseDATAPacket(Blackhole blackhole) throws TFTPPacketException {
+		blackhole.consume(receivedDATAPacket.getType());
+		blackhole.consume(receivedDATAPacket.getParameter());
+		blackhole.consume(receivedDATAPacket.getPayload());
+	}
+
+	@Benchmark
+	public TFTPDatagram buildACKPacket() throws TFTPPacketException {
+		return TFTPDatagram.ACK(blockNumber, remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public void parseACKPacket(Blackhole blackhole) throws TFTPPacketException {
+		blackhole.consume(receivedACKPacket.getType());
+		blackhole.consume(receivedACKPacket.getParameter());
+	}
+
+	@Benchmark
+	public TFTPDatagram buildERRORPacket() throws TFTPPacketException {
+		return TFTPDatagram.ERROR((short) 1, "file not found: test.txt", remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public void parseERRORPacket(Blackhole blackhole) throws TFTPPacketException {
+		blackhole.consume(receivedERRORPacket.getType());
+		blackhole.consume(receivedERRORPacket.getParameter());
+		blackhole.consume(new String(receivedERRORPacket.getPayload()));
+	}
+
+	@Benchmark
+	public TFTPDatagram buildRRQPacket() throws TFTPPacketException {
+		return TFTPDatagram.RRQ("test.txt", remoteAddress, REMOTE_PORT);
+	}
+
+	@Benchmark
+	public void parseRRQPacket(Blackhole blackhole) throws TFTPPacketException {
+		blackhole.consume(receivedRRQPacket.getType());
+		blackhole.consume(receivedRRQPacket.getPayload());
+	}
+}